@@ -0,0 +1,81 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.history;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link HistoryStorage#saveHistory()} and
+ * {@link HistoryStorage#loadHistory()} for 10k and 1M entries. The history
+ * is stored in a temporary file set by the system property
+ * {@code calculator.history.file}, each size runs in its own JVM.
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryStorageBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("history",".txt");
+        // must be set before HistoryStorage is loaded
+        System.setProperty("calculator.history.file",file.getPath());
+        List<HistoryEntry> history = HistoryStorage.getHistory();
+        history.clear();
+        for (int i = 0; i < size; i++) {
+            HistoryEntry entry = new HistoryEntry();
+            entry.setExpression(i+"*2.5+SQRT("+i+")");
+            entry.setResult(new BigDecimal(i).multiply(new BigDecimal("2.5")));
+            history.add(entry);
+        }
+        HistoryStorage.saveHistory();
+    }
+
+    @TearDown
+    public void tearDown() {
+        HistoryStorage.getHistory().clear();
+        file.delete();
+    }
+
+    @Benchmark
+    public void saveHistory() {
+        HistoryStorage.saveHistory();
+    }
+
+    @Benchmark
+    public List<HistoryEntry> loadHistory() {
+        List<HistoryEntry> history = HistoryStorage.getHistory();
+        history.clear();
+        HistoryStorage.loadHistory();
+        return history;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Calculator#calculate(Session, String)} for short,
+ * long and deeply nested expressions, without the expression cache so
+ * every call tokenizes, parses and evaluates
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateBenchmark {
+
+    @Param({"short", "long", "nested"})
+    public String shape;
+
+    private Calculator calculator;
+    private Session session;
+    private String expression;
+
+    @Setup
+    public void setup() {
+        calculator = new Calculator();
+        session = calculator.newSession();
+        expression = Expressions.of(shape);
+    }
+
+    @Benchmark
+    public BigDecimal calculate() {
+        return calculator.calculate(session,expression);
+    }
+}
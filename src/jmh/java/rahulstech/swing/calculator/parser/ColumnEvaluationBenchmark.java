@@ -0,0 +1,88 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the kernel walking the tree for each element with the Vector
+ * API kernel over a column of values. The Vector API kernel is available
+ * only when run with the gradle property {@code vectorApi}.
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnEvaluationBenchmark {
+
+    @Param({
+            "x*2+SQRT(x)",
+            "(x+1)*(x-1)/(x^2+1)",
+            "x^2*3-x*4+5"
+    })
+    public String expression;
+
+    @Param({"65536"})
+    public int size;
+
+    private Node root;
+    private ColumnKernel scalar;
+    private double[] in;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        root = new Calculator().compile(expression,"x").root();
+        scalar = ColumnKernels.scalar(root);
+        in = new double[size];
+        out = new double[size];
+        for (int i = 0; i < size; i++) {
+            in[i] = i*0.37+1;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class VectorKernel {
+
+        private ColumnKernel kernel;
+
+        @Setup
+        public void setup(ColumnEvaluationBenchmark benchmark) {
+            kernel = ColumnKernels.vector(benchmark.root);
+            if (null == kernel) {
+                throw new IllegalStateException("Vector API is not available, run with -PvectorApi");
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        scalar.evaluate(in,out,0,size);
+        return out;
+    }
+
+    @Benchmark
+    public double[] vector(VectorKernel vector) {
+        vector.kernel.evaluate(in,out,0,size);
+        return out;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * Expressions of different shapes used by the benchmarks
+ *
+ * @author Rahul Bagchi
+ */
+final class Expressions {
+
+    private Expressions() {}
+
+    /**
+     * @param shape short, long, nested or deep
+     * @return the expression of the shape
+     */
+    static String of(String shape) {
+        switch (shape) {
+            case "short":
+                return "1+2*3-4/5";
+            case "long":
+                return longExpression(500);
+            case "nested":
+                return nestedExpression(200);
+            case "deep":
+                // still within the stack of the recursive parser
+                return nestedExpression(1000);
+            default:
+                throw new IllegalArgumentException("unknown shape "+shape);
+        }
+    }
+
+    /**
+     * @return terms like 1.5*2+3.5*4... with the given number of terms
+     */
+    static String longExpression(int terms) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) builder.append(i%2 == 0 ? "+" : "-");
+            builder.append(i).append(".5*").append(i%7+1);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return expression like (1+(2+(3+...))) nested to the given depth
+     */
+    static String nestedExpression(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1; i <= depth; i++) {
+            builder.append("(").append(i).append("+");
+        }
+        builder.append("0");
+        for (int i = 0; i < depth; i++) {
+            builder.append(")");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each built-in operation. The operation is compiled once
+ * with ANS as an operand, so only evaluating the operation is measured,
+ * with integer operands taking the long integer path and decimal operands
+ * taking the BigDecimal path.
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationBenchmark {
+
+    @Param({"+", "-", "*", "/", "^", "%", "SQRT", "REMAINDER", "AVG"})
+    public String operation;
+
+    @Param({"integer", "decimal"})
+    public String operands;
+
+    private CompiledExpression expression;
+    private BigDecimal answer;
+
+    @Setup
+    public void setup() {
+        boolean integer = "integer".equals(operands);
+        String operand = integer ? "7" : "3.25";
+        answer = integer ? BigDecimal.valueOf(1234) : new BigDecimal("12.5");
+        String text;
+        switch (operation) {
+            case "SQRT":
+                text = "SQRT(ANS)";
+                break;
+            case "REMAINDER":
+                text = "REMAINDER(ANS,"+operand+")";
+                break;
+            case "AVG":
+                text = "AVG(ANS,"+operand+","+operand+")";
+                break;
+            case "^":
+                text = "ANS^3";
+                break;
+            default:
+                text = "ANS"+operation+operand;
+        }
+        Calculator calculator = new Calculator();
+        calculator.setCompileThreshold(-1);
+        expression = calculator.compile(text);
+    }
+
+    @Benchmark
+    public BigDecimal evaluate() {
+        return expression.evaluate(answer);
+    }
+}
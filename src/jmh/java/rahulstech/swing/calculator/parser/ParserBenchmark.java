@@ -0,0 +1,63 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the recursive {@link Parser} and the {@link IterativeParser}
+ * for flat and nested expressions. The expression is tokenized once and
+ * evaluated while parsing like {@link Calculator#calculate(String)}.
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"short", "long", "nested", "deep"})
+    public String shape;
+
+    private OperationRegistry registry;
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setup() {
+        registry = new Calculator().registry();
+        tokens = new Tokenizer(Expressions.of(shape)).tokenizeToBuffer();
+    }
+
+    @Benchmark
+    public BigDecimal recursive() {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(null);
+        Parser<Integer> parser = new Parser<>(new BufferTokenStream(tokens),evaluator,registry);
+        return evaluator.result(parser.parseOperation());
+    }
+
+    @Benchmark
+    public BigDecimal iterative() {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(null);
+        Parser<Integer> parser = new IterativeParser<>(new BufferTokenStream(tokens),evaluator,registry);
+        return evaluator.result(parser.parseOperation());
+    }
+}
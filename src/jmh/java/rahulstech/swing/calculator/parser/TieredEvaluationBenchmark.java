@@ -0,0 +1,74 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares evaluating a {@link CompiledExpression} by walking its tree
+ * with evaluating the generated class of the same expression. An integer
+ * value of ANS compares the long integer tiers where the expression allows.
+ *
+ * @author Rahul Bagchi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TieredEvaluationBenchmark {
+
+    @Param({
+            "1+2*3-4/5",
+            "AVG(1,2,3,4,5)*SQRT(16)-REMAINDER(ANS,7)",
+            "(1+(2+(3+(4+(5+(6+(7+(8+(9+10)))))))))*ANS"
+    })
+    public String expression;
+
+    @Param({"12","12.5"})
+    public String answerValue;
+
+    private CompiledExpression interpreted;
+    private CompiledExpression generated;
+    private BigDecimal answer;
+
+    @Setup
+    public void setup() {
+        answer = new BigDecimal(answerValue);
+        Calculator calculator = new Calculator();
+        calculator.setCompileThreshold(-1);
+        interpreted = calculator.compile(expression);
+        calculator.setCompileThreshold(0);
+        generated = calculator.compile(expression);
+        if (!generated.isCompiledToBytecode()) {
+            throw new IllegalStateException("can not generate class for "+expression);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal interpreted() {
+        return interpreted.evaluate(answer);
+    }
+
+    @Benchmark
+    public BigDecimal generated() {
+        return generated.evaluate(answer);
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.cli;
+
+import rahulstech.swing.calculator.parser.CalculationResult;
+import rahulstech.swing.calculator.parser.Calculator;
+import rahulstech.swing.calculator.parser.CalculatorException;
+import rahulstech.swing.calculator.parser.EvaluationMode;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Calculates expressions without a display. Reads one expression per
+ * line from the standard input or a file and writes the result or the
+ * error of each line to the same line of the standard output or a file.
+ * Each line is calculated with its own session, so ANS is 0. The input
+ * is read and the output is written through fixed size buffers, so the
+ * memory used does not grow with the size of the input. In parallel mode
+ * the lines are calculated in batches by many threads, while a batch is
+ * calculated the next batch is read, and the results are still written in
+ * input order.
+ * <p>
+ * Exit status is 0 if all lines are calculated, 1 if any line fails and 2
+ * for invalid arguments or input output errors.
+ *
+ * @author Rahul Bagchi
+ */
+public final class CalculatorCli {
+
+    private static final String USAGE = "usage: calculator-cli [options]\n"
+            +"  -i, --input FILE        read expressions from FILE instead of standard input\n"
+            +"  -o, --output FILE       write results to FILE instead of standard output\n"
+            +"  -p, --parallel THREADS  calculate with THREADS threads, 0 for all processors\n"
+            +"  -f, --fast              calculate with double precision when accurate enough\n"
+            +"      --max-line LENGTH   longest line to calculate, default "+Options.DEFAULT_MAX_LINE_LENGTH+"\n"
+            +"  -h, --help              show this message";
+
+    private static final String ERROR_PREFIX = "error: ";
+
+    // number of lines calculated together in parallel mode
+    private static final int BATCH_SIZE = 1024;
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private final Calculator calculator = new Calculator();
+    private final Options options;
+    private boolean failed = false;
+
+    private CalculatorCli(Options options) {
+        this.options = options;
+        if (options.fast) {
+            calculator.setEvaluationMode(EvaluationMode.FAST_DOUBLE);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Run with the command line arguments
+     *
+     * @param args the arguments
+     * @return the exit status
+     */
+    public static int run(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (options.help) {
+            System.out.println(USAGE);
+            return 0;
+        }
+        try (LineReader in = new LineReader(openInput(options.input),CHARSET,options.maxLineLength);
+             LineWriter out = new LineWriter(openOutput(options.output),CHARSET)) {
+            CalculatorCli cli = new CalculatorCli(options);
+            if (options.threads > 1) {
+                cli.calculateParallel(in,out);
+            }
+            else {
+                cli.calculate(in,out);
+            }
+            return cli.failed ? 1 : 0;
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+    }
+
+    private void calculate(LineReader in, LineWriter out) throws IOException {
+        String line;
+        while (null != (line = in.readLine())) {
+            if (in.isTooLong()) {
+                out.writeLine(tooLong());
+                continue;
+            }
+            out.writeLine(calculate(line));
+        }
+    }
+
+    private void calculateParallel(LineReader in, LineWriter out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(options.threads);
+        try {
+            Batch pending = null;
+            while (true) {
+                Batch batch = readBatch(in);
+                if (null != pending) {
+                    write(pending,out);
+                }
+                if (batch.lines.isEmpty()) {
+                    break;
+                }
+                List<String> lines = batch.lines;
+                batch.results = pool.submit(() -> calculator.calculateAll(lines,pool));
+                pending = batch;
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private Batch readBatch(LineReader in) throws IOException {
+        Batch batch = new Batch();
+        String line;
+        while (batch.lines.size() < BATCH_SIZE && null != (line = in.readLine())) {
+            if (in.isTooLong()) {
+                batch.tooLong.set(batch.lines.size());
+            }
+            batch.lines.add(line);
+        }
+        return batch;
+    }
+
+    private void write(Batch batch, LineWriter out) throws IOException {
+        List<CalculationResult> results = batch.results.join();
+        for (int i = 0; i < results.size(); i++) {
+            if (batch.tooLong.get(i)) {
+                out.writeLine(tooLong());
+            }
+            else if (batch.lines.get(i).trim().isEmpty()) {
+                out.writeLine("");
+            }
+            else {
+                CalculationResult result = results.get(i);
+                out.writeLine(result.isSuccess() ? result.value().toString() : error(result.error().getMessage()));
+            }
+        }
+    }
+
+    private String calculate(String line) {
+        if (line.trim().isEmpty()) {
+            return "";
+        }
+        try {
+            BigDecimal value = calculator.calculate(calculator.newSession(),line);
+            return value.toString();
+        }
+        catch (CalculatorException e) {
+            return error(e.getMessage());
+        }
+        catch (RuntimeException e) {
+            // like arithmetic exceptions of BigDecimal, must not stop the other lines
+            return error(e.getMessage());
+        }
+    }
+
+    private String tooLong() {
+        return error("line is longer than "+options.maxLineLength+" characters");
+    }
+
+    private String error(String message) {
+        failed = true;
+        return ERROR_PREFIX+message;
+    }
+
+    private static FileChannel openInput(Path input) throws IOException {
+        if (null == input) {
+            return new FileInputStream(FileDescriptor.in).getChannel();
+        }
+        return FileChannel.open(input,StandardOpenOption.READ);
+    }
+
+    private static FileChannel openOutput(Path output) throws IOException {
+        if (null == output) {
+            return new FileOutputStream(FileDescriptor.out).getChannel();
+        }
+        return FileChannel.open(output,StandardOpenOption.WRITE,StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Lines read together and their results once calculated
+     */
+    private static final class Batch {
+
+        final List<String> lines = new ArrayList<>(BATCH_SIZE);
+        final BitSet tooLong = new BitSet();
+        ForkJoinTask<List<CalculationResult>> results;
+    }
+
+    /**
+     * The command line options
+     */
+    static final class Options {
+
+        static final int DEFAULT_MAX_LINE_LENGTH = 64*1024;
+
+        Path input = null;
+        Path output = null;
+        int threads = 1;
+        boolean fast = false;
+        int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+        boolean help = false;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-i":
+                    case "--input":
+                        options.input = Paths.get(value(args,++i,arg));
+                        break;
+                    case "-o":
+                    case "--output":
+                        options.output = Paths.get(value(args,++i,arg));
+                        break;
+                    case "-p":
+                    case "--parallel":
+                        int threads = number(value(args,++i,arg),arg);
+                        options.threads = 0 == threads ? Runtime.getRuntime().availableProcessors() : threads;
+                        break;
+                    case "-f":
+                    case "--fast":
+                        options.fast = true;
+                        break;
+                    case "--max-line":
+                        options.maxLineLength = Math.max(1,number(value(args,++i,arg),arg));
+                        break;
+                    case "-h":
+                    case "--help":
+                        options.help = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option "+arg);
+                }
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("missing value of "+option);
+            }
+            return args[index];
+        }
+
+        private static int number(String value, String option) {
+            try {
+                int number = Integer.parseInt(value);
+                if (number < 0) {
+                    throw new NumberFormatException();
+                }
+                return number;
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid value of "+option+": "+value);
+            }
+        }
+    }
+}
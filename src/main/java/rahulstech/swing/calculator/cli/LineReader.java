@@ -0,0 +1,135 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads lines from a channel through fixed size buffers. A line longer
+ * than the maximum length is not kept in memory, it is read as an empty
+ * line and {@link #isTooLong()} reports it. Both \n and \r\n end a line.
+ *
+ * @author Rahul Bagchi
+ */
+final class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final int maxLineLength;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder();
+    private boolean tooLong = false;
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+
+    LineReader(ReadableByteChannel channel, Charset charset, int maxLineLength) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.maxLineLength = maxLineLength;
+        chars.flip();
+    }
+
+    /**
+     * @return the next line without the line terminator or {@literal null}
+     *          at the end of the input
+     * @throws IOException if fails to read
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        boolean empty = true;
+        while (true) {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                empty = false;
+                if ('\n' == c) {
+                    return takeLine();
+                }
+                if (line.length() <= maxLineLength) {
+                    // one more than the maximum for a trailing \r
+                    line.append(c);
+                }
+                else {
+                    tooLong = true;
+                }
+            }
+            if (!fill()) {
+                return empty ? null : takeLine();
+            }
+        }
+    }
+
+    /**
+     * @return {@literal true} if the last line read is longer than the
+     *          maximum length
+     */
+    boolean isTooLong() {
+        return tooLong;
+    }
+
+    private String takeLine() {
+        int length = line.length();
+        if (length > 0 && '\r' == line.charAt(length-1)) {
+            length--;
+        }
+        if (tooLong || length > maxLineLength) {
+            tooLong = true;
+            return "";
+        }
+        return line.substring(0,length);
+    }
+
+    /**
+     * Decode more characters
+     *
+     * @return {@literal false} if no more characters are available
+     */
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (!flushed && 0 == chars.position()) {
+            if (!endOfInput && channel.read(bytes) < 0) {
+                endOfInput = true;
+            }
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes,chars,endOfInput);
+            bytes.compact();
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes lines to a channel through a fixed size buffer
+ *
+ * @author Rahul Bagchi
+ */
+final class LineWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    LineWriter(WritableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Write the text followed by \n
+     *
+     * @throws IOException if fails to write
+     */
+    void writeLine(CharSequence text) throws IOException {
+        encode(CharBuffer.wrap(text));
+        encode(CharBuffer.wrap("\n"));
+    }
+
+    /**
+     * Write the buffered bytes to the channel
+     *
+     * @throws IOException if fails to write
+     */
+    void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void encode(CharBuffer text) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(text,bytes,false);
+            if (!result.isOverflow()) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.history;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+/**
+ * Flight recorder event of {@link HistoryStorage} reading or writing the
+ * history file
+ *
+ * @author Rahul Bagchi
+ */
+@Name("rahulstech.swing.calculator.HistoryIO")
+@Label("History I/O")
+@Description("History file loaded or saved")
+@Category({"Calculator","History"})
+final class HistoryEvent extends jdk.jfr.Event {
+
+    @Label("Save")
+    @Description("Written to the file, otherwise read from the file")
+    boolean save;
+
+    @Label("Entry Count")
+    int entryCount;
+
+    @Label("Bytes")
+    @Description("Size of the file after it is read or written")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Created only while the flight recorder is initialized, as loading an
+     * event class initializes the flight recorder. Started when created.
+     */
+    HistoryEvent() {
+        begin();
+    }
+
+    /**
+     * End the event and set the fields and commit if enabled
+     */
+    void commit(boolean save, int entryCount, File file) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.save = save;
+        this.entryCount = entryCount;
+        this.bytes = file.length();
+        commit();
+    }
+}
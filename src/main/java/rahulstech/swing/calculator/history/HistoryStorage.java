@@ -15,19 +15,24 @@
  */
 package rahulstech.swing.calculator.history;
 
+import jdk.jfr.FlightRecorder;
+
 import java.io.*;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * This class handles history storage related operations.
+ * This class handles history storage related operations. The history is
+ * stored in the file storage/history.txt, another file can be set by the
+ * system property {@code calculator.history.file}.
  *
  * @author Rahul Bagchi
  */
 public class HistoryStorage {
 
-    private static final File HISTORY_FILE = new File("storage/history.txt");
+    private static final File HISTORY_FILE = new File(System.getProperty("calculator.history.file",
+            "storage/history.txt"));
 
     private final static List<HistoryEntry> history = new ArrayList<>();
 
@@ -77,14 +82,20 @@ public class HistoryStorage {
      * new history entry
      */
     public static void loadHistory() {
+        HistoryEvent event = FlightRecorder.isInitialized() ? new HistoryEvent() : null;
         try (BufferedReader in = new BufferedReader(new FileReader(HISTORY_FILE))) {
             String line;
+            int count = 0;
             while (null != (line = in.readLine())) {
                 HistoryEntry entry = new HistoryEntry();
                 entry.setExpression(line);
                 entry.setResult(new BigDecimal(in.readLine()));
                 in.readLine();
                 history.add(entry);
+                count++;
+            }
+            if (null != event) {
+                event.commit(false,count,HISTORY_FILE);
             }
         }
         catch (FileNotFoundException ignore) {}
@@ -97,6 +108,7 @@ public class HistoryStorage {
      * Write changes to the file.
      */
     public static void saveHistory() {
+        HistoryEvent event = FlightRecorder.isInitialized() ? new HistoryEvent() : null;
         try (BufferedWriter out = new BufferedWriter(new FileWriter(HISTORY_FILE))) {
             for (HistoryEntry entry : history) {
                 out.write(entry.getExpression());
@@ -109,6 +121,10 @@ public class HistoryStorage {
         }
         catch (Exception e) {
             e.printStackTrace();
+            return;
+        }
+        if (null != event) {
+            event.commit(true,history.size(),HISTORY_FILE);
         }
     }
 }
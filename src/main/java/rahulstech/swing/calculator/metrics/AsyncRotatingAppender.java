@@ -0,0 +1,226 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes lines to a file by a background thread, so the threads adding
+ * lines never wait for the disk. A line added while the queue is full is
+ * dropped. When the file grows beyond the maximum size it is renamed to
+ * file.1, the older file.1 to file.2 and so on, and the oldest is deleted.
+ * A line which fails to be written is lost and counted, the file is opened
+ * again for the next line.
+ *
+ * @author Rahul Bagchi
+ */
+final class AsyncRotatingAppender implements Closeable {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    // tells the writer thread to stop, compared by identity
+    private static final String STOP = new String("STOP");
+    // time close waits for the lines to be written
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxBackups;
+    private final BlockingQueue<String> queue;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile boolean closed = false;
+
+    private OutputStream out = null;
+    private long size = 0;
+
+    /**
+     * @param file the file to write
+     * @param maxFileSize size in bytes after which the file is rotated
+     * @param maxBackups number of rotated files kept
+     * @param queueCapacity maximum number of lines waiting to be written
+     */
+    AsyncRotatingAppender(Path file, long maxFileSize, int maxBackups, int queueCapacity) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run,"appender-"+file.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Add a line to write without waiting
+     *
+     * @return {@literal false} if dropped because the queue is full or closed
+     */
+    boolean append(String line) {
+        if (closed || !queue.offer(line)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of lines dropped
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return number of times writing, rotating or closing the file failed
+     */
+    long failures() {
+        return failures.sum();
+    }
+
+    private void run() {
+        while (true) {
+            String line;
+            try {
+                line = queue.take();
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            if (STOP == line) {
+                break;
+            }
+            try {
+                write(line);
+                // flush once the lines added so far are written
+                if (queue.isEmpty() && null != out) {
+                    out.flush();
+                }
+            }
+            catch (IOException e) {
+                failures.increment();
+                closeFileQuietly();
+            }
+        }
+        try {
+            closeFile();
+        }
+        catch (IOException e) {
+            failures.increment();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        if (null == out) {
+            open();
+        }
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        out.write(LINE_SEPARATOR);
+        size += bytes.length+LINE_SEPARATOR.length;
+        if (size >= maxFileSize) {
+            rotate();
+        }
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (null != parent) {
+            Files.createDirectories(parent);
+        }
+        out = new BufferedOutputStream(Files.newOutputStream(file,StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        size = Files.size(file);
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        if (0 == maxBackups) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(backup(maxBackups));
+        for (int i = maxBackups-1; i >= 1; i--) {
+            Path backup = backup(i);
+            if (Files.exists(backup)) {
+                Files.move(backup,backup(i+1),StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file,backup(1),StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path backup(int index) {
+        return file.resolveSibling(file.getFileName()+"."+index);
+    }
+
+    private void closeFile() throws IOException {
+        OutputStream out = this.out;
+        if (null == out) {
+            return;
+        }
+        // opened again by the next write even if closing fails
+        this.out = null;
+        out.close();
+    }
+
+    private void closeFileQuietly() {
+        try {
+            closeFile();
+        }
+        catch (IOException ignored) {
+            // the failure which made the file closed is already counted
+        }
+    }
+
+    /**
+     * Write the lines already added and stop the writer thread. If the
+     * queue is full the lines waiting are dropped, and the writer thread is
+     * interrupted if it can not finish in time.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while (!queue.offer(STOP)) {
+            List<String> waiting = new ArrayList<>(queue.size());
+            queue.drainTo(waiting);
+            dropped.add(waiting.size());
+        }
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+    }
+}
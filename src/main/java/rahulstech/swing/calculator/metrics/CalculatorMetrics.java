@@ -0,0 +1,214 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters of the calculations of a calculator. Recorded only
+ * while enabled by {@code Calculator#enableMetrics()}, so a calculator
+ * without metrics pays only for a null check. The metrics can be read
+ * live through the platform MBean server after {@link #registerMBean(String)}.
+ * Many threads can record at the same time.
+ *
+ * @author Rahul Bagchi
+ */
+public class CalculatorMetrics implements CalculatorMetricsMXBean {
+
+    /**
+     * Phases of a calculation
+     */
+    public enum Phase {
+        /** splitting the expression into tokens */
+        TOKENIZE,
+        /** building the tree of a compiled expression, including optimizing it */
+        PARSE,
+        /** evaluating a compiled expression */
+        EVALUATE,
+        /**
+         * parsing and evaluating in one pass, as done by an expression
+         * which is not compiled, including tokenizing for a reader
+         */
+        PARSE_AND_EVALUATE
+    }
+
+    private static final String DOMAIN = "rahulstech.swing.calculator";
+
+    private final LatencyHistogram calculations = new LatencyHistogram();
+    private final Map<Phase,LatencyHistogram> phases = new EnumMap<>(Phase.class);
+    private final Map<String,LongAdder> operations = new ConcurrentHashMap<>();
+    private final Map<String,LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder errorCount = new LongAdder();
+    private volatile ObjectName objectName = null;
+
+    public CalculatorMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase,new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @param nanos time taken by a whole calculation
+     */
+    public void recordCalculation(long nanos) {
+        calculations.record(nanos);
+    }
+
+    /**
+     * @param phase the phase
+     * @param nanos time taken by the phase
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phases.get(phase).record(nanos);
+    }
+
+    /**
+     * @param name name of the operation
+     * @param invocations number of invocations
+     */
+    public void recordOperation(String name, long invocations) {
+        operations.computeIfAbsent(name,key -> new LongAdder()).add(invocations);
+    }
+
+    /**
+     * @param error the exception which failed a calculation
+     */
+    public void recordError(Throwable error) {
+        errorCount.increment();
+        errors.computeIfAbsent(error.getClass().getSimpleName(),key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return latency histogram of the whole calculations
+     */
+    public LatencyHistogram latency() {
+        return calculations;
+    }
+
+    /**
+     * @return latency histogram of the phase
+     */
+    public LatencyHistogram latency(Phase phase) {
+        return phases.get(phase);
+    }
+
+    @Override
+    public long getCalculationCount() {
+        return calculations.count();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public LatencySummary getCalculationLatency() {
+        return LatencySummary.of(calculations);
+    }
+
+    @Override
+    public Map<String,LatencySummary> getPhaseLatencies() {
+        Map<String,LatencySummary> latencies = new LinkedHashMap<>();
+        phases.forEach((phase,histogram) -> latencies.put(phase.name(),LatencySummary.of(histogram)));
+        return latencies;
+    }
+
+    @Override
+    public Map<String,Long> getOperationInvocations() {
+        return snapshot(operations);
+    }
+
+    @Override
+    public Map<String,Long> getErrors() {
+        return snapshot(errors);
+    }
+
+    @Override
+    public void reset() {
+        calculations.reset();
+        phases.values().forEach(LatencyHistogram::reset);
+        operations.clear();
+        errors.clear();
+        errorCount.reset();
+    }
+
+    /**
+     * Register as an MBean named rahulstech.swing.calculator:type=CalculatorMetrics,name=<name>
+     * in the platform MBean server
+     *
+     * @param name name to tell apart the calculators
+     * @return the object name registered
+     * @throws IllegalStateException if fails to register, like the name is already used
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (null != objectName) {
+            throw new IllegalStateException("already registered as "+objectName);
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN+":type=CalculatorMetrics,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,objectName);
+            this.objectName = objectName;
+            return objectName;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("can not register metrics "+name,e);
+        }
+    }
+
+    /**
+     * Remove from the platform MBean server if registered
+     */
+    public synchronized void unregisterMBean() {
+        if (null == objectName) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("can not unregister metrics "+objectName,e);
+        }
+        finally {
+            objectName = null;
+        }
+    }
+
+    private static Map<String,Long> snapshot(Map<String,LongAdder> counters) {
+        Map<String,Long> snapshot = new TreeMap<>();
+        counters.forEach((name,counter) -> snapshot.put(name,counter.sum()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public String toString() {
+        return "CalculatorMetrics(calculations="+calculations+", errors="+getErrors()
+                +", operations="+getOperationInvocations()+")";
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link CalculatorMetrics}, readable by JConsole
+ * or any other JMX client
+ *
+ * @author Rahul Bagchi
+ */
+public interface CalculatorMetricsMXBean {
+
+    /**
+     * @return number of calculations, successful or not
+     */
+    long getCalculationCount();
+
+    /**
+     * @return number of failed calculations
+     */
+    long getErrorCount();
+
+    /**
+     * @return latency of the whole calculations
+     */
+    LatencySummary getCalculationLatency();
+
+    /**
+     * @return latency of each phase of the calculations by the name of the phase
+     */
+    Map<String,LatencySummary> getPhaseLatencies();
+
+    /**
+     * @return number of invocations of each operation by its name
+     */
+    Map<String,Long> getOperationInvocations();
+
+    /**
+     * @return number of failed calculations by the simple name of the exception class
+     */
+    Map<String,Long> getErrors();
+
+    /**
+     * Start counting from 0 again
+     */
+    void reset();
+}
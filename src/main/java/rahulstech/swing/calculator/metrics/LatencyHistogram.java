@@ -0,0 +1,143 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in nanoseconds into buckets of about 6% width, so
+ * percentiles like p50 and p99 are known without keeping every value.
+ * The memory used is fixed. Many threads can record at the same time.
+ *
+ * @author Rahul Bagchi
+ */
+public final class LatencyHistogram {
+
+    // each power of 2 is divided into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64-SUB_BUCKET_BITS+1)*SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max,0);
+
+    /**
+     * @param nanos the latency in nanoseconds, negative values are taken as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0,nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the highest latency in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the average latency in nanoseconds, 0 if nothing recorded
+     */
+    public long mean() {
+        long count = count();
+        return 0 == count ? 0 : total.sum()/count;
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100, like 99 for p99
+     * @return the latency in nanoseconds which the given percent of the
+     *          latencies do not exceed, rounded up to the end of its bucket,
+     *          0 if nothing recorded
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long count = count();
+        if (0 == count) {
+            return 0;
+        }
+        long rank = Math.max(1,(long) Math.ceil(count*percentile/100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highestOf(i),max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Forget all the latencies recorded
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i,0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63-Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent-SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+        return (exponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS+subBucket;
+    }
+
+    private static long highestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index/SUB_BUCKETS+SUB_BUCKET_BITS-1;
+        long subBucket = index%SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS+subBucket) << (exponent-SUB_BUCKET_BITS);
+        return lowest+(1L << (exponent-SUB_BUCKET_BITS))-1;
+    }
+
+    /**
+     * @return count, mean, p50, p99 and max in microseconds
+     */
+    @Override
+    public String toString() {
+        return "count="+count()+" mean="+micros(mean())+"us p50="+micros(percentile(50))
+                +"us p99="+micros(percentile(99))+"us max="+micros(max())+"us";
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count and percentiles of a {@link LatencyHistogram} at a moment, in
+ * microseconds, readable by JMX clients
+ *
+ * @author Rahul Bagchi
+ */
+public final class LatencySummary {
+
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    public LatencySummary(long count, long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * @return summary of the histogram now
+     */
+    public static LatencySummary of(LatencyHistogram histogram) {
+        return new LatencySummary(histogram.count(),micros(histogram.mean()),micros(histogram.percentile(50)),
+                micros(histogram.percentile(99)),micros(histogram.max()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "count="+count+" mean="+meanMicros+"us p50="+p50Micros+"us p99="+p99Micros+"us max="+maxMicros+"us";
+    }
+}
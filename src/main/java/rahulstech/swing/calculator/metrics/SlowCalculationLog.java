@@ -0,0 +1,275 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log of the calculations slower than a threshold, set on a calculator by
+ * {@code Calculator#setSlowCalculationLog(SlowCalculationLog)}. Each slow
+ * calculation is written as one line with the time, the thread, the time
+ * of each phase, the slowest operation and the expression, like
+ * <pre>
+ * 2021-05-01T10:15:30.123Z thread=main total=2345.120ms evaluate=2345.001ms slowest=^ 2344.900ms expression="2^99999"
+ * </pre>
+ * The lines are written to a rotating file by a background thread, a
+ * calculation never waits for the disk; a line is dropped if too many are
+ * waiting. Only a sample of the slow calculations can be written to limit
+ * the size of the log. The expression can be truncated, or replaced by a
+ * hash when the expressions must not be stored.
+ *
+ * @author Rahul Bagchi
+ */
+public class SlowCalculationLog implements Closeable {
+
+    public static final long DEFAULT_MAX_FILE_SIZE = 10*1024*1024;
+    public static final int DEFAULT_MAX_BACKUPS = 5;
+    public static final Duration DEFAULT_THRESHOLD = Duration.ofMillis(100);
+    public static final int DEFAULT_MAX_EXPRESSION_LENGTH = 256;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final AsyncRotatingAppender appender;
+    private final LongAdder slowCount = new LongAdder();
+    private volatile long thresholdNanos = DEFAULT_THRESHOLD.toNanos();
+    private volatile int maxExpressionLength = DEFAULT_MAX_EXPRESSION_LENGTH;
+    private volatile boolean hashExpressions = false;
+    private volatile double samplingRate = 1;
+
+    /**
+     * Create a log writing to the file with the default rotation
+     *
+     * @param file the file to write
+     */
+    public SlowCalculationLog(Path file) {
+        this(file,DEFAULT_MAX_FILE_SIZE,DEFAULT_MAX_BACKUPS);
+    }
+
+    /**
+     * Create a log writing to the file
+     *
+     * @param file the file to write
+     * @param maxFileSize size in bytes after which the file is rotated
+     * @param maxBackups number of rotated files kept
+     * @throws IllegalArgumentException if maxFileSize is not positive or maxBackups is negative
+     */
+    public SlowCalculationLog(Path file, long maxFileSize, int maxBackups) {
+        if (null == file) {
+            throw new NullPointerException("file == null");
+        }
+        if (maxFileSize < 1) {
+            throw new IllegalArgumentException("maxFileSize must be at least 1");
+        }
+        if (maxBackups < 0) {
+            throw new IllegalArgumentException("maxBackups can not be negative");
+        }
+        this.appender = new AsyncRotatingAppender(file,maxFileSize,maxBackups,QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param threshold calculations taking longer are logged
+     */
+    public void setThreshold(Duration threshold) {
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("threshold can not be negative");
+        }
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    public Duration getThreshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+
+    /**
+     * @param length longer expressions are truncated to this length
+     */
+    public void setMaxExpressionLength(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1");
+        }
+        this.maxExpressionLength = length;
+    }
+
+    public int getMaxExpressionLength() {
+        return maxExpressionLength;
+    }
+
+    /**
+     * @param hash {@literal true} to log the SHA-256 hash of the expression
+     *             instead of the expression
+     */
+    public void setHashExpressions(boolean hash) {
+        this.hashExpressions = hash;
+    }
+
+    public boolean isHashExpressions() {
+        return hashExpressions;
+    }
+
+    /**
+     * @param rate fraction of the slow calculations logged, from 0 exclusive to 1
+     */
+    public void setSamplingRate(double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("sampling rate must be greater than 0 and at most 1");
+        }
+        this.samplingRate = rate;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * @return {@literal true} if a calculation taking the time is logged
+     */
+    public boolean isSlow(long nanos) {
+        return nanos > thresholdNanos;
+    }
+
+    /**
+     * Log the calculation if slower than the threshold and chosen by the sampling
+     *
+     * @param expression the expression or {@literal null} if read from a stream
+     * @param nanos time taken by the calculation
+     * @param phases time taken by each phase of the calculation, phases not run are 0
+     * @param slowestOperation name of the slowest operation or {@literal null} if unknown
+     * @param slowestOperationNanos time taken by the slowest operation
+     * @param thread the calculating thread
+     */
+    public void record(String expression, long nanos, Map<CalculatorMetrics.Phase,Long> phases,
+                       String slowestOperation, long slowestOperationNanos, Thread thread) {
+        if (!isSlow(nanos)) {
+            return;
+        }
+        slowCount.increment();
+        double samplingRate = this.samplingRate;
+        if (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(128);
+        line.append(Instant.now()).append(" thread=").append(thread.getName());
+        appendMillis(line.append(" total="),nanos);
+        phases.forEach((phase,phaseNanos) -> {
+            if (phaseNanos > 0) {
+                appendMillis(line.append(' ').append(phase.name().toLowerCase()).append('='),phaseNanos);
+            }
+        });
+        if (null != slowestOperation) {
+            appendMillis(line.append(" slowest=").append(slowestOperation).append(' '),slowestOperationNanos);
+        }
+        line.append(" expression=");
+        appendExpression(line,expression);
+        appender.append(line.toString());
+    }
+
+    private void appendExpression(StringBuilder line, String expression) {
+        if (null == expression) {
+            line.append('-');
+            return;
+        }
+        if (hashExpressions) {
+            line.append("sha256:").append(sha256(expression));
+            return;
+        }
+        int length = Math.min(expression.length(),maxExpressionLength);
+        line.append('"');
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if ('"' == c || '\\' == c) {
+                line.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                line.append(' ');
+            }
+            else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+        if (length < expression.length()) {
+            line.append("...(").append(expression.length()).append(" chars)");
+        }
+    }
+
+    private static void appendMillis(StringBuilder line, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        line.append(micros/1000).append('.');
+        long fraction = micros%1000;
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction).append("ms");
+    }
+
+    private static String sha256(String expression) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(expression.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF,16)).append(Character.forDigit(b & 0xF,16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every JVM supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return number of slow calculations, including the ones not logged
+     */
+    public long slowCount() {
+        return slowCount.sum();
+    }
+
+    /**
+     * @return number of lines dropped because too many were waiting to be written
+     */
+    public long droppedCount() {
+        return appender.dropped();
+    }
+
+    /**
+     * @return number of times writing the file failed, the lines being
+     *          written are lost but the log goes on
+     */
+    public long failureCount() {
+        return appender.failures();
+    }
+
+    /**
+     * Write the lines waiting and close the file
+     */
+    @Override
+    public void close() {
+        appender.close();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates a batch of independent expressions in parallel. Each
+ * expression is calculated with its own new {@link Session}, so ANS is 0
+ * and the expressions do not affect each other. Results are written into
+ * an array at the index of the expression, so they are in input order
+ * whatever order the threads finish in.
+ *
+ * @author Rahul Bagchi
+ */
+final class BatchCalculation {
+
+    // minimum number of expressions calculated by a single task
+    private static final int MIN_CHUNK_SIZE = 16;
+    // number of tasks per thread, more tasks balance uneven expressions better
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final Calculator calculator;
+    private final String[] expressions;
+    private final CalculationResult[] results;
+    // null if the expressions have no limits
+    private final EvaluationLimits limits;
+
+    BatchCalculation(Calculator calculator, List<String> expressions, EvaluationLimits limits) {
+        this.calculator = calculator;
+        this.limits = limits;
+        // copied for fast access by index from any list
+        this.expressions = expressions.toArray(new String[0]);
+        this.results = new CalculationResult[this.expressions.length];
+    }
+
+    /**
+     * Calculate by splitting the batch recursively in the fork join pool
+     */
+    List<CalculationResult> run(ForkJoinPool pool) {
+        int chunkSize = chunkSize(pool.getParallelism());
+        pool.invoke(new Task(0,results.length,chunkSize));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Calculate by submitting chunks of the batch to the executor and
+     * wait for all of them
+     */
+    List<CalculationResult> run(Executor executor) {
+        int chunkSize = chunkSize(Runtime.getRuntime().availableProcessors());
+        int chunks = (results.length+chunkSize-1)/chunkSize;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+        for (int i = 0; i < chunks; i++) {
+            int from = i*chunkSize;
+            int to = Math.min(from+chunkSize,results.length);
+            futures[i] = CompletableFuture.runAsync(() -> calculate(from,to),executor);
+        }
+        CompletableFuture.allOf(futures).join();
+        return Arrays.asList(results);
+    }
+
+    private int chunkSize(int parallelism) {
+        return Math.max(MIN_CHUNK_SIZE,results.length/(Math.max(1,parallelism)*TASKS_PER_THREAD));
+    }
+
+    private void calculate(int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = calculate(expressions[i]);
+        }
+    }
+
+    private CalculationResult calculate(String expression) {
+        try {
+            Session session = calculator.newSession();
+            BigDecimal value = null == limits ? calculator.calculate(session,expression)
+                    : calculator.calculate(session,expression,limits);
+            return new CalculationResult(expression,value,null);
+        }
+        catch (CalculatorException e) {
+            return new CalculationResult(expression,null,e);
+        }
+        catch (RuntimeException e) {
+            // like arithmetic exceptions of BigDecimal, must not stop the batch
+            return new CalculationResult(expression,null,new CalculatorException(String.valueOf(e.getMessage()),e));
+        }
+    }
+
+    private final class Task extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        Task(int from, int to, int chunkSize) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to-from <= chunkSize) {
+                calculate(from,to);
+                return;
+            }
+            int middle = (from+to) >>> 1;
+            invokeAll(new Task(from,middle,chunkSize),new Task(middle,to,chunkSize));
+        }
+    }
+}
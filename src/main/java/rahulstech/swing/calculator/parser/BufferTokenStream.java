@@ -0,0 +1,86 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * {@link TokenStream} over the tokens of a {@link TokenBuffer}
+ *
+ * @author Rahul Bagchi
+ */
+class BufferTokenStream implements TokenStream {
+
+    private final TokenBuffer tokens;
+    private final int tokenCount;
+    private int index = 0;
+
+    BufferTokenStream(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.tokenCount = tokens.size();
+    }
+
+    TokenBuffer buffer() {
+        return tokens;
+    }
+
+    @Override
+    public boolean hasToken(int offset) {
+        return index+offset < tokenCount;
+    }
+
+    @Override
+    public TokenType type(int offset) {
+        return tokens.type(index+offset);
+    }
+
+    @Override
+    public boolean matches(int offset, String literal) {
+        return tokens.matches(index+offset,literal);
+    }
+
+    @Override
+    public int length(int offset) {
+        return tokens.length(index+offset);
+    }
+
+    @Override
+    public char charAt(int offset, int position) {
+        return tokens.charAt(index+offset,position);
+    }
+
+    @Override
+    public int copyChars(int offset, char[] dest) {
+        return tokens.copyChars(index+offset,dest);
+    }
+
+    @Override
+    public String literal(int offset) {
+        return tokens.literal(index+offset);
+    }
+
+    @Override
+    public Token token(int offset) {
+        return tokens.token(index+offset);
+    }
+
+    @Override
+    public void advance() {
+        int newIndex = index+1;
+        if (newIndex > tokenCount) {
+            throw new IndexOutOfBoundsException("can not move pointer @ "+newIndex);
+        }
+        index = newIndex;
+    }
+}
@@ -0,0 +1,799 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * Generates a class implementing {@link Evaluator} for the tree of a
+ * {@link CompiledExpression}. The generated methods, one with BigDecimal
+ * and one with long integers, perform the operations of the tree one after
+ * another without any branch, so the JIT compiler can inline the operations
+ * into them. Number literals and operations are kept in final fields of the
+ * generated class.
+ * <p>
+ * A node which can not be generated, like a shared subexpression, or a
+ * subtree which does not fit in the limit of the length of the code, is
+ * evaluated by calling the interpreter for that node from the generated code,
+ * so the rest of the expression still runs generated code.
+ * </p>
+ * <p>
+ * The class is defined as a hidden class when the JVM supports it (Java 15
+ * or later) so it is unloaded with the expression, otherwise it is defined
+ * in the package of this class.
+ * </p>
+ *
+ * @author Rahul Bagchi
+ */
+final class BytecodeCompiler {
+
+    private static final String CLASS_PREFIX = "rahulstech/swing/calculator/parser/GeneratedEvaluator$";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String BIG_DECIMAL = "java/math/BigDecimal";
+    private static final String EVALUATOR = "rahulstech/swing/calculator/parser/Evaluator";
+    private static final String NODE = "rahulstech/swing/calculator/parser/Node";
+    private static final String BINARY_OPERATOR = "rahulstech/swing/calculator/parser/operation/BinaryOperator";
+    private static final String PARAMETERIZED_OPERATION = "rahulstech/swing/calculator/parser/operation/ParameterizedOperation";
+    private static final String EVALUATE_DESCRIPTOR =
+            "(Ljava/math/BigDecimal;[Ljava/math/BigDecimal;)Ljava/math/BigDecimal;";
+    private static final String EVALUATE_LONGS_DESCRIPTOR = "(J[J)J";
+
+    // HotSpot does not compile methods larger than this
+    private static final int MAX_CODE_LENGTH = 8000;
+    private static final int MAX_FIELDS = 0xFFFF;
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    // Lookup.defineHiddenClass, null if not available
+    private static final Method DEFINE_HIDDEN_CLASS;
+    private static final Object NO_CLASS_OPTIONS;
+
+    static {
+        Method defineHiddenClass = null;
+        Object options = null;
+        try {
+            Class<?> optionType = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(optionType,0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class,boolean.class,options.getClass());
+        }
+        catch (ReflectiveOperationException ignore) {}
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        NO_CLASS_OPTIONS = options;
+    }
+
+    // thrown when a node or operation can not be generated
+    private static final class UnsupportedNodeException extends Exception {
+        UnsupportedNodeException(String message) {
+            super(message,null,false,false);
+        }
+    }
+
+    private final String className = CLASS_PREFIX+CLASS_COUNTER.incrementAndGet();
+
+    // constant pool
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String,Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    // fields holding the literals and operations
+    private final Map<Object,Integer> fieldIndexes = new IdentityHashMap<>();
+    private final List<Object> fieldValues = new ArrayList<>();
+    private final List<String> fieldTypes = new ArrayList<>();
+
+    // code of the method being generated, evaluateLongs if longs is true
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private boolean longs = false;
+    private int stack = 0;
+    private int maxStack = 0;
+    // length of the code of each node with its children, see measure
+    private final Map<Node,Integer> lengths = new IdentityHashMap<>();
+
+    private BytecodeCompiler() {}
+
+    /**
+     * Generate an evaluator for the tree
+     *
+     * @param root root of the tree
+     * @return the evaluator or {@literal null} if the whole tree must be
+     *          evaluated by the interpreter or the class can not be defined
+     */
+    static Evaluator compile(Node root) {
+        try {
+            return new BytecodeCompiler().generate(root);
+        }
+        catch (UnsupportedNodeException | ReflectiveOperationException | LinkageError | IOException e) {
+            return null;
+        }
+    }
+
+    private Evaluator generate(Node root) throws UnsupportedNodeException, ReflectiveOperationException, IOException {
+        byte[] evaluate = generateMethod(root,false);
+        int evaluateMaxStack = maxStack;
+        byte[] evaluateLongs = generateMethod(root,true);
+        int evaluateLongsMaxStack = maxStack;
+        byte[] bytes = toClassFile(evaluate,evaluateMaxStack,evaluateLongs,evaluateLongsMaxStack);
+
+        MethodHandles.Lookup lookup;
+        if (null != DEFINE_HIDDEN_CLASS) {
+            lookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(LOOKUP,bytes,false,NO_CLASS_OPTIONS);
+        }
+        else {
+            lookup = LOOKUP.in(LOOKUP.defineClass(bytes));
+        }
+        MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class,Object[].class));
+        try {
+            return (Evaluator) constructor.invoke(fieldValues.toArray());
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new ReflectiveOperationException(e);
+        }
+    }
+
+    /**
+     * Generate the code of evaluate, or of evaluateLongs if longs is true
+     */
+    private byte[] generateMethod(Node root, boolean longs) throws UnsupportedNodeException {
+        this.longs = longs;
+        code.reset();
+        stack = 0;
+        maxStack = 0;
+        measure(root);
+        // one byte is left for the return instruction
+        if (!emit(root,MAX_CODE_LENGTH-1)) {
+            throw new UnsupportedNodeException("expression too large");
+        }
+        op(longs ? 0xAD : 0xB0); // lreturn or areturn
+        if (code.size() > MAX_CODE_LENGTH) {
+            throw new UnsupportedNodeException("expression too large");
+        }
+        return code.toByteArray();
+    }
+
+    /**
+     * Find the length of the code of each node with its children, up to
+     * {@link #MAX_CODE_LENGTH}+1, walking the tree with a stack of nodes
+     * in place of recursion
+     */
+    private void measure(Node root) {
+        lengths.clear();
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        int top = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            Node node = nodes[top];
+            int index = next[top]++;
+            if (!isInterpreted(node) && index < node.childCount()) {
+                Node child = node.child(index);
+                if (!lengths.containsKey(child)) {
+                    if (++top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes,top << 1);
+                        next = Arrays.copyOf(next,top << 1);
+                    }
+                    nodes[top] = child;
+                    next[top] = 0;
+                }
+                continue;
+            }
+            int length = ownLength(node);
+            if (!isInterpreted(node)) {
+                for (int i = 0; i < node.childCount(); i++) {
+                    length = Math.min(length+lengths.get(node.child(i)),MAX_CODE_LENGTH+1);
+                }
+            }
+            lengths.put(node,length);
+            top--;
+        }
+    }
+
+    /**
+     * Generate the instructions leaving the value of the root on the stack.
+     * The operations are generated as long as the code fits in the budget,
+     * the subtrees which do not fit are evaluated by calling the interpreter.
+     * A stack of nodes is used in place of recursion so deeply nested
+     * expressions do not overflow the stack.
+     *
+     * @param budget maximum length of the code
+     * @return {@literal false} if the whole tree is evaluated by the interpreter
+     */
+    private boolean emit(Node root, int budget) throws UnsupportedNodeException {
+        if (!fits(root,budget)) {
+            emitInterpreted(root);
+            return false;
+        }
+        if (isLeaf(root)) {
+            emitLeaf(root);
+            return true;
+        }
+        Node[] nodes = new Node[16];
+        // index of the next child to generate
+        int[] next = new int[16];
+        // bytes of the budget left after the remaining children
+        int[] spare = new int[16];
+        // where the code of the last child started
+        int[] start = new int[16];
+        int top = 0;
+        nodes[0] = root;
+        spare[0] = budget-minimumLength(root);
+        emitBefore(root,0);
+        while (top >= 0) {
+            Node node = nodes[top];
+            int index = next[top];
+            if (index > 0) {
+                // the child before is generated, inlined or not
+                spare[top] -= code.size()-start[top]-reservedLength(node.child(index-1));
+                emitAfter(node,index-1);
+            }
+            if (index == node.childCount()) {
+                emitEnd(node);
+                top--;
+                continue;
+            }
+            next[top] = index+1;
+            if (index > 0) {
+                emitBefore(node,index);
+            }
+            start[top] = code.size();
+            Node child = node.child(index);
+            int childBudget = reservedLength(child)+spare[top];
+            if (!fits(child,childBudget)) {
+                emitInterpreted(child);
+            }
+            else if (isLeaf(child)) {
+                emitLeaf(child);
+            }
+            else {
+                if (++top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes,top << 1);
+                    next = Arrays.copyOf(next,top << 1);
+                    spare = Arrays.copyOf(spare,top << 1);
+                    start = Arrays.copyOf(start,top << 1);
+                }
+                nodes[top] = child;
+                next[top] = 0;
+                spare[top] = childBudget-minimumLength(child);
+                emitBefore(child,0);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@literal true} if the node can be generated in the budget with
+     *          the children which do not fit evaluated by the interpreter
+     */
+    private boolean fits(Node node, int budget) {
+        return !isInterpreted(node) && minimumLength(node) <= budget;
+    }
+
+    /**
+     * @return length of the code of the node if its children longer than
+     *          a call to the interpreter are evaluated by the interpreter
+     */
+    private int minimumLength(Node node) {
+        int length = ownLength(node);
+        for (int i = 0; i < node.childCount(); i++) {
+            length += reservedLength(node.child(i));
+        }
+        return length;
+    }
+
+    /**
+     * @return length of the code kept for a child in the budget of its parent
+     */
+    private int reservedLength(Node child) {
+        return Math.min(lengths.get(child),interpretedLength());
+    }
+
+    /**
+     * @return {@literal true} if the node is always evaluated by the interpreter
+     */
+    private static boolean isInterpreted(Node node) {
+        if (node instanceof Node.Literal || node instanceof Node.Answer || node instanceof Node.Chain) {
+            return false;
+        }
+        if (node instanceof Node.Variable) {
+            return ((Node.Variable) node).index() > Short.MAX_VALUE;
+        }
+        if (node instanceof Node.Call) {
+            return ((Node.Call) node).parameterCount() > Short.MAX_VALUE;
+        }
+        // a shared node calculates once for all the places by itself
+        return true;
+    }
+
+    private static boolean isLeaf(Node node) {
+        return !(node instanceof Node.Chain || node instanceof Node.Call);
+    }
+
+    private int interpretedLength() {
+        return longs ? 12 : 9;
+    }
+
+    /**
+     * @return length of the code generated for the node excluding its children
+     */
+    private int ownLength(Node node) {
+        if (isInterpreted(node)) {
+            return interpretedLength();
+        }
+        if (node instanceof Node.Literal) {
+            if (longs) {
+                return NOT_A_LONG == Node.longValue(((Node.Literal) node).value()) ? 6 : 3;
+            }
+            return 4;
+        }
+        if (node instanceof Node.Answer) {
+            return longs ? 4 : 1;
+        }
+        if (node instanceof Node.Variable) {
+            return (longs ? 5 : 2)+intLength(((Node.Variable) node).index());
+        }
+        if (node instanceof Node.Chain) {
+            return ((Node.Chain) node).size()*(longs ? 12 : 8);
+        }
+        int count = node.childCount();
+        int length = longs ? 12 : 9;
+        if (usesArray(count)) {
+            length += 2*intLength(count)+(longs ? 3 : 4);
+            for (int i = 0; i < count; i++) {
+                length += 2+intLength(i);
+            }
+        }
+        return length;
+    }
+
+    private static int intLength(int value) {
+        return value <= 5 ? 1 : value <= Byte.MAX_VALUE ? 2 : 3;
+    }
+
+    private void emitLeaf(Node node) throws UnsupportedNodeException {
+        if (node instanceof Node.Literal) {
+            BigDecimal value = ((Node.Literal) node).value();
+            if (longs) {
+                long longValue = Node.longValue(value);
+                op(0x14); // ldc2_w
+                u2(longConstant(longValue));
+                push(2);
+                if (NOT_A_LONG == longValue) {
+                    checkLong();
+                }
+            }
+            else {
+                loadField(value,BIG_DECIMAL);
+            }
+        }
+        else if (node instanceof Node.Answer) {
+            if (longs) {
+                op(0x1F); // lload_1
+                push(2);
+                checkLong();
+            }
+            else {
+                op(0x2B); // aload_1
+                push(1);
+            }
+        }
+        else {
+            op(longs ? 0x2D : 0x2C); // aload_3 or aload_2
+            push(1);
+            pushInt(((Node.Variable) node).index());
+            if (longs) {
+                op(0x2F); // laload
+                checkLong();
+            }
+            else {
+                op(0x32); // aaload
+                push(-1);
+            }
+        }
+    }
+
+    /**
+     * Generate the call to the interpreter for the node
+     */
+    private void emitInterpreted(Node node) throws UnsupportedNodeException {
+        loadField(node,NODE);
+        if (longs) {
+            op(0x1F); // lload_1
+            op(0x2D); // aload_3
+            push(3);
+            op(0xB6); // invokevirtual
+            u2(methodRef(NODE,"evaluateAsLong",EVALUATE_LONGS_DESCRIPTOR,false));
+            push(-2);
+            checkLong();
+        }
+        else {
+            op(0x2B); // aload_1
+            op(0x2C); // aload_2
+            push(2);
+            op(0xB6); // invokevirtual
+            u2(methodRef(NODE,"evaluate",EVALUATE_DESCRIPTOR,false));
+            push(-2);
+        }
+    }
+
+    /**
+     * Generate the instructions of a node before its child
+     */
+    private void emitBefore(Node node, int index) throws UnsupportedNodeException {
+        if (node instanceof Node.Chain) {
+            if (index > 0) {
+                // stack: result -> operator, result -> operator, result, operand
+                loadField(((Node.Chain) node).operator(index-1),BINARY_OPERATOR);
+                if (longs) {
+                    op(0x5B); // dup_x2
+                    push(1);
+                    op(0x57); // pop
+                    push(-1);
+                }
+                else {
+                    op(0x5F); // swap
+                }
+            }
+            return;
+        }
+        int count = node.childCount();
+        if (0 == index) {
+            loadField(((Node.Call) node).function(),PARAMETERIZED_OPERATION);
+            if (usesArray(count)) {
+                pushInt(count);
+                if (longs) {
+                    op(0xBC); // newarray
+                    op(11); // long
+                }
+                else {
+                    op(0xBD); // anewarray
+                    u2(classRef(BIG_DECIMAL));
+                }
+            }
+        }
+        if (usesArray(count) && index < count) {
+            op(0x59); // dup
+            push(1);
+            pushInt(index);
+        }
+    }
+
+    /**
+     * Generate the instructions of a node after its child
+     */
+    private void emitAfter(Node node, int index) {
+        if (node instanceof Node.Chain) {
+            if (index > 0) {
+                op(0xB6); // invokevirtual
+                if (longs) {
+                    u2(methodRef(BINARY_OPERATOR,"applyAsLong","(JJ)J",false));
+                    push(-3);
+                    checkLong();
+                }
+                else {
+                    u2(methodRef(BINARY_OPERATOR,"apply",
+                            "(Ljava/math/BigDecimal;Ljava/math/BigDecimal;)Ljava/math/BigDecimal;",false));
+                    push(-2);
+                }
+            }
+            return;
+        }
+        if (usesArray(node.childCount())) {
+            op(longs ? 0x50 : 0x53); // lastore or aastore
+            push(longs ? -4 : -3);
+        }
+    }
+
+    /**
+     * Generate the instructions of a node after all its children
+     */
+    private void emitEnd(Node node) {
+        if (node instanceof Node.Chain) {
+            return;
+        }
+        int count = node.childCount();
+        if (longs) {
+            if (1 == count) {
+                invokeApply("applyAsLong","(J)J",3,2);
+            }
+            else if (2 == count) {
+                invokeApply("applyAsLong","(JJ)J",5,2);
+            }
+            else {
+                pushInt(0);
+                pushInt(count);
+                invokeApply("applyAsLong","([JII)J",4,2);
+            }
+            checkLong();
+        }
+        else if (1 == count) {
+            invokeApply("apply","(Ljava/math/BigDecimal;)Ljava/math/BigDecimal;",2,1);
+        }
+        else if (2 == count) {
+            invokeApply("apply","(Ljava/math/BigDecimal;Ljava/math/BigDecimal;)Ljava/math/BigDecimal;",3,1);
+        }
+        else {
+            pushInt(0);
+            pushInt(count);
+            invokeApply("apply","([Ljava/math/BigDecimal;II)Ljava/math/BigDecimal;",4,1);
+        }
+    }
+
+    /**
+     * @return {@literal true} if the parameters of a function are passed in an array
+     */
+    private static boolean usesArray(int count) {
+        return 1 != count && 2 != count;
+    }
+
+    private void checkLong() {
+        op(0xB8); // invokestatic
+        u2(methodRef(EVALUATOR,"checkLong","(J)J",true));
+    }
+
+    private void invokeApply(String name, String descriptor, int argumentSlots, int resultSlots) {
+        op(0xB9); // invokeinterface
+        u2(methodRef(PARAMETERIZED_OPERATION,name,descriptor,true));
+        op(argumentSlots);
+        op(0);
+        push(resultSlots-argumentSlots);
+    }
+
+    /**
+     * Load the final field holding the value, adding a new field if needed
+     */
+    private void loadField(Object value, String type) throws UnsupportedNodeException {
+        Integer index = fieldIndexes.get(value);
+        if (null == index) {
+            index = fieldValues.size();
+            if (index >= MAX_FIELDS) {
+                throw new UnsupportedNodeException("too many constants");
+            }
+            fieldIndexes.put(value,index);
+            fieldValues.add(value);
+            fieldTypes.add(type);
+        }
+        op(0x2A); // aload_0
+        push(1);
+        op(0xB4); // getfield
+        u2(fieldRef(index));
+    }
+
+    private void pushInt(int value) {
+        if (value <= 5) {
+            op(0x03+value); // iconst_<n>
+        }
+        else if (value <= Byte.MAX_VALUE) {
+            op(0x10); // bipush
+            op(value);
+        }
+        else {
+            op(0x11); // sipush
+            u2(value);
+        }
+        push(1);
+    }
+
+    private void push(int slots) {
+        stack += slots;
+        maxStack = Math.max(maxStack,stack);
+    }
+
+    private void op(int b) {
+        code.write(b);
+    }
+
+    private void u2(int value) {
+        code.write(value >>> 8);
+        code.write(value);
+    }
+
+    private byte[] toClassFile(byte[] evaluate, int evaluateMaxStack,
+                               byte[] evaluateLongs, int evaluateLongsMaxStack) throws IOException {
+        // constructor: store each element of the argument array in its field
+        ByteArrayOutputStream init = new ByteArrayOutputStream();
+        DataOutputStream initCode = new DataOutputStream(init);
+        initCode.writeByte(0x2A); // aload_0
+        initCode.writeByte(0xB7); // invokespecial
+        initCode.writeShort(methodRef(OBJECT,"<init>","()V",false));
+        for (int i = 0; i < fieldValues.size(); i++) {
+            initCode.writeByte(0x2A); // aload_0
+            initCode.writeByte(0x2B); // aload_1
+            initCode.writeByte(0x11); // sipush
+            initCode.writeShort(i);
+            initCode.writeByte(0x32); // aaload
+            initCode.writeByte(0xC0); // checkcast
+            initCode.writeShort(classRef(fieldTypes.get(i)));
+            initCode.writeByte(0xB5); // putfield
+            initCode.writeShort(fieldRef(i));
+        }
+        initCode.writeByte(0xB1); // return
+
+        int thisClass = classRef(className);
+        int superClass = classRef(OBJECT);
+        int evaluator = classRef(EVALUATOR);
+        int codeName = utf8("Code");
+        int initName = utf8("<init>");
+        int initDescriptor = utf8("([Ljava/lang/Object;)V");
+        int evaluateName = utf8("evaluate");
+        int evaluateDescriptor = utf8(EVALUATE_DESCRIPTOR);
+        int evaluateLongsName = utf8("evaluateLongs");
+        int evaluateLongsDescriptor = utf8(EVALUATE_LONGS_DESCRIPTOR);
+        int[] fieldNames = new int[fieldValues.size()];
+        int[] fieldDescriptors = new int[fieldValues.size()];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = utf8("c"+i);
+            fieldDescriptors[i] = utf8("L"+fieldTypes.get(i)+";");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor version
+        out.writeShort(53); // major version, java 9
+        out.writeShort(poolCount);
+        pool.flush();
+        poolBytes.writeTo(out);
+        out.writeShort(0x0010 | 0x0020); // final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(evaluator);
+
+        out.writeShort(fieldNames.length);
+        for (int i = 0; i < fieldNames.length; i++) {
+            out.writeShort(0x0002 | 0x0010); // private final
+            out.writeShort(fieldNames[i]);
+            out.writeShort(fieldDescriptors[i]);
+            out.writeShort(0);
+        }
+
+        out.writeShort(3);
+        writeMethod(out,0x0001,initName,initDescriptor,codeName,3,2,init.toByteArray());
+        writeMethod(out,0x0001,evaluateName,evaluateDescriptor,codeName,evaluateMaxStack,3,evaluate);
+        writeMethod(out,0x0001,evaluateLongsName,evaluateLongsDescriptor,codeName,evaluateLongsMaxStack,4,
+                evaluateLongs);
+        out.writeShort(0); // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int descriptor,
+                                    int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12+code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private int utf8(String value) {
+        Integer index = poolIndexes.get("U"+value);
+        if (null != index) return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return newPoolEntry("U"+value);
+    }
+
+    private int longConstant(long value) {
+        String key = "J"+value;
+        Integer index = poolIndexes.get(key);
+        if (null != index) return index;
+        try {
+            pool.writeByte(5);
+            pool.writeLong(value);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        index = newPoolEntry(key);
+        // a long takes two entries of the pool
+        poolCount++;
+        return index;
+    }
+
+    private int classRef(String internalName) {
+        Integer index = poolIndexes.get("C"+internalName);
+        if (null != index) return index;
+        int name = utf8(internalName);
+        writePoolEntry(7,name,-1);
+        return newPoolEntry("C"+internalName);
+    }
+
+    private int fieldRef(int field) {
+        String key = "F"+field;
+        Integer index = poolIndexes.get(key);
+        if (null != index) return index;
+        int owner = classRef(className);
+        int nameAndType = nameAndType("c"+field,"L"+fieldTypes.get(field)+";");
+        writePoolEntry(9,owner,nameAndType);
+        return newPoolEntry(key);
+    }
+
+    private int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+        String key = (isInterface ? "I" : "M")+owner+"."+name+descriptor;
+        Integer index = poolIndexes.get(key);
+        if (null != index) return index;
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name,descriptor);
+        writePoolEntry(isInterface ? 11 : 10,ownerIndex,nameAndType);
+        return newPoolEntry(key);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N"+name+":"+descriptor;
+        Integer index = poolIndexes.get(key);
+        if (null != index) return index;
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        writePoolEntry(12,nameIndex,descriptorIndex);
+        return newPoolEntry(key);
+    }
+
+    private void writePoolEntry(int tag, int first, int second) {
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0) {
+                pool.writeShort(second);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int newPoolEntry(String key) {
+        int index = poolCount++;
+        poolIndexes.put(key,index);
+        return index;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+
+/**
+ * Result of one expression of a batch calculated by
+ * {@link Calculator#calculateAll(java.util.List)}, either the value or
+ * the exception thrown while calculating it. A result of
+ * {@link Calculator#calculateWithStats(Session, String)} also has the
+ * resources used by the calculation.
+ *
+ * @author Rahul Bagchi
+ */
+public final class CalculationResult {
+
+    private final String expression;
+    private final BigDecimal value;
+    private final CalculatorException error;
+    private final EvaluationStats stats;
+
+    CalculationResult(String expression, BigDecimal value, CalculatorException error) {
+        this(expression,value,error,null);
+    }
+
+    CalculationResult(String expression, BigDecimal value, CalculatorException error, EvaluationStats stats) {
+        this.expression = expression;
+        this.value = value;
+        this.error = error;
+        this.stats = stats;
+    }
+
+    /**
+     * @return the expression calculated
+     */
+    public String expression() {
+        return expression;
+    }
+
+    /**
+     * @return {@literal true} if the expression is calculated without error
+     */
+    public boolean isSuccess() {
+        return null == error;
+    }
+
+    /**
+     * @return the value or {@literal null} if calculation failed
+     */
+    public BigDecimal value() {
+        return value;
+    }
+
+    /**
+     * @return the exception or {@literal null} if calculated without error
+     */
+    public CalculatorException error() {
+        return error;
+    }
+
+    /**
+     * @return resources used by the calculation or {@literal null} if not measured
+     */
+    public EvaluationStats stats() {
+        return stats;
+    }
+
+    /**
+     * @return the value
+     * @throws CalculatorException the exception thrown while calculating
+     */
+    public BigDecimal get() throws CalculatorException {
+        if (null != error) {
+            throw error;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "CalculationResult("+expression+" = "+(null == error ? value : error.getMessage())+")";
+    }
+}
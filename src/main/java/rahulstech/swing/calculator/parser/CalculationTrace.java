@@ -0,0 +1,89 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.metrics.CalculatorMetrics;
+import rahulstech.swing.calculator.metrics.SlowCalculationLog;
+import rahulstech.swing.calculator.parser.operation.OperationTimer;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Measurements and limits of one calculation. Created by {@link Calculator}
+ * only while metrics or the slow calculation log are enabled, the
+ * calculation has limits or its stats are measured, otherwise the phases
+ * are not timed at all.
+ *
+ * @author Rahul Bagchi
+ */
+final class CalculationTrace {
+
+    private static final CalculatorMetrics.Phase[] PHASES = CalculatorMetrics.Phase.values();
+
+    // null if not enabled
+    final CalculatorMetrics metrics;
+    // null if not enabled
+    final SlowCalculationLog slowLog;
+    // null if the calculation has no limits
+    final EvaluationBudget budget;
+    // time of each phase by ordinal, kept only for the slow calculation log
+    private final long[] phaseNanos;
+    // tokens of an expression calculated while parsing, for the stats
+    int tokenCount = 0;
+    // the expression evaluated, null if calculated while parsing
+    CompiledExpression compiled = null;
+
+    CalculationTrace(CalculatorMetrics metrics, SlowCalculationLog slowLog, EvaluationBudget budget) {
+        this.metrics = metrics;
+        this.slowLog = slowLog;
+        this.budget = budget;
+        this.phaseNanos = null == slowLog ? null : new long[PHASES.length];
+    }
+
+    void recordPhase(CalculatorMetrics.Phase phase, long nanos) {
+        if (null != metrics) {
+            metrics.recordPhase(phase,nanos);
+        }
+        if (null != phaseNanos) {
+            phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    void recordOperations(CompiledExpression expression) {
+        if (null != metrics) {
+            expression.recordOperations(metrics);
+        }
+    }
+
+    /**
+     * Write the calculation to the slow calculation log if slow
+     *
+     * @param expression the expression or {@literal null} if read from a stream
+     * @param nanos time taken by the calculation
+     * @param timer timer of the operations of the calculation
+     */
+    void logIfSlow(String expression, long nanos, OperationTimer timer) {
+        if (!slowLog.isSlow(nanos)) {
+            return;
+        }
+        Map<CalculatorMetrics.Phase,Long> phases = new EnumMap<>(CalculatorMetrics.Phase.class);
+        for (CalculatorMetrics.Phase phase : PHASES) {
+            phases.put(phase,phaseNanos[phase.ordinal()]);
+        }
+        slowLog.record(expression,nanos,phases,timer.slowestOperation(),timer.slowestNanos(),Thread.currentThread());
+    }
+}
@@ -15,34 +15,56 @@
  */
 package rahulstech.swing.calculator.parser;
 
+import rahulstech.swing.calculator.metrics.CalculatorMetrics;
+import rahulstech.swing.calculator.metrics.SlowCalculationLog;
 import rahulstech.swing.calculator.parser.operation.*;
 
+import jdk.jfr.FlightRecorder;
+
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.MathContext;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static rahulstech.swing.calculator.parser.TokenType.KEYWORD;
-import static rahulstech.swing.calculator.parser.TokenType.NUMERIC;
 import static rahulstech.swing.calculator.parser.operation.Operation.Priority.ADDITIVE;
 import static rahulstech.swing.calculator.parser.operation.Operation.Priority.MULTIPLICATIVE;
+import static rahulstech.swing.calculator.metrics.CalculatorMetrics.Phase.*;
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
 
 /**
- * This class performs evaluating an expression and
+ * This class performs evaluating an expression. A calculator can be shared
+ * by many threads, all the state of a single evaluation is kept by that
+ * evaluation only. The last result, used as ANS, is kept in a {@link Session};
+ * methods without a session argument use the default session of the
+ * calculator.
  *
  * @author Rahul Bagchi
  */
 public class Calculator {
 
-    private Map<String,Operation> operations = new HashMap<>();
-    private Map<Operation.Priority,List<String>> priorityOperationNames = new HashMap<>();
+    /**
+     * Default number of evaluations of a {@link CompiledExpression} after
+     * which it is compiled into a generated class
+     */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
+    private static final String[] NO_VARIABLES = new String[0];
 
-    private List<Token> tokens = null;
-    private int tokenCount = 0;
-    private int index;
-    private BigDecimal lastResult = BigDecimal.ZERO;
+    private volatile OperationRegistry registry = OperationRegistry.EMPTY;
+    private final Session defaultSession = new Session();
+    private volatile ExpressionCache cache = null;
+    private volatile int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+    private volatile EvaluationMode evaluationMode = EvaluationMode.EXACT;
+    private volatile boolean optimizationEnabled = false;
+    private volatile CalculatorMetrics metrics = null;
+    private volatile SlowCalculationLog slowLog = null;
+    // maximum bytes a measured calculation may allocate, 0 for no limit
+    private volatile long allocationBudget = Long.getLong("calculator.allocationBudget",0);
 
     public Calculator() {
         registerDefaultOperations();
@@ -54,18 +76,12 @@ public class Calculator {
      * @param operation the operation
      * @throws CalculatorException if operation with same name already available
      */
-    public void registerOperation(Operation operation) throws CalculatorException {
+    public synchronized void registerOperation(Operation operation) throws CalculatorException {
         if (null == operation) {
             throw new NullPointerException("operation == null");
         }
-        String name = operation.name();
-        Operation.Priority priority = operation.priority();
-        if (operations.containsKey(name)) {
-            throw new CalculatorException("another operation with name \""+name+"\" is already added");
-        }
-        operations.put(name,operation);
-        List<String> names = priorityOperationNames.get(priority);
-        names.add(name);
+        this.registry = registry.with(operation);
+        invalidateCache();
     }
 
     /**
@@ -74,44 +90,729 @@ public class Calculator {
      * @param name name of the operation
      * @throws CalculatorException if no operation registered with the name
      */
-    public void unregisterOperation(String name) throws CalculatorException {
+    public synchronized void unregisterOperation(String name) throws CalculatorException {
         if (null == name) {
             throw new NullPointerException("name == null");
         }
+        this.registry = registry.without(name);
+        invalidateCache();
+    }
+
+    /**
+     * @return the operations registered now
+     */
+    OperationRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Keep compiled expressions in a cache so that calculating the same
+     * expression again does not tokenize and parse it again. The cache
+     * is cleared whenever an operation is registered or unregistered.
+     * Calling this method again replaces the current cache with a new one.
+     *
+     * @param maximumSize maximum number of expressions to keep
+     * @return the new cache
+     * @throws IllegalArgumentException if maximumSize is less than 1
+     */
+    public ExpressionCache enableCache(int maximumSize) {
+        ExpressionCache cache = new ExpressionCache(maximumSize);
+        this.cache = cache;
+        return cache;
+    }
+
+    /**
+     * Stop caching compiled expressions and remove the current cache
+     */
+    public void disableCache() {
+        this.cache = null;
+    }
+
+    /**
+     * @return the current cache or {@literal null} if caching is not enabled
+     * @see #enableCache(int)
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Record timings of each phase of the calculations, the operations
+     * invoked and the errors. Calling this method again replaces the
+     * current metrics with new ones.
+     *
+     * @return the new metrics
+     * @see CalculatorMetrics#registerMBean(String)
+     */
+    public CalculatorMetrics enableMetrics() {
+        CalculatorMetrics metrics = new CalculatorMetrics();
+        this.metrics = metrics;
+        return metrics;
+    }
+
+    /**
+     * Stop recording metrics
+     */
+    public void disableMetrics() {
+        this.metrics = null;
+    }
+
+    /**
+     * @return the current metrics or {@literal null} if not enabled
+     * @see #enableMetrics()
+     */
+    public CalculatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Log the calculations slower than the threshold of the log with the
+     * time of each phase and the slowest operation. The log is not closed
+     * by the calculator.
+     *
+     * @param log the log or {@literal null} to stop logging
+     */
+    public void setSlowCalculationLog(SlowCalculationLog log) {
+        this.slowLog = log;
+    }
+
+    public SlowCalculationLog getSlowCalculationLog() {
+        return slowLog;
+    }
+
+    /**
+     * Set the maximum number of bytes a calculation measured by
+     * {@link #calculateWithStats(Session, String)} may allocate. It is
+     * meant for tests catching allocation regressions, a calculation
+     * allocating more fails. The initial budget is taken from the system
+     * property {@code calculator.allocationBudget}.
+     *
+     * @param bytes the budget, 0 for no budget
+     * @throws IllegalArgumentException if bytes is negative
+     */
+    public void setAllocationBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("allocation budget can not be negative");
+        }
+        this.allocationBudget = bytes;
+    }
+
+    public long getAllocationBudget() {
+        return allocationBudget;
+    }
+
+    /**
+     * Set after how many evaluations a {@link CompiledExpression} compiled
+     * later by this calculator is compiled into a generated class. Generating
+     * the class takes more time than a few evaluations, so only expressions
+     * evaluated many times gain from it. Expressions already compiled keep
+     * their threshold.
+     *
+     * @param threshold number of evaluations, 0 to generate the class while
+     *                  compiling and a negative number to never generate
+     * @see #DEFAULT_COMPILE_THRESHOLD
+     */
+    public void setCompileThreshold(int threshold) {
+        this.compileThreshold = threshold;
+    }
 
-        if (!operations.containsKey(name)) {
-            throw new CalculatorException("no operation found with name \""+name+"\"");
+    /**
+     * @return number of evaluations after which a compiled expression is
+     *          compiled into a generated class
+     * @see #setCompileThreshold(int)
+     */
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Set how {@link #calculate(String)} and {@link #evaluate(CompiledExpression)}
+     * evaluate expressions. Expressions read from a {@link Reader} are always
+     * evaluated exactly.
+     *
+     * @param mode the evaluation mode
+     * @see EvaluationMode
+     */
+    public void setEvaluationMode(EvaluationMode mode) {
+        if (null == mode) {
+            throw new NullPointerException("mode == null");
         }
-        Operation operation = operations.get(name);
-        Operation.Priority priority = operation.priority();
-        List<String> names = priorityOperationNames.get(priority);
-        names.remove(name);
+        this.evaluationMode = mode;
+    }
+
+    /**
+     * @return the current evaluation mode, {@link EvaluationMode#EXACT} by default
+     */
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode;
+    }
+
+    /**
+     * Optimize the expressions compiled by {@link #compile(String)} and
+     * kept in the cache. Operations with constant operands are performed
+     * while compiling, identities like x+0, and x*1 where x is known to
+     * have at most 34 digits, are removed and same
+     * subexpressions are calculated once. Only operations marked pure by
+     * {@link Operation#isPure()} are optimized. The result is numerically
+     * same but may differ in scale, for example ANS+0 is 1000 but ANS
+     * is 1E+3 when the last result is 1E+3. Changing it clears the cache.
+     *
+     * @param enabled {@literal true} to optimize, disabled by default
+     */
+    public synchronized void setOptimizationEnabled(boolean enabled) {
+        this.optimizationEnabled = enabled;
+        invalidateCache();
+    }
+
+    /**
+     * @return {@literal true} if compiled expressions are optimized
+     * @see #setOptimizationEnabled(boolean)
+     */
+    public boolean isOptimizationEnabled() {
+        return optimizationEnabled;
+    }
+
+    /**
+     * Create a new session with its own last result
+     *
+     * @return the new session
+     */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * @return the session used by the methods without a session argument
+     */
+    public Session getDefaultSession() {
+        return defaultSession;
     }
 
     /**
-     * Evaluates the given expression
+     * Evaluates the given expression. If caching is enabled the expression
+     * is compiled only if not found in the cache.
      *
      * @param expression to evaluate
      * @return the result
      * @throws CalculatorException any exception during parsing and evaluating
+     * @see #enableCache(int)
      */
     public BigDecimal calculate(String expression) throws CalculatorException {
+        return calculate(defaultSession,expression);
+    }
+
+    /**
+     * Evaluates the given expression using the last result of the session
+     * as ANS and stores the result in the session.
+     *
+     * @param session the session to use
+     * @param expression to evaluate
+     * @return the result
+     * @throws CalculatorException any exception during parsing and evaluating
+     * @see #calculate(String)
+     */
+    public BigDecimal calculate(Session session, String expression) throws CalculatorException {
+        CalculationTrace trace = trace();
+        if (null == trace) {
+            return calculate(session,expression,(CalculationTrace) null);
+        }
+        return measure(trace,expression,() -> calculate(session,expression,trace));
+    }
+
+    /**
+     * Same as {@link #calculate(Session, String)} but fails as soon as the
+     * calculation goes over any of the limits. The generated code of a
+     * compiled expression is not used, as it can not be stopped.
+     *
+     * @param session the session to use
+     * @param expression to evaluate
+     * @param limits the limits of the calculation
+     * @return the result
+     * @throws LimitExceededException if the calculation goes over a limit
+     * @throws CalculatorException any other exception during parsing and evaluating
+     */
+    public BigDecimal calculate(Session session, String expression, EvaluationLimits limits)
+            throws CalculatorException {
+        CalculationTrace trace = trace(limits);
+        return measure(trace,expression,() -> calculate(session,expression,trace));
+    }
+
+    /**
+     * Evaluates the expression read from the reader. The expression is
+     * tokenized lazily while parsing and read through a fixed size buffer,
+     * so the memory required depends on the nesting depth of the expression
+     * not on its length. The result is same as {@link #calculate(String)}.
+     * The reader is not closed by this method.
+     *
+     * @param expression reader to read the expression
+     * @return the result
+     * @throws CalculatorException any exception during reading, parsing and evaluating
+     */
+    public BigDecimal calculate(Reader expression) throws CalculatorException {
+        return calculate(defaultSession,expression);
+    }
+
+    /**
+     * Same as {@link #calculate(Reader)} but uses the given session for ANS
+     *
+     * @param session the session to use
+     * @param expression reader to read the expression
+     * @return the result
+     * @throws CalculatorException any exception during reading, parsing and evaluating
+     */
+    public BigDecimal calculate(Session session, Reader expression) throws CalculatorException {
+        CalculationTrace trace = trace();
+        if (null == trace) {
+            return calculate(session,null,new ReaderTokenStream(expression),null);
+        }
+        return measure(trace,null,() -> calculate(session,null,new ReaderTokenStream(expression),trace));
+    }
+
+    /**
+     * Calculates the expression and measures the resources used. The
+     * expression is calculated the same way as by
+     * {@link #calculate(Session, String)}, while parsing or compiled and
+     * cached if the cache is enabled, and the operations performed are
+     * counted. An exception thrown while calculating is returned in the result.
+     *
+     * @param session the session to use
+     * @param expression the expression to calculate
+     * @return the result with {@link CalculationResult#stats()}
+     * @throws IllegalStateException if the calculation allocated more than
+     *          the budget
+     * @see #setAllocationBudget(long)
+     */
+    public CalculationResult calculateWithStats(Session session, String expression) {
+        if (null == session) {
+            throw new NullPointerException("session == null");
+        }
+        if (null == expression) {
+            throw new NullPointerException("expression == null");
+        }
+        CalculationTrace enabled = trace();
+        // the trace keeps the tokens and the compiled expression for the stats
+        CalculationTrace trace = null == enabled ? new CalculationTrace(null,null,null) : enabled;
+        BigDecimal value = null;
+        CalculatorException error = null;
+        long cpuTime = EvaluationStats.currentThreadCpuTime();
+        long allocated = EvaluationStats.currentThreadAllocatedBytes();
+        OperationTimer timer = OperationTimer.start();
+        try {
+            value = null == enabled ? calculate(session,expression,trace)
+                    : measure(trace,expression,() -> calculate(session,expression,trace));
+        }
+        catch (CalculatorException e) {
+            error = e;
+        }
+        catch (RuntimeException e) {
+            error = new CalculatorException(String.valueOf(e.getMessage()),e);
+        }
+        finally {
+            timer.stop();
+        }
+        cpuTime = EvaluationStats.elapsed(cpuTime,EvaluationStats.currentThreadCpuTime());
+        allocated = EvaluationStats.elapsed(allocated,EvaluationStats.currentThreadAllocatedBytes());
+        CompiledExpression compiled = trace.compiled;
+        EvaluationStats stats = new EvaluationStats(cpuTime,allocated,
+                null == compiled ? trace.tokenCount : compiled.tokenCount(),
+                null == compiled ? 0 : compiled.census().nodeCount(),timer.operationCount());
+        long budget = allocationBudget;
+        if (budget > 0 && allocated > budget) {
+            throw new IllegalStateException("calculating \""+expression+"\" allocated "+allocated
+                    +" bytes, over the budget of "+budget+" bytes");
+        }
+        return new CalculationResult(expression,value,error,stats);
+    }
+
+    /**
+     * Calculates many independent expressions in parallel in the common
+     * {@link ForkJoinPool}. Each expression is calculated with its own new
+     * session, so ANS is 0 and the default session is not changed. An
+     * expression which fails does not stop the others, its exception is
+     * returned in its result.
+     *
+     * @param expressions the expressions to calculate
+     * @return the results in the order of the expressions
+     */
+    public List<CalculationResult> calculateAll(List<String> expressions) {
+        return calculateAll(expressions,ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #calculateAll(List)} for the expressions of the stream
+     * in encounter order
+     *
+     * @param expressions the expressions to calculate
+     * @return the results in the order of the expressions
+     */
+    public List<CalculationResult> calculateAll(Stream<String> expressions) {
+        if (null == expressions) {
+            throw new NullPointerException("expressions == null");
+        }
+        return calculateAll(expressions.collect(Collectors.toList()));
+    }
+
+    /**
+     * Same as {@link #calculateAll(List)} but the expressions are
+     * calculated by the given executor. The calling thread waits until
+     * all the expressions are calculated. A {@link ForkJoinPool} splits
+     * the batch recursively, other executors get the batch in chunks.
+     *
+     * @param expressions the expressions to calculate
+     * @param executor the executor to calculate with
+     * @return the results in the order of the expressions
+     */
+    public List<CalculationResult> calculateAll(List<String> expressions, Executor executor) {
+        if (null == expressions) {
+            throw new NullPointerException("expressions == null");
+        }
+        if (null == executor) {
+            throw new NullPointerException("executor == null");
+        }
+        return calculateAll(expressions,executor,null);
+    }
+
+    /**
+     * Same as {@link #calculateAll(List)} but each expression fails with
+     * {@link LimitExceededException} when it goes over any of the limits
+     *
+     * @param expressions the expressions to calculate
+     * @param limits the limits of each expression
+     * @return the results in the order of the expressions
+     * @see #calculate(Session, String, EvaluationLimits)
+     */
+    public List<CalculationResult> calculateAll(List<String> expressions, EvaluationLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits == null");
+        }
+        return calculateAll(expressions,ForkJoinPool.commonPool(),limits);
+    }
+
+    private List<CalculationResult> calculateAll(List<String> expressions, Executor executor,
+                                                 EvaluationLimits limits) {
+        if (null == expressions) {
+            throw new NullPointerException("expressions == null");
+        }
+        BatchCalculation batch = new BatchCalculation(this,expressions,limits);
+        if (executor instanceof ForkJoinPool) {
+            return batch.run((ForkJoinPool) executor);
+        }
+        return batch.run(executor);
+    }
+
+    /**
+     * Parse the given expression into a {@link CompiledExpression} without
+     * evaluating it. The compiled expression can be evaluated many times
+     * without tokenizing and parsing again.
+     *
+     * @param expression to compile
+     * @return the compiled expression
+     * @throws CalculatorException any exception during parsing
+     */
+    public CompiledExpression compile(String expression) throws CalculatorException {
+        return compile(registry,expression,NO_VARIABLES,trace());
+    }
+
+    /**
+     * Parse the given expression with variables into a {@link CompiledExpression}.
+     * A variable is a keyword used like a number, its value is given on each
+     * evaluation, for example {@code x*2+SQRT(x)} compiled with the variable
+     * {@code x} can be evaluated for a whole column of values by
+     * {@link CompiledExpression#evaluateColumn(double[], double[])}.
+     *
+     * @param expression to compile
+     * @param variables names of the variables
+     * @return the compiled expression
+     * @throws CalculatorException any exception during parsing
+     * @throws IllegalArgumentException if a name is not a keyword, is
+     *          ANS or an operation, or is repeated
+     */
+    public CompiledExpression compile(String expression, String... variables) throws CalculatorException {
+        OperationRegistry registry = this.registry;
+        String[] names = variables.clone();
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (null == name) {
+                throw new NullPointerException("variables["+i+"] == null");
+            }
+            if (!name.matches("[a-zA-Z_][a-zA-Z0-9_]*") || "ANS".equals(name)
+                    || registry.operations().containsKey(name)) {
+                throw new IllegalArgumentException("\""+name+"\" can not be a variable");
+            }
+            for (int j = 0; j < i; j++) {
+                if (names[j].equals(name)) {
+                    throw new IllegalArgumentException("variable \""+name+"\" is repeated");
+                }
+            }
+        }
+        return compile(registry,expression,names,trace());
+    }
+
+    /**
+     * Evaluates a compiled expression using the last result of the default
+     * session as the value of ANS
+     *
+     * @param expression the compiled expression
+     * @return the result
+     * @throws CalculatorException any exception during evaluating
+     * @see #compile(String)
+     */
+    public BigDecimal evaluate(CompiledExpression expression) throws CalculatorException {
+        return evaluate(defaultSession,expression);
+    }
+
+    /**
+     * Evaluates a compiled expression using the last result of the session
+     * as the value of ANS and stores the result in the session
+     *
+     * @param session the session to use
+     * @param expression the compiled expression
+     * @return the result
+     * @throws CalculatorException any exception during evaluating
+     */
+    public BigDecimal evaluate(Session session, CompiledExpression expression) throws CalculatorException {
+        CalculationTrace trace = trace();
+        if (null == trace) {
+            return evaluate(session,expression,(CalculationTrace) null);
+        }
+        return measure(trace,expression.expression(),() -> evaluate(session,expression,trace));
+    }
+
+    /**
+     * Same as {@link #evaluate(Session, CompiledExpression)} but fails as
+     * soon as the evaluation goes over any of the limits
+     *
+     * @param session the session to use
+     * @param expression the compiled expression
+     * @param limits the limits of the evaluation
+     * @return the result
+     * @throws LimitExceededException if the evaluation goes over a limit
+     * @throws CalculatorException any other exception during evaluating
+     * @see #calculate(Session, String, EvaluationLimits)
+     */
+    public BigDecimal evaluate(Session session, CompiledExpression expression, EvaluationLimits limits)
+            throws CalculatorException {
+        CalculationTrace trace = trace(limits);
+        return measure(trace,expression.expression(),() -> evaluate(session,expression,trace));
+    }
+
+    /**
+     * @return a new trace for a calculation or {@literal null} if neither
+     *          metrics nor the slow calculation log are enabled
+     */
+    private CalculationTrace trace() {
+        CalculatorMetrics metrics = this.metrics;
+        SlowCalculationLog slowLog = this.slowLog;
+        if (null == metrics && null == slowLog) {
+            return null;
+        }
+        return new CalculationTrace(metrics,slowLog,null);
+    }
+
+    /**
+     * @return a new trace for a calculation with limits
+     */
+    private CalculationTrace trace(EvaluationLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits == null");
+        }
+        return new CalculationTrace(metrics,slowLog,new EvaluationBudget(limits));
+    }
+
+    /**
+     * Calculate recording the time and the error if any in the metrics,
+     * and logging the calculation if slow
+     *
+     * @param expression the expression or {@literal null} if read from a stream
+     */
+    private static BigDecimal measure(CalculationTrace trace, String expression, Supplier<BigDecimal> calculation) {
+        OperationTimer timer = null == trace.slowLog ? null : OperationTimer.start();
+        long start = System.nanoTime();
+        try {
+            return calculation.get();
+        }
+        catch (RuntimeException e) {
+            if (null != trace.metrics) {
+                trace.metrics.recordError(e);
+            }
+            throw e;
+        }
+        finally {
+            long nanos = System.nanoTime()-start;
+            if (null != trace.metrics) {
+                trace.metrics.recordCalculation(nanos);
+            }
+            if (null != timer) {
+                timer.stop();
+                trace.logIfSlow(expression,nanos,timer);
+            }
+        }
+    }
+
+    /**
+     * @param trace where to record the phases, {@literal null} if not enabled
+     */
+    private BigDecimal calculate(Session session, String expression, CalculationTrace trace) {
+        ExpressionCache cache = this.cache;
+        if (null != cache && null != expression
+                || EvaluationMode.FAST_DOUBLE == evaluationMode && null != session) {
+            CompiledExpression compiled;
+            try {
+                compiled = null != cache && null != expression ? compileCached(cache,expression,trace)
+                        : compile(registry,expression,NO_VARIABLES,trace);
+            }
+            catch (CalculatorException e) {
+                // calculated while parsing, as without the cache, so an operation
+                // failing before the syntax error or the unknown function is reported instead
+                return calculateWhileParsing(session,expression,trace);
+            }
+            return evaluate(session,compiled,trace);
+        }
+        return calculateWhileParsing(session,expression,trace);
+    }
+
+    private BigDecimal calculateWhileParsing(Session session, String expression, CalculationTrace trace) {
+        long start = startPhase(trace);
+        Tokenizer tokenizer = new Tokenizer(expression);
+        TokenBuffer buffer = tokenizer.tokenizeToBuffer();
+        TokenStream tokens = new BufferTokenStream(buffer);
+        endPhase(trace,TOKENIZE,start);
+        if (null != trace) {
+            trace.tokenCount = buffer.size();
+        }
+        return calculate(session,expression,tokens,trace);
+    }
+
+    private BigDecimal evaluate(Session session, CompiledExpression expression, CalculationTrace trace) {
+        long start = startPhase(trace);
+        BigDecimal result = null == trace || null == trace.budget
+                ? expression.evaluate(session.answer(),evaluationMode)
+                : expression.evaluate(session.answer(),evaluationMode,trace.budget);
+        if (null != trace) {
+            endPhase(trace,EVALUATE,start);
+            trace.compiled = expression;
+            trace.recordOperations(expression);
+        }
+        session.record(expression.expression(),result);
+        return result;
+    }
+
+    private CompiledExpression compile(OperationRegistry registry, String expression, String[] variables,
+                                       CalculationTrace trace) {
+        long start = startPhase(trace);
         Tokenizer tokenizer = new Tokenizer(expression);
-        this.tokens = tokenizer.tokenize();
-        this.tokenCount = tokens.size();
-        this.index = 0;
-        BigDecimal result = parseOperation();
-        this.lastResult = result;
+        TokenBuffer buffer = tokenizer.tokenizeToBuffer();
+        TokenStream tokens = new BufferTokenStream(buffer);
+        start = endPhase(trace,TOKENIZE,start);
+        ParseEvent event = FlightRecorder.isInitialized() ? new ParseEvent() : null;
+        Parser<Node> parser = new IterativeParser<>(tokens,new ExpressionTreeBuilder(),registry,variables);
+        if (null != trace && null != trace.budget) {
+            parser.setMaxDepth(trace.budget.maxDepth());
+        }
+        Node root = parser.parseOperation();
+        if (optimizationEnabled) {
+            root = ExpressionOptimizer.optimize(root);
+        }
+        if (null != event) {
+            event.commit(tokens,false);
+        }
+        endPhase(trace,PARSE,start);
+        return new CompiledExpression(expression,root,registry,variables,buffer.size(),buffer.nestingDepth(),
+                compileThreshold);
+    }
+
+    /**
+     * @return the start time of a phase if traced
+     */
+    private static long startPhase(CalculationTrace trace) {
+        return null == trace ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record the time of the phase if traced
+     *
+     * @return the end time, which is the start time of the next phase
+     */
+    private static long endPhase(CalculationTrace trace, CalculatorMetrics.Phase phase, long start) {
+        if (null == trace) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        trace.recordPhase(phase,end-start);
+        return end;
+    }
+
+    /**
+     * Get the compiled expression from the cache or compile and add it
+     * to the cache. A cached expression compiled with operations which are
+     * changed since then is compiled again.
+     */
+    private CompiledExpression compileCached(ExpressionCache cache, String expression, CalculationTrace trace) {
+        OperationRegistry registry = this.registry;
+        String key = ExpressionCache.normalize(expression);
+        CompiledExpression compiled = cache.get(key);
+        if (null == compiled || compiled.registry() != registry) {
+            compiled = compile(registry,expression,NO_VARIABLES,trace);
+            cache.put(key,compiled);
+        }
+        return compiled;
+    }
+
+    private void invalidateCache() {
+        ExpressionCache cache = this.cache;
+        if (null != cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @param expression text of the expression for the history of the
+     *                   session, {@literal null} if not known
+     * @param trace where to record the phase and the operations, {@literal null} if not enabled
+     */
+    private BigDecimal calculate(Session session, String expression, TokenStream tokens, CalculationTrace trace)
+            throws CalculatorException {
+        if (null == session) {
+            throw new NullPointerException("session == null");
+        }
+        long start = startPhase(trace);
+        EvaluationBudget budget = null == trace ? null : trace.budget;
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(session.answer());
+        ParseHandler<Integer> handler = null == budget ? evaluator : new LimitingParseHandler(evaluator,budget);
+        if (null != trace && null != trace.metrics) {
+            handler = new CountingParseHandler<>(handler,trace.metrics);
+        }
+        ParseEvent event = FlightRecorder.isInitialized() ? new ParseEvent() : null;
+        Parser<Integer> parser = new IterativeParser<>(tokens,handler,registry);
+        if (null != budget) {
+            parser.setMaxDepth(budget.maxDepth());
+        }
+        BigDecimal result = evaluator.result(parser.parseOperation());
+        if (null != budget) {
+            budget.checkResult(result);
+        }
+        if (null != event) {
+            event.commit(tokens,true);
+        }
+        endPhase(trace,PARSE_AND_EVALUATE,start);
+        session.record(expression,result);
         return result;
     }
 
+    /**
+     * @return {@literal true} if the operation is one of the basic operations
+     *          provided by this class, whose behaviour is known to the
+     *          code generators
+     */
+    static boolean isDefaultOperation(Operation operation) {
+        // the basic operations are anonymous classes of this class, other classes can not create them
+        return operation.getClass().getEnclosingClass() == Calculator.class;
+    }
+
     /**
      * Register basic operations provided by this class
      */
     private void registerDefaultOperations() {
-        priorityOperationNames.put(Operation.Priority.ADDITIVE,new ArrayList<>());
-        priorityOperationNames.put(Operation.Priority.MULTIPLICATIVE,new ArrayList<>());
-
         registerDefaultAdditiveOperators();
         registerDefaultMultiplicativeOperators();
         registerDefaultFunctions();
@@ -122,16 +823,58 @@ public class Calculator {
      */
     private void registerDefaultAdditiveOperators() {
         registerOperation(new BinaryOperator("+", Operation.Priority.ADDITIVE) {
+            {
+                setPure(true);
+                setCommutative(true);
+                setAssociative(true);
+                setRightIdentity(BigDecimal.ZERO);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 return left.add(right);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                return FastDouble.checkSum(left,right,left+right);
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                try {
+                    return Math.addExact(left,right);
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
+                }
+            }
         });
         registerOperation(new BinaryOperator("-", Operation.Priority.ADDITIVE) {
+            {
+                setPure(true);
+                setRightIdentity(BigDecimal.ZERO);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 return left.subtract(right);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                return FastDouble.checkSum(left,-right,left-right);
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                try {
+                    return Math.subtractExact(left,right);
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
+                }
+            }
         });
     }
 
@@ -140,12 +883,41 @@ public class Calculator {
      */
     private void registerDefaultMultiplicativeOperators() {
         registerOperation(new BinaryOperator("*", Operation.Priority.MULTIPLICATIVE) {
+            {
+                setPure(true);
+                // not associative because of rounding
+                setCommutative(true);
+                setRightIdentity(BigDecimal.ONE);
+                setMathContext(MathContext.DECIMAL128);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 return left.multiply(right,MathContext.DECIMAL128);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                return FastDouble.checkProduct(left,right,left*right);
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                try {
+                    return Math.multiplyExact(left,right);
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
+                }
+            }
         });
         registerOperation(new BinaryOperator("/", Operation.Priority.MULTIPLICATIVE) {
+            {
+                setPure(true);
+                setRightIdentity(BigDecimal.ONE);
+                setMathContext(MathContext.DECIMAL128);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 if (0 == right.compareTo(BigDecimal.ZERO)) {
@@ -153,8 +925,29 @@ public class Calculator {
                 }
                 return left.divide(right,MathContext.DECIMAL128);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                // division by 0 is reported by the exact evaluation
+                return FastDouble.checkProduct(left,right,left/right);
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                // division by 0 and division with remainder are done with BigDecimal
+                if (0 == right || 0 != left%right) {
+                    return NOT_A_LONG;
+                }
+                return left/right;
+            }
         });
         registerOperation(new BinaryOperator("^", Operation.Priority.MULTIPLICATIVE) {
+            {
+                setPure(true);
+                setRightIdentity(BigDecimal.ONE);
+                setMathContext(MathContext.DECIMAL128);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 int power = right.intValue();
@@ -163,13 +956,68 @@ public class Calculator {
                 }
                 return left.pow(power,MathContext.DECIMAL128);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                // 0 to the power 0 and out of range powers are reported by the exact evaluation
+                if (Math.abs(right) > 999999999 || (0 == (int) right && 0 == left)) {
+                    return Double.NaN;
+                }
+                return FastDouble.checkProduct(left,left,Math.pow(left,(int) right));
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                // negative powers, 0 to the power 0 and out of range powers are done with BigDecimal
+                if (right < 0 || right > 999999999 || (0 == right && 0 == left)) {
+                    return NOT_A_LONG;
+                }
+                try {
+                    long result = 1;
+                    long base = left;
+                    for (long power = right; power > 0; power >>= 1) {
+                        if (1 == (power & 1)) {
+                            result = Math.multiplyExact(result,base);
+                        }
+                        if (power > 1) {
+                            base = Math.multiplyExact(base,base);
+                        }
+                    }
+                    return result;
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
+                }
+            }
         });
         registerOperation(new BinaryOperator("%", Operation.Priority.MULTIPLICATIVE) {
+            {
+                setPure(true);
+                setCommutative(true);
+                setMathContext(MathContext.DECIMAL128);
+            }
+
             @Override
             public BigDecimal evaluate(BigDecimal left, BigDecimal right) {
                 return left.multiply(right,MathContext.DECIMAL128)
                         .divide(new BigDecimal(100),MathContext.DECIMAL128);
             }
+
+            @Override
+            protected double evaluateAsDouble(double left, double right) {
+                return FastDouble.checkProduct(left,right,left*right/100);
+            }
+
+            @Override
+            protected long evaluateAsLong(long left, long right) {
+                try {
+                    long product = Math.multiplyExact(left,right);
+                    return 0 == product%100 ? product/100 : NOT_A_LONG;
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
+                }
+            }
         });
     }
 
@@ -178,6 +1026,10 @@ public class Calculator {
      */
     private void registerDefaultFunctions() {
         registerOperation(new UniFunction("SQRT",MULTIPLICATIVE) {
+            {
+                setPure(true);
+            }
+
             @Override
             protected BigDecimal evaluate(BigDecimal param) {
                 if (-1 == param.signum()) {
@@ -185,8 +1037,33 @@ public class Calculator {
                 }
                 return param.sqrt(MathContext.DECIMAL128);
             }
+
+            @Override
+            protected double evaluateAsDouble(double param) {
+                // square root of a negative number is NaN and reported by the exact evaluation
+                return Math.sqrt(param);
+            }
+
+            // largest integer whose square fits in a long
+            private static final long MAX_LONG_ROOT = 3037000499L;
+
+            @Override
+            protected long evaluateAsLong(long param) {
+                if (param < 0) {
+                    return NOT_A_LONG;
+                }
+                long root = (long) Math.sqrt(param);
+                // correct the rounding of large numbers
+                while (root > MAX_LONG_ROOT || root*root > param) root--;
+                while (root < MAX_LONG_ROOT && (root+1)*(root+1) <= param) root++;
+                return root*root == param ? root : NOT_A_LONG;
+            }
         });
         registerOperation(new BiFunction("REMAINDER",MULTIPLICATIVE) {
+            {
+                setPure(true);
+            }
+
             @Override
             protected BigDecimal evaluate(BigDecimal param1, BigDecimal param2) {
                 if (param2.equals(BigDecimal.ZERO)) {
@@ -194,224 +1071,81 @@ public class Calculator {
                 }
                 return param1.remainder(param2);
             }
+
+            @Override
+            protected double evaluateAsDouble(double param1, double param2) {
+                // remainder of fractions is not exact with binary fractions
+                if (0 == param2 || !FastDouble.isExactInteger(param1) || !FastDouble.isExactInteger(param2)) {
+                    return Double.NaN;
+                }
+                return param1 % param2;
+            }
+
+            @Override
+            protected long evaluateAsLong(long param1, long param2) {
+                return 0 == param2 ? NOT_A_LONG : param1%param2;
+            }
         });
         registerOperation(new AbstractParameterizedOperation("AVG",ADDITIVE) {
+            {
+                setPure(true);
+                setCommutative(true);
+            }
+
             @Override
-            public BigDecimal evaluate() {
-                List<BigDecimal> params = parameters();
-                if (null == params || params.size() < 2) {
+            public BigDecimal apply(BigDecimal[] params, int from, int count) {
+                if (count < 2) {
                     throw new OperationException("average function requires at least 2 parameters");
                 }
+                long start = OperationTimer.begin();
                 BigDecimal sum = BigDecimal.ZERO;
-                for (BigDecimal n : params) {
-                    sum = sum.add(n);
+                for (int i = from; i < from+count; i++) {
+                    sum = sum.add(params[i]);
                 }
-                return sum.divide(new BigDecimal(params.size()),MathContext.DECIMAL128);
-            }
-        });
-    }
-
-    /**
-     * Parse any type operation available just next
-     *
-     * @return evaluated value of the operation
-     * @throws ParseException thrown during parsing
-     */
-    BigDecimal parseOperation() throws ParseException {
-        return parseAdditiveOperation();
-    }
-
-    /**
-     * Parse additive operation i.e. operations with additive priority
-     *
-     * @return evaluated value
-     * @throws ParseException thrown during parsing
-     */
-    BigDecimal parseAdditiveOperation() throws ParseException {
-        BigDecimal left = parseMultiplicativeOperation();
-        List<String> names = priorityOperationNames.get(ADDITIVE);
-        if (!hasToken(1) || !names.contains(peek(0).literal())){
-            return left;
-        }
-        BigDecimal root = null;
-        while (hasToken(1) && names.contains(peek(0).literal())) {
-            Token operator = pop();
-            BigDecimal right = parseMultiplicativeOperation();
-            BigDecimal result = createBinaryOperator(operator.literal(),left,right).evaluate();
-            left = result;
-            if (null != result) {
-                root = result;
+                BigDecimal result = sum.divide(new BigDecimal(count),MathContext.DECIMAL128);
+                OperationTimer.end(this,start);
+                return result;
             }
-        }
-        return root;
-    }
 
-    /**
-     * Parse multiplicative operations i.e. operations with multiplicative
-     * priority
-     *
-     * @return evaluated value
-     * @throws ParseException thrown during parsing
-     */
-    BigDecimal parseMultiplicativeOperation() throws ParseException {
-        BigDecimal left = parseBaseOperation();
-        List<String> names = priorityOperationNames.get(MULTIPLICATIVE);
-        if (!hasToken(1) || !names.contains(peek(0).literal())) return left;
-        BigDecimal root = null;
-        while (hasToken(1) && names.contains(peek(0).literal())) {
-            Token operator = pop();
-            BigDecimal right = parseBaseOperation();
-            BigDecimal result = createBinaryOperator(operator.literal(),left,right).evaluate();
-            left = result;
-            if (null != result) {
-                root = result;
+            @Override
+            public double applyAsDouble(double[] params, int from, int count) {
+                if (count < 2) {
+                    return Double.NaN;
+                }
+                OperationTimer.count();
+                double sum = 0;
+                for (int i = from; i < from+count; i++) {
+                    sum = FastDouble.checkSum(sum,params[i],sum+params[i]);
+                }
+                return sum/count;
             }
-        }
-        return root;
-    }
 
-    /**
-     * Parse number literals, functions, operators, groups etc
-     *
-     * @return evaluated value
-     * @throws ParseException thrown during parsing
-     */
-    BigDecimal parseBaseOperation() throws ParseException {
-        if (!hasToken(0)) {
-            throw new ParseException("no more token available");
-        }
-        if (check("+",NUMERIC) || check("-",NUMERIC)) {
-            Token sign = pop();
-            BigDecimal number = new BigDecimal(pop().literal());
-            if (sign.literal().equals("+")) {
-                return number;
-            }
-            else {
-                return number.negate();
-            }
-        }
-        else if (check(NUMERIC)) {
-            Token token = pop();
-            String literal = token.literal();
-            return new BigDecimal(literal);
-        }
-        else if (check(KEYWORD,"(")) {
-            Token name = pop();
-            List<BigDecimal> parameters = new ArrayList<>();
-            advance(); // for '('
-            while (!check(")")) {
-                BigDecimal param = parseOperation();
-                parameters.add(param);
-                if (check(",")) {
-                    advance();
+            @Override
+            public long applyAsLong(long[] params, int from, int count) {
+                if (count < 2) {
+                    return NOT_A_LONG;
+                }
+                OperationTimer.count();
+                try {
+                    long sum = 0;
+                    for (int i = from; i < from+count; i++) {
+                        sum = Math.addExact(sum,params[i]);
+                    }
+                    return 0 == sum%count ? sum/count : NOT_A_LONG;
+                }
+                catch (ArithmeticException overflow) {
+                    return NOT_A_LONG;
                 }
             }
-            if (!check(")")) {
-                throw new ParseException("expected )");
-            }
-            advance(); // for ')'
-            Operation operation = createFunction(name.literal(),parameters);
-            return operation.evaluate();
-        }
-        else if (check("ANS")) {
-            advance();
-            return lastResult;
-        }
-        else if (check("(")) {
-            advance();
-            BigDecimal result = parseOperation();
-            if (!check(")")) {
-                throw new ParseException("expected )");
-            }
-            advance();
-            return result;
-        }
-        else {
-            throw new ParseException("unexpected token "+peek(0));
-        }
-    }
 
-    private boolean check(Object... tokenTypeOrLiteral) {
-        int offset = 0;
-        for (Object o : tokenTypeOrLiteral) {
-            if (!hasToken(offset)) return false;
-            Token token = peek(offset);
-            if (o instanceof TokenType) {
-                TokenType type = (TokenType) o;
-                if (token.type() != type)
-                    return false;
-            }
-            else {
-                String literal = (String) o;
-                if (!token.literal().equals(literal))
-                    return false;
+            @Override
+            public BigDecimal evaluate() {
+                List<BigDecimal> params = parameters();
+                if (null == params) {
+                    throw new OperationException("average function requires at least 2 parameters");
+                }
+                return apply(params.toArray(new BigDecimal[0]),0,params.size());
             }
-            offset++;
-        }
-        return true;
-    }
-
-    private boolean hasToken(int offset) {
-        return index+offset < tokenCount;
-    }
-
-    /**
-     * Get token at offset distance from current position, if available.
-     * 0 -> current token
-     * < 0 -> token before current position
-     * > 0 -> token after current position
-     *
-     * @param offset
-     * @return the token
-     * @throws IndexOutOfBoundsException if no token availble
-     */
-    private Token peek(int offset) {
-        int at = index+offset;
-        if (at >= tokenCount) {
-            throw new IndexOutOfBoundsException("available tokens count "+tokenCount+
-                    "; but requested token @ "+at);
-        }
-        return tokens.get(at);
-    }
-
-    /**
-     * Get the next token and increase the cursor current by one
-     *
-     * @return next token
-     */
-    private Token pop() {
-        Token token = tokens.get(index);
-        index++;
-        return token;
-    }
-
-    /**
-     * Increase the parser current postion by one
-     */
-    private void advance() {
-        int newIndex = index+ 1;
-        if (newIndex < 0 || newIndex > tokenCount) {
-            throw new IndexOutOfBoundsException("can not move pointer @ "+newIndex);
-        }
-        index = newIndex;
-    }
-
-    private BinaryOperator createBinaryOperator(String name, BigDecimal left, BigDecimal right) {
-        BinaryOperator operation = getOrThrow(name);
-        operation.parameters(left,right);
-        return operation;
-    }
-
-    private ParameterizedOperation createFunction(String name, List<BigDecimal> parameters) {
-        ParameterizedOperation operation = getOrThrow(name);
-        operation.parameters(parameters);
-        return operation;
-    }
-
-    private <O extends Operation> O getOrThrow(String name) throws OperationException {
-        if (!operations.containsKey(name)) {
-            throw new OperationException("Operation \""+name+"\" not implemented");
-        }
-        return (O) operations.get(name);
+        });
     }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * Evaluates the tree of an expression with doubles for a range of a
+ * column of values of its variable, same as
+ * {@link Node#evaluateAsDouble(double, double[])} with ANS 0 for each
+ * element. A kernel can be used by many threads at the same time.
+ *
+ * @author Rahul Bagchi
+ * @see ColumnKernels
+ */
+interface ColumnKernel {
+
+    /**
+     * @param in value of the variable
+     * @param out array to store the results, {@link Double#NaN} for the
+     *            elements that must be evaluated exactly
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     */
+    void evaluate(double[] in, double[] out, int from, int to);
+}
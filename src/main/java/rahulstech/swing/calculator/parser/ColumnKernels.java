@@ -0,0 +1,80 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.util.function.Function;
+
+/**
+ * Creates the {@link ColumnKernel} of an expression. If the optional
+ * Vector API backend is built, by the gradle property {@code vectorApi},
+ * and the module {@code jdk.incubator.vector} is present the kernel uses
+ * SIMD instructions, otherwise it walks the tree for each element. The
+ * backend can be turned off by the system property
+ * {@code calculator.vectorApi=false}.
+ *
+ * @author Rahul Bagchi
+ */
+final class ColumnKernels {
+
+    private static final String VECTOR_COMPILER = "rahulstech.swing.calculator.parser.VectorColumnCompiler";
+
+    private static final Function<Node,ColumnKernel> VECTOR = loadVectorCompiler();
+
+    private ColumnKernels() {}
+
+    /**
+     * @return the fastest kernel available for the tree
+     */
+    static ColumnKernel create(Node root) {
+        ColumnKernel kernel = vector(root);
+        return null == kernel ? scalar(root) : kernel;
+    }
+
+    /**
+     * @return the kernel which evaluates the tree for each element
+     */
+    static ColumnKernel scalar(Node root) {
+        return (in,out,from,to) -> {
+            double[] value = new double[1];
+            for (int i = from; i < to; i++) {
+                value[0] = in[i];
+                out[i] = root.evaluateAsDouble(0,value);
+            }
+        };
+    }
+
+    /**
+     * @return the kernel using the Vector API or {@literal null} if not available
+     */
+    static ColumnKernel vector(Node root) {
+        return null == VECTOR ? null : VECTOR.apply(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Node,ColumnKernel> loadVectorCompiler() {
+        if (!Boolean.parseBoolean(System.getProperty("calculator.vectorApi","true"))) {
+            return null;
+        }
+        try {
+            // fails if the backend is not built or the module is not added
+            Class<?> type = Class.forName(VECTOR_COMPILER);
+            return (Function<Node,ColumnKernel>) type.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException unavailable) {
+            return null;
+        }
+    }
+}
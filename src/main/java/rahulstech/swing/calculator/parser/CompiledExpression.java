@@ -0,0 +1,443 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.metrics.CalculatorMetrics;
+
+import jdk.jfr.FlightRecorder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * An expression already parsed into a tree of operations by
+ * {@link Calculator#compile(String)}. Evaluating a compiled expression
+ * does not tokenize or parse again, so it is suitable for expressions
+ * evaluated many times. After the expression is evaluated the number of
+ * times set by {@link Calculator#setCompileThreshold(int)} the tree is
+ * compiled into a generated class and later evaluations run the generated
+ * code instead of walking the tree. The operations are resolved while compiling,
+ * later changes to the registered operations of the calculator does not
+ * affect a compiled expression. The value of ANS and of the variables
+ * are supplied on each evaluation. A compiled expression can be evaluated
+ * by many threads at the same time.
+ *
+ * @author Rahul Bagchi
+ */
+public final class CompiledExpression {
+
+    private static final long[] NO_LONGS = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+
+    private final String expression;
+    private final Node root;
+    // operations used to compile
+    private final OperationRegistry registry;
+    private final String[] variables;
+    private final int tokenCount;
+    // maximum number of parentheses open at the same time
+    private final int nestingDepth;
+    // number of evaluations before generating code, negative for never
+    private final int compileThreshold;
+    // not exact when evaluated by many threads, only used to decide when to generate code
+    private int evaluationCount = 0;
+    private volatile Evaluator evaluator = null;
+    // code generation is tried only once even if it fails
+    private volatile boolean generated = false;
+    // created on the first column evaluation
+    private volatile ColumnKernel columnKernel = null;
+    // created on the first evaluation with metrics or statistics
+    private volatile OperationCensus census = null;
+    // cleared when the expression can not be evaluated with long integers,
+    // most likely it has a fraction, so it is not tried again
+    private boolean longArithmetic = true;
+
+    CompiledExpression(String expression, Node root, OperationRegistry registry, String[] variables,
+                       int tokenCount, int nestingDepth, int compileThreshold) {
+        this.expression = expression;
+        this.root = root;
+        this.registry = registry;
+        this.variables = variables;
+        this.tokenCount = tokenCount;
+        this.nestingDepth = nestingDepth;
+        this.compileThreshold = compileThreshold;
+        if (0 == compileThreshold) {
+            generateEvaluator();
+        }
+    }
+
+    /**
+     * @return the expression this instance compiled from
+     */
+    public String expression() {
+        return expression;
+    }
+
+    OperationRegistry registry() {
+        return registry;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    OperationCensus census() {
+        OperationCensus census = this.census;
+        if (null == census) {
+            // created again if many threads reach here at the same time, which is harmless
+            census = new OperationCensus(root);
+            this.census = census;
+        }
+        return census;
+    }
+
+    /**
+     * Add the operation nodes of the tree to the metrics, see {@link OperationCensus}
+     */
+    void recordOperations(CalculatorMetrics metrics) {
+        census().record(metrics);
+    }
+
+    /**
+     * @return names of the variables in the order their values are given
+     * @see Calculator#compile(String, String...)
+     */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * Evaluates the expression
+     *
+     * @param answer value of the keyword ANS
+     * @return the result
+     * @throws CalculatorException any exception during evaluating
+     * @throws IllegalStateException if the expression has variables
+     */
+    public BigDecimal evaluate(BigDecimal answer) throws CalculatorException {
+        return evaluate(answer,EvaluationMode.EXACT);
+    }
+
+    /**
+     * Evaluates the expression in the given mode. In
+     * {@link EvaluationMode#FAST_DOUBLE} the expression is evaluated exactly
+     * if it can not be evaluated correctly with doubles.
+     *
+     * @param answer value of the keyword ANS
+     * @param mode how to evaluate
+     * @return the result
+     * @throws CalculatorException any exception during evaluating
+     * @throws IllegalStateException if the expression has variables
+     */
+    public BigDecimal evaluate(BigDecimal answer, EvaluationMode mode) throws CalculatorException {
+        if (null == answer) {
+            throw new NullPointerException("answer == null");
+        }
+        if (null == mode) {
+            throw new NullPointerException("mode == null");
+        }
+        if (0 != variables.length) {
+            throw new IllegalStateException("values of the variables "+variables()+" are required");
+        }
+        return evaluate(answer,Node.NO_VARIABLES,mode);
+    }
+
+    /**
+     * Evaluates the expression with the values of its variables
+     *
+     * @param answer value of the keyword ANS
+     * @param values value of each variable in the order of {@link #variables()}
+     * @return the result
+     * @throws CalculatorException any exception during evaluating
+     * @throws IllegalArgumentException if the number of values is not same
+     *          as the number of variables
+     */
+    public BigDecimal evaluate(BigDecimal answer, BigDecimal[] values) throws CalculatorException {
+        if (null == answer) {
+            throw new NullPointerException("answer == null");
+        }
+        checkValues(values);
+        return evaluate(answer,values,EvaluationMode.EXACT);
+    }
+
+    /**
+     * Evaluates the expression of a single variable for each value of the
+     * input column and stores the results at the same index of the output
+     * column. The expression is evaluated with doubles in parallel chunks,
+     * with SIMD instructions if available, without creating objects for
+     * each element, except an element which can not be calculated
+     * correctly with doubles is calculated exactly. ANS is 0.
+     * The result of an element which fails, like division by 0, is
+     * {@link Double#NaN}.
+     *
+     * @param in value of the variable
+     * @param out array to store the results, at least as long as in
+     * @throws IllegalStateException if the expression has more than one variable
+     * @throws IllegalArgumentException if out is shorter than in
+     */
+    public void evaluateColumn(double[] in, double[] out) {
+        checkColumn(in.length,out.length);
+        ColumnKernel kernel = columnKernel();
+        // the values are needed after the results are stored
+        double[] values = in == out ? in.clone() : in;
+        ParallelRange.run(values.length,(from,to) -> {
+            kernel.evaluate(values,out,from,to);
+            BigDecimal[] exact = new BigDecimal[variables.length];
+            for (int i = from; i < to; i++) {
+                if (!Double.isNaN(out[i])) {
+                    continue;
+                }
+                try {
+                    if (0 != exact.length) {
+                        exact[0] = BigDecimal.valueOf(values[i]);
+                    }
+                    countEvaluation();
+                    out[i] = evaluateExactly(BigDecimal.ZERO,exact).doubleValue();
+                }
+                catch (RuntimeException e) {
+                    out[i] = Double.NaN;
+                }
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #evaluateColumn(double[], double[])} but evaluates
+     * exactly. The result of an element which fails is {@literal null}.
+     *
+     * @param in value of the variable
+     * @param out array to store the results, at least as long as in
+     * @throws IllegalStateException if the expression has more than one variable
+     * @throws IllegalArgumentException if out is shorter than in
+     */
+    public void evaluateColumn(BigDecimal[] in, BigDecimal[] out) {
+        checkColumn(in.length,out.length);
+        ParallelRange.run(in.length,(from,to) -> {
+            long[] longValue = new long[variables.length];
+            BigDecimal[] value = new BigDecimal[variables.length];
+            for (int i = from; i < to; i++) {
+                BigDecimal result = null;
+                try {
+                    if (0 != value.length) {
+                        value[0] = Objects.requireNonNull(in[i],"in["+i+"] == null");
+                        longValue[0] = Node.longValue(in[i]);
+                    }
+                    countEvaluation();
+                    if (longArithmetic) {
+                        long longResult = evaluateLongs(0,longValue);
+                        if (NOT_A_LONG != longResult) {
+                            result = BigDecimal.valueOf(longResult);
+                        }
+                    }
+                    if (null == result) {
+                        result = evaluateExactly(BigDecimal.ZERO,value);
+                    }
+                }
+                catch (RuntimeException e) {
+                    result = null;
+                }
+                out[i] = result;
+            }
+        });
+    }
+
+    private ColumnKernel columnKernel() {
+        ColumnKernel kernel = this.columnKernel;
+        if (null == kernel) {
+            // created again if many threads reach here at the same time, which is harmless
+            kernel = ColumnKernels.create(root);
+            this.columnKernel = kernel;
+        }
+        return kernel;
+    }
+
+    private void checkValues(BigDecimal[] values) {
+        if (null == values) {
+            throw new NullPointerException("values == null");
+        }
+        if (values.length != variables.length) {
+            throw new IllegalArgumentException("expected "+variables.length+" values for "+variables()
+                    +" but found "+values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (null == values[i]) {
+                throw new NullPointerException("values["+i+"] == null");
+            }
+        }
+    }
+
+    private void checkColumn(int inLength, int outLength) {
+        if (variables.length > 1) {
+            throw new IllegalStateException("column evaluation requires at most one variable but found "
+                    +variables());
+        }
+        if (outLength < inLength) {
+            throw new IllegalArgumentException("out is shorter than in");
+        }
+    }
+
+    /**
+     * Evaluates within the limits of the budget. The depth and the number
+     * of operations are checked before evaluating. The expression is
+     * evaluated with longs, and doubles in {@link EvaluationMode#FAST_DOUBLE},
+     * as usual, but exactly by walking the tree checking the budget at each
+     * operation instead of the generated code.
+     */
+    BigDecimal evaluate(BigDecimal answer, EvaluationMode mode, EvaluationBudget budget) {
+        budget.checkDepth(nestingDepth);
+        budget.checkOperationCount(census().operationNodeCount());
+        return budget.checkResult(evaluate(answer,Node.NO_VARIABLES,mode,budget));
+    }
+
+    private BigDecimal evaluate(BigDecimal answer, BigDecimal[] values, EvaluationMode mode) {
+        return evaluate(answer,values,mode,null);
+    }
+
+    /**
+     * @param budget limits of the calculation, {@literal null} if none
+     */
+    private BigDecimal evaluate(BigDecimal answer, BigDecimal[] values, EvaluationMode mode,
+                                EvaluationBudget budget) {
+        EvaluateEvent event = FlightRecorder.isInitialized() ? new EvaluateEvent() : null;
+        BigDecimal result = evaluateTiers(answer,values,mode,budget);
+        if (null != event) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.expressionLength = expression.length();
+                event.mode = mode.name();
+                event.bytecode = null != evaluator;
+                event.commit();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate with longs, then with doubles in {@link EvaluationMode#FAST_DOUBLE},
+     * and finally with BigDecimal, until one gives the result
+     */
+    private BigDecimal evaluateTiers(BigDecimal answer, BigDecimal[] values, EvaluationMode mode,
+                                     EvaluationBudget budget) {
+        countEvaluation();
+        // intermediate longs are not checked, so not used if the limit of digits is small
+        if (null == budget || budget.allowsAnyLong()) {
+            BigDecimal result = evaluateAsLong(answer,values);
+            if (null != result) {
+                return result;
+            }
+        }
+        if (EvaluationMode.FAST_DOUBLE == mode) {
+            double[] doubles = 0 == values.length ? NO_DOUBLES : new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                doubles[i] = FastDouble.toDouble(values[i]);
+            }
+            double value = root.evaluateAsDouble(FastDouble.toDouble(answer),doubles);
+            if (!Double.isNaN(value)) {
+                return FastDouble.toBigDecimal(value);
+            }
+        }
+        if (null != budget) {
+            return budget.evaluate(root,answer,values);
+        }
+        return evaluateExactly(answer,values);
+    }
+
+    /**
+     * Evaluate with long integers if the expression is still expected to be
+     * an integer expression
+     *
+     * @return the result or {@literal null} if it is not an integer
+     */
+    private BigDecimal evaluateAsLong(BigDecimal answer, BigDecimal[] values) {
+        if (!longArithmetic) {
+            return null;
+        }
+        long[] longs = 0 == values.length ? NO_LONGS : new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            longs[i] = Node.longValue(values[i]);
+        }
+        long result = evaluateLongs(Node.longValue(answer),longs);
+        if (NOT_A_LONG != result) {
+            return BigDecimal.valueOf(result);
+        }
+        longArithmetic = false;
+        return null;
+    }
+
+    /**
+     * Evaluate with long integers by the generated class if available
+     */
+    private long evaluateLongs(long answer, long[] values) {
+        Evaluator evaluator = this.evaluator;
+        if (null != evaluator) {
+            return evaluator.evaluateAsLong(answer,values);
+        }
+        return root.evaluateAsLong(answer,values);
+    }
+
+    /**
+     * Evaluate with BigDecimal, by the generated class if available
+     */
+    private BigDecimal evaluateExactly(BigDecimal answer, BigDecimal[] values) {
+        Evaluator evaluator = this.evaluator;
+        if (null != evaluator) {
+            return evaluator.evaluate(answer,values);
+        }
+        return root.evaluate(answer,values);
+    }
+
+    /**
+     * Count an evaluation, whichever tier performs it, and generate the
+     * class once the threshold is reached
+     */
+    private void countEvaluation() {
+        if (compileThreshold > 0 && !generated && ++evaluationCount >= compileThreshold) {
+            generateEvaluator();
+        }
+    }
+
+    /**
+     * @return {@literal true} if later evaluations run generated code
+     */
+    public boolean isCompiledToBytecode() {
+        return null != evaluator;
+    }
+
+    private synchronized void generateEvaluator() {
+        if (generated) {
+            return;
+        }
+        generated = true;
+        Evaluator evaluator = BytecodeCompiler.compile(root);
+        if (null != evaluator) {
+            this.evaluator = evaluator;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpression("+root+")";
+    }
+}
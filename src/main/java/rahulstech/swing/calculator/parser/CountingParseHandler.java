@@ -0,0 +1,73 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.metrics.CalculatorMetrics;
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * {@link ParseHandler} which counts the operations in the metrics and
+ * passes everything to another handler. Used only while metrics are
+ * enabled, so the handler is not wrapped otherwise.
+ *
+ * @author Rahul Bagchi
+ */
+final class CountingParseHandler<T> implements ParseHandler<T> {
+
+    private final ParseHandler<T> handler;
+    private final CalculatorMetrics metrics;
+
+    CountingParseHandler(ParseHandler<T> handler, CalculatorMetrics metrics) {
+        this.handler = handler;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public T number(BigDecimal value) {
+        return handler.number(value);
+    }
+
+    @Override
+    public T number(long value) {
+        return handler.number(value);
+    }
+
+    @Override
+    public T answer() {
+        return handler.answer();
+    }
+
+    @Override
+    public T variable(String name, int index) {
+        return handler.variable(name,index);
+    }
+
+    @Override
+    public T operator(BinaryOperator operator, T left, T right) {
+        metrics.recordOperation(operator.name(),1);
+        return handler.operator(operator,left,right);
+    }
+
+    @Override
+    public T function(ParameterizedOperation function, List<T> parameters) {
+        metrics.recordOperation(function.name(),1);
+        return handler.function(function,parameters);
+    }
+}
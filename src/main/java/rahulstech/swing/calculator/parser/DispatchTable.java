@@ -0,0 +1,184 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable lookup table from a token to the registered {@link Operation}
+ * with the same name and its priority. Operations with a single character
+ * name, like the operators, are found from an array indexed by that
+ * character. Operations with longer names are found from a hash table
+ * whose seed is chosen so that no two names share a slot, so usually at
+ * most one name is compared with the token. If no such seed is found
+ * within a few attempts the names sharing a slot are chained.
+ *
+ * @author Rahul Bagchi
+ * @see OperationRegistry
+ */
+final class DispatchTable {
+
+    // number of seeds tried before growing the hash table
+    private static final int SEED_ATTEMPTS = 64;
+    // number of times the hash table is doubled before names are chained
+    private static final int MAX_GROWTH = 2;
+
+    private final Operation[] operations;
+    private final Operation.Priority[] priorities;
+    // index of the operation by the character of single character names
+    private final int[] symbolSlots;
+    // index of the operation by the hash of multi character names, the
+    // next operation with the same hash is in nextKeywords
+    private final int[] keywordSlots;
+    private final int[] nextKeywords;
+    private final int keywordMask;
+    private final int keywordSeed;
+
+    DispatchTable(Collection<Operation> registered) {
+        int count = registered.size();
+        this.operations = registered.toArray(new Operation[0]);
+        this.priorities = new Operation.Priority[count];
+
+        int maxSymbol = -1;
+        List<Integer> keywords = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            priorities[i] = operations[i].priority();
+            String name = operations[i].name();
+            if (1 == name.length()) {
+                maxSymbol = Math.max(maxSymbol,name.charAt(0));
+            }
+            else {
+                keywords.add(i);
+            }
+        }
+
+        this.symbolSlots = new int[maxSymbol+1];
+        Arrays.fill(symbolSlots,-1);
+        for (int i = 0; i < count; i++) {
+            String name = operations[i].name();
+            if (1 == name.length()) {
+                symbolSlots[name.charAt(0)] = i;
+            }
+        }
+
+        this.nextKeywords = new int[count];
+        int size = Integer.highestOneBit(Math.max(keywords.size(),1) << 1) << 1;
+        int maxSeed = SEED_ATTEMPTS*(MAX_GROWTH+1)-1;
+        int[] slots;
+        int seed = 0;
+        while (null == (slots = buildKeywordSlots(keywords,size,seed,seed == maxSeed))) {
+            seed++;
+            if (0 == seed%SEED_ATTEMPTS) {
+                size <<= 1;
+            }
+        }
+        this.keywordSlots = slots;
+        this.keywordMask = size-1;
+        this.keywordSeed = seed;
+    }
+
+    /**
+     * Find the operation with the same name as the current token
+     *
+     * @param tokens the tokens positioned at the token to find
+     * @return index of the operation or -1 if not found
+     */
+    int find(TokenStream tokens) {
+        int length = tokens.length(0);
+        if (1 == length) {
+            char c = tokens.charAt(0,0);
+            return c < symbolSlots.length ? symbolSlots[c] : -1;
+        }
+        int seed = keywordSeed;
+        int hash = seed;
+        for (int i = 0; i < length; i++) {
+            hash = hash(seed,hash,tokens.charAt(0,i));
+        }
+        int slot = keywordSlots[mix(hash) & keywordMask];
+        while (-1 != slot) {
+            if (tokens.matches(0,operations[slot].name())) {
+                return slot;
+            }
+            slot = nextKeywords[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * @param index index returned by {@link #find(TokenStream)}
+     * @return the operation at the index
+     */
+    Operation operation(int index) {
+        return operations[index];
+    }
+
+    /**
+     * @param index index returned by {@link #find(TokenStream)}
+     * @return priority of the operation at the index
+     */
+    Operation.Priority priority(int index) {
+        return priorities[index];
+    }
+
+    /**
+     * Try to place each keyword in a separate slot of the hash table
+     *
+     * @param chain {@literal true} to chain the keywords sharing a slot
+     * @return the slots or {@literal null} if two keywords share a slot
+     *          and chaining is not allowed
+     */
+    private int[] buildKeywordSlots(List<Integer> keywords, int size, int seed, boolean chain) {
+        int[] slots = new int[size];
+        Arrays.fill(slots,-1);
+        Arrays.fill(nextKeywords,-1);
+        for (int index : keywords) {
+            String name = operations[index].name();
+            int hash = seed;
+            for (int i = 0; i < name.length(); i++) {
+                hash = hash(seed,hash,name.charAt(i));
+            }
+            int slot = mix(hash) & (size-1);
+            if (-1 != slots[slot]) {
+                if (!chain) {
+                    return null;
+                }
+                nextKeywords[index] = slots[slot];
+            }
+            slots[slot] = index;
+        }
+        return slots;
+    }
+
+    /**
+     * Add a character to the hash. The seed changes the multiplier of
+     * each character, so names with the same hash for one seed usually
+     * have different hashes for another, unlike only starting from the
+     * seed.
+     */
+    private static int hash(int seed, int hash, char c) {
+        return (hash ^ c)*(0x01000193+(seed << 1));
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of evaluating a {@link CompiledExpression}
+ *
+ * @author Rahul Bagchi
+ */
+@Name("rahulstech.swing.calculator.Evaluate")
+@Label("Evaluate")
+@Description("Compiled expression evaluated")
+@Category({"Calculator","Evaluator"})
+@StackTrace(false)
+final class EvaluateEvent extends jdk.jfr.Event {
+
+    @Label("Expression Length")
+    int expressionLength;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Bytecode")
+    @Description("Evaluated by generated code instead of walking the tree")
+    boolean bytecode;
+
+    /**
+     * Created only while the flight recorder is initialized, as loading an
+     * event class initializes the flight recorder. Started when created.
+     */
+    EvaluateEvent() {
+        begin();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+
+import static rahulstech.swing.calculator.parser.EvaluationLimits.Limit.*;
+
+/**
+ * What is left of the {@link EvaluationLimits} of one calculation. Also
+ * evaluates the tree of a compiled expression checking the limits at each
+ * operation, used instead of the generated code which can not be stopped.
+ *
+ * @author Rahul Bagchi
+ */
+final class EvaluationBudget {
+
+    private final EvaluationLimits limits;
+    // System.nanoTime() after which the calculation fails
+    private final long deadline;
+    private final boolean timed;
+    private long operationCount = 0;
+
+    EvaluationBudget(EvaluationLimits limits) {
+        long now = System.nanoTime();
+        this.limits = limits;
+        // no deadline if it overflows, as it is too far anyway
+        this.timed = Long.MAX_VALUE != limits.maxTimeNanos() && now+limits.maxTimeNanos() > now;
+        this.deadline = timed ? now+limits.maxTimeNanos() : 0;
+    }
+
+    int maxDepth() {
+        return limits.maxDepth();
+    }
+
+    void checkDepth(int depth) {
+        if (depth > limits.maxDepth()) {
+            throw new LimitExceededException(DEPTH,"nesting depth is more than "+limits.maxDepth());
+        }
+    }
+
+    /**
+     * Check the number of operations an expression will perform before evaluating it
+     */
+    void checkOperationCount(long count) {
+        if (count > limits.maxOperations()) {
+            throw new LimitExceededException(OPERATIONS,"more than "+limits.maxOperations()+" operations");
+        }
+    }
+
+    /**
+     * Count an operation about to be performed and check the time
+     */
+    void beforeOperation() {
+        checkOperationCount(++operationCount);
+        checkTime();
+    }
+
+    void checkTime() {
+        if (timed && System.nanoTime()-deadline > 0) {
+            throw new LimitExceededException(TIME,"took more than "+limits.maxTimeNanos()/1000000+" ms");
+        }
+    }
+
+    /**
+     * @return the value if within the limits of digits and scale
+     */
+    BigDecimal checkResult(BigDecimal value) {
+        // digits before the decimal point, never less than the actual digits
+        long digits = (long) value.precision()-value.scale();
+        if (digits > limits.maxDigits()) {
+            throw new LimitExceededException(DIGITS,"result has more than "+limits.maxDigits()+" digits");
+        }
+        if (value.scale() > limits.maxScale()) {
+            throw new LimitExceededException(SCALE,"result has more than "+limits.maxScale()
+                    +" digits after the decimal point");
+        }
+        return value;
+    }
+
+    /**
+     * Check an integer result, which has no digit after the decimal point
+     */
+    void checkResult(long value) {
+        // any long has at most 19 digits
+        if (limits.maxDigits() >= 19) {
+            return;
+        }
+        long limit = 1;
+        for (int i = 0; i < limits.maxDigits(); i++) {
+            limit *= 10;
+        }
+        if (value >= limit || value <= -limit) {
+            throw new LimitExceededException(DIGITS,"result has more than "+limits.maxDigits()+" digits");
+        }
+    }
+
+    /**
+     * @return {@literal true} if every long result is within the limit of digits
+     */
+    boolean allowsAnyLong() {
+        return limits.maxDigits() >= 19;
+    }
+
+    /**
+     * Evaluate the tree checking the time and the result of every operation
+     */
+    BigDecimal evaluate(Node root, BigDecimal answer, BigDecimal[] variables) {
+        return IterativeEvaluator.evaluate(root,answer,variables,this);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.time.Duration;
+
+/**
+ * Limits of the resources one calculation may use, given to
+ * {@link Calculator#calculate(Session, String, EvaluationLimits)}. A
+ * calculation going over a limit fails with {@link LimitExceededException}
+ * as soon as it is noticed, so an expression from an untrusted source can
+ * not keep a thread busy or the memory full. Instances are immutable, the
+ * with methods return a copy with one limit changed.
+ * <ul>
+ *     <li>time is checked before each operation, an operation already
+ *     running is not stopped</li>
+ *     <li>depth is the number of parentheses, including the ones of the
+ *     functions, open at the same time</li>
+ *     <li>digits is the number of digits before the decimal point of the
+ *     result of each operation, like 1000 for 1E+999</li>
+ *     <li>scale is the number of digits after the decimal point of the
+ *     result of each operation</li>
+ *     <li>operations is the number of operators and functions performed</li>
+ * </ul>
+ *
+ * @author Rahul Bagchi
+ */
+public final class EvaluationLimits {
+
+    /**
+     * The limits
+     */
+    public enum Limit {
+        TIME,
+        DEPTH,
+        DIGITS,
+        SCALE,
+        OPERATIONS
+    }
+
+    /**
+     * No limits at all
+     */
+    public static final EvaluationLimits NONE = new EvaluationLimits(Long.MAX_VALUE,Integer.MAX_VALUE,
+            Integer.MAX_VALUE,Integer.MAX_VALUE,Long.MAX_VALUE);
+
+    private final long maxTimeNanos;
+    private final int maxDepth;
+    private final int maxDigits;
+    private final int maxScale;
+    private final long maxOperations;
+
+    private EvaluationLimits(long maxTimeNanos, int maxDepth, int maxDigits, int maxScale, long maxOperations) {
+        this.maxTimeNanos = maxTimeNanos;
+        this.maxDepth = maxDepth;
+        this.maxDigits = maxDigits;
+        this.maxScale = maxScale;
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * @param time maximum time of a calculation
+     * @throws IllegalArgumentException if time is not positive
+     */
+    public EvaluationLimits withMaxTime(Duration time) {
+        if (time.isNegative() || time.isZero()) {
+            throw new IllegalArgumentException("time must be positive");
+        }
+        long nanos;
+        try {
+            nanos = time.toNanos();
+        }
+        catch (ArithmeticException tooLong) {
+            nanos = Long.MAX_VALUE;
+        }
+        return new EvaluationLimits(nanos,maxDepth,maxDigits,maxScale,maxOperations);
+    }
+
+    /**
+     * @param depth maximum number of parentheses open at the same time
+     * @throws IllegalArgumentException if depth is negative
+     */
+    public EvaluationLimits withMaxDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth can not be negative");
+        }
+        return new EvaluationLimits(maxTimeNanos,depth,maxDigits,maxScale,maxOperations);
+    }
+
+    /**
+     * @param digits maximum number of digits before the decimal point of any result
+     * @throws IllegalArgumentException if digits is less than 1
+     */
+    public EvaluationLimits withMaxDigits(int digits) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("digits must be at least 1");
+        }
+        return new EvaluationLimits(maxTimeNanos,maxDepth,digits,maxScale,maxOperations);
+    }
+
+    /**
+     * @param scale maximum number of digits after the decimal point of any result
+     * @throws IllegalArgumentException if scale is negative
+     */
+    public EvaluationLimits withMaxScale(int scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("scale can not be negative");
+        }
+        return new EvaluationLimits(maxTimeNanos,maxDepth,maxDigits,scale,maxOperations);
+    }
+
+    /**
+     * @param operations maximum number of operations performed
+     * @throws IllegalArgumentException if operations is negative
+     */
+    public EvaluationLimits withMaxOperations(long operations) {
+        if (operations < 0) {
+            throw new IllegalArgumentException("operations can not be negative");
+        }
+        return new EvaluationLimits(maxTimeNanos,maxDepth,maxDigits,maxScale,operations);
+    }
+
+    /**
+     * @return maximum time in nanoseconds, {@link Long#MAX_VALUE} for no limit
+     */
+    public long maxTimeNanos() {
+        return maxTimeNanos;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public int maxDigits() {
+        return maxDigits;
+    }
+
+    public int maxScale() {
+        return maxScale;
+    }
+
+    public long maxOperations() {
+        return maxOperations;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationLimits(time="+(Long.MAX_VALUE == maxTimeNanos ? "none" : Duration.ofNanos(maxTimeNanos))
+                +", depth="+maxDepth+", digits="+maxDigits+", scale="+maxScale+", operations="+maxOperations+")";
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * How a {@link Calculator} evaluates expressions
+ *
+ * @author Rahul Bagchi
+ * @see Calculator#setEvaluationMode(EvaluationMode)
+ */
+public enum EvaluationMode {
+
+    /**
+     * Evaluate with {@link java.math.BigDecimal} using the precision of
+     * each operation
+     */
+    EXACT,
+
+    /**
+     * Evaluate with primitive doubles and round the result to 15
+     * significant digits. An expression is evaluated exactly if any
+     * number does not fit in 15 significant digits, an operation does not
+     * support doubles, a result overflows or underflows or an addition
+     * loses too many digits by cancellation. Errors like division by zero
+     * are always reported by the exact evaluation, so the messages are
+     * same in both modes.
+     */
+    FAST_DOUBLE
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Resources used by a calculation measured by
+ * {@link Calculator#calculateWithStats(Session, String)}. The CPU time and
+ * the allocated bytes are of the calculating thread and are -1 if the JVM
+ * does not support measuring them or measuring is disabled.
+ *
+ * @author Rahul Bagchi
+ */
+public final class EvaluationStats {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // null if the JVM does not provide allocated bytes of threads
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS =
+            THREADS instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+                    ? (com.sun.management.ThreadMXBean) THREADS : null;
+
+    private final long cpuTimeNanos;
+    private final long allocatedBytes;
+    private final int tokenCount;
+    private final int nodeCount;
+    private final long operationCount;
+
+    EvaluationStats(long cpuTimeNanos, long allocatedBytes, int tokenCount, int nodeCount,
+                    long operationCount) {
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.tokenCount = tokenCount;
+        this.nodeCount = nodeCount;
+        this.operationCount = operationCount;
+    }
+
+    /**
+     * @return CPU time of the calculation in nanoseconds or -1 if not measured
+     */
+    public long cpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return bytes allocated by the calculation or -1 if not measured
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return number of tokens of the expression, 0 if tokenizing failed
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return number of nodes of the compiled expression, 0 if parsing failed
+     *          or the expression is calculated while parsing without a tree
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Number of times operators and functions are performed. An operation
+     * performed with long integers or doubles and then again with
+     * BigDecimal, because the result is not exact, is counted twice, and
+     * an operation of a shared subexpression reused from an earlier
+     * evaluation is not counted.
+     *
+     * @return number of operations performed
+     */
+    public long operationCount() {
+        return operationCount;
+    }
+
+    /**
+     * @return CPU time of the current thread in nanoseconds or -1 if not available
+     */
+    static long currentThreadCpuTime() {
+        if (!THREADS.isCurrentThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        return THREADS.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far or -1 if not available
+     */
+    static long currentThreadAllocatedBytes() {
+        if (null == ALLOCATIONS || !ALLOCATIONS.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return end-start or -1 if any of them is not measured
+     */
+    static long elapsed(long start, long end) {
+        return start < 0 || end < 0 ? -1 : end-start;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationStats(cpuTime="+cpuTimeNanos+"ns, allocated="+allocatedBytes+"B, tokens="+tokenCount
+                +", nodes="+nodeCount+", operations="+operationCount+")";
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * Evaluates a {@link CompiledExpression} in place of walking its tree.
+ * Implemented by the classes generated by {@link BytecodeCompiler}.
+ *
+ * @author Rahul Bagchi
+ */
+interface Evaluator {
+
+    /**
+     * Evaluate the expression
+     *
+     * @param answer value of the keyword ANS
+     * @param variables value of each variable by its index
+     * @return the result
+     */
+    BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables);
+
+    /**
+     * Evaluate the expression with long integers. The generated code has
+     * no branch, so a value which is not an integer stops the evaluation
+     * by {@link #checkLong(long)} throwing {@link NotALongException}.
+     *
+     * @param answer value of the keyword ANS or
+     *               {@link rahulstech.swing.calculator.parser.operation.ParameterizedOperation#NOT_A_LONG}
+     *               if not an integer
+     * @param variables value of each variable by its index
+     * @return the result
+     * @throws NotALongException if the expression must be evaluated with BigDecimal
+     */
+    long evaluateLongs(long answer, long[] variables);
+
+    /**
+     * Same as {@link #evaluateLongs(long, long[])} but returns
+     * {@link rahulstech.swing.calculator.parser.operation.ParameterizedOperation#NOT_A_LONG}
+     * in place of throwing {@link NotALongException}
+     */
+    default long evaluateAsLong(long answer, long[] variables) {
+        try {
+            return evaluateLongs(answer,variables);
+        }
+        catch (NotALongException e) {
+            return NOT_A_LONG;
+        }
+    }
+
+    /**
+     * Called by the generated code after each long value
+     *
+     * @return the value
+     * @throws NotALongException if the value is not an integer
+     */
+    static long checkLong(long value) {
+        if (NOT_A_LONG == value) {
+            throw NotALongException.INSTANCE;
+        }
+        return value;
+    }
+
+    /**
+     * Thrown by {@link #checkLong(long)}, without stack trace as it only
+     * ends the long evaluation
+     */
+    final class NotALongException extends RuntimeException {
+
+        static final NotALongException INSTANCE = new NotALongException();
+
+        private NotALongException() {
+            super(null,null,false,false);
+        }
+    }
+}
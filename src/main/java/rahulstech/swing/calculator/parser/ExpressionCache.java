@@ -0,0 +1,217 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of {@link CompiledExpression} used by {@link Calculator}.
+ * When the cache is full the least recently used expression is removed.
+ * Expressions are looked up by their normalized text, i.e. leading and
+ * trailing whitespaces removed and other whitespaces replaced by a single
+ * space, so the same expression written with different spacing is
+ * compiled only once.
+ * <p>
+ * A large cache is split into stripes by the hash of the key, each with its
+ * own lock and its own share of the maximum size, so threads looking up
+ * different expressions do not wait for each other. The least recently
+ * used expression of a stripe is removed when the stripe is full, which
+ * may happen before the whole cache is full. A cache of less than 32
+ * expressions is not split.
+ * </p>
+ *
+ * @author Rahul Bagchi
+ * @see Calculator#enableCache(int)
+ */
+public class ExpressionCache {
+
+    // minimum number of expressions kept by a stripe
+    private static final int MIN_STRIPE_SIZE = 16;
+    private static final int MAX_STRIPES = 16;
+
+    private final int maximumSize;
+    private final Stripe[] stripes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Create a new cache
+     *
+     * @param maximumSize maximum number of compiled expressions to keep
+     * @throws IllegalArgumentException if maximumSize is less than 1
+     */
+    ExpressionCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        int count = Integer.highestOneBit(Math.max(1,Math.min(MAX_STRIPES,maximumSize/MIN_STRIPE_SIZE)));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            // the remainder is shared by the first stripes
+            stripes[i] = new Stripe(maximumSize/count+(i < maximumSize%count ? 1 : 0),evictionCount);
+        }
+    }
+
+    /**
+     * Least recently used map of a part of the keys
+     */
+    private static final class Stripe extends LinkedHashMap<String,CompiledExpression> {
+
+        private final int maximumSize;
+        private final LongAdder evictionCount;
+
+        Stripe(int maximumSize, LongAdder evictionCount) {
+            super(16,0.75f,true);
+            this.maximumSize = maximumSize;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,CompiledExpression> eldest) {
+            if (size() > maximumSize) {
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get the compiled expression for the key and mark it as
+     * recently used
+     *
+     * @param key normalized expression
+     * @return the compiled expression or {@literal null} if not cached
+     * @see #normalize(String)
+     */
+    CompiledExpression get(String key) {
+        Stripe stripe = stripeOf(key);
+        CompiledExpression compiled;
+        synchronized (stripe) {
+            compiled = stripe.get(key);
+        }
+        if (null == compiled) {
+            missCount.increment();
+        }
+        else {
+            hitCount.increment();
+        }
+        return compiled;
+    }
+
+    void put(String key, CompiledExpression compiled) {
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.put(key,compiled);
+        }
+    }
+
+    private Stripe stripeOf(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length-1)];
+    }
+
+    /**
+     * Remove all the cached expressions. The counters are not reset.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Create the key of an expression. Whitespaces only separate tokens,
+     * so replacing a whitespace run by a single space does not change
+     * the tokens.
+     *
+     * @param expression the expression
+     * @return the normalized expression
+     */
+    static String normalize(String expression) {
+        if (isNormalized(expression)) {
+            return expression;
+        }
+        int length = expression.length();
+        StringBuilder builder = new StringBuilder(length);
+        boolean whitespace = false;
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (Tokenizer.WHITESPACE == Tokenizer.classOf(c)) {
+                whitespace = true;
+                continue;
+            }
+            if (whitespace && builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(c);
+            whitespace = false;
+        }
+        return builder.toString();
+    }
+
+    private static boolean isNormalized(String expression) {
+        int length = expression.length();
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (Tokenizer.WHITESPACE == Tokenizer.classOf(c)) {
+                if (' ' != c || 0 == i || length-1 == i || ' ' == expression.charAt(i-1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache(size="+size()+", maximumSize="+maximumSize+
+                ", hits="+hitCount()+", misses="+missCount()+", evictions="+evictionCount()+")";
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * {@link ParseHandler} which evaluates each part of the expression as
+ * soon as it is parsed, so no tree is kept in memory.
+ * <p>
+ * Values are kept in a stack and the handler returns the index of the
+ * value in the stack. The parser always passes the operands of an
+ * operation in the order they were produced, so the operands of an
+ * operation are always at the top of the stack. A value is kept as a
+ * long while it is an integer and converted to {@link BigDecimal} only
+ * when an operation can not calculate its result as a long, so integer
+ * arithmetic does not create any object.
+ * </p>
+ *
+ * @author Rahul Bagchi
+ */
+class ExpressionEvaluator implements ParseHandler<Integer> {
+
+    private final BigDecimal answer;
+    private final long longAnswer;
+
+    // value of each slot, a decimal is null if the value is the long
+    private long[] longs = new long[16];
+    private BigDecimal[] decimals = new BigDecimal[16];
+    private int size = 0;
+
+    /**
+     * @param answer value of the keyword ANS
+     */
+    ExpressionEvaluator(BigDecimal answer) {
+        this.answer = answer;
+        this.longAnswer = null == answer ? NOT_A_LONG : Node.longValue(answer);
+    }
+
+    /**
+     * @param slot the value returned by the parser
+     * @return the value in the slot
+     */
+    BigDecimal result(int slot) {
+        return decimal(slot);
+    }
+
+    @Override
+    public Integer number(BigDecimal value) {
+        return push(value);
+    }
+
+    @Override
+    public Integer number(long value) {
+        return push(value);
+    }
+
+    @Override
+    public Integer answer() {
+        return NOT_A_LONG == longAnswer ? push(answer) : push(longAnswer);
+    }
+
+    /**
+     * Expressions are evaluated while parsing only without variables, as the
+     * values are known only when a compiled expression is evaluated
+     */
+    @Override
+    public Integer variable(String name, int index) {
+        throw new ParseException("variable "+name+" has no value");
+    }
+
+    @Override
+    public Integer operator(BinaryOperator operator, Integer left, Integer right) {
+        int l = left;
+        int r = right;
+        if (null == decimals[l] && null == decimals[r]) {
+            long result = operator.applyAsLong(longs[l],longs[r]);
+            if (NOT_A_LONG != result) {
+                size = l;
+                return push(result);
+            }
+        }
+        BigDecimal result = operator.apply(decimal(l),decimal(r));
+        size = l;
+        return push(result);
+    }
+
+    @Override
+    public Integer function(ParameterizedOperation function, List<Integer> parameters) {
+        int count = parameters.size();
+        int from = 0 == count ? size : parameters.get(0);
+        long result = applyAsLong(function,from,count);
+        if (NOT_A_LONG != result) {
+            size = from;
+            return push(result);
+        }
+        BigDecimal value;
+        switch (count) {
+            case 1:
+                value = function.apply(decimal(from));
+                break;
+            case 2:
+                value = function.apply(decimal(from),decimal(from+1));
+                break;
+            default:
+                BigDecimal[] values = new BigDecimal[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = decimal(from+i);
+                }
+                value = function.apply(values,0,count);
+        }
+        size = from;
+        return push(value);
+    }
+
+    private long applyAsLong(ParameterizedOperation function, int from, int count) {
+        for (int i = from; i < from+count; i++) {
+            if (null != decimals[i]) {
+                return NOT_A_LONG;
+            }
+        }
+        switch (count) {
+            case 1:
+                return function.applyAsLong(longs[from]);
+            case 2:
+                return function.applyAsLong(longs[from],longs[from+1]);
+            default:
+                return function.applyAsLong(longs,from,count);
+        }
+    }
+
+    /**
+     * @return the value in the slot if it is not a long, otherwise {@literal null}
+     */
+    BigDecimal decimalOrNull(int slot) {
+        return decimals[slot];
+    }
+
+    long longValue(int slot) {
+        return longs[slot];
+    }
+
+    private BigDecimal decimal(int slot) {
+        BigDecimal value = decimals[slot];
+        return null == value ? BigDecimal.valueOf(longs[slot]) : value;
+    }
+
+    private Integer push(long value) {
+        ensureCapacity();
+        longs[size] = value;
+        decimals[size] = null;
+        return size++;
+    }
+
+    private Integer push(BigDecimal value) {
+        if (null == value) {
+            throw new NullPointerException("operation returned null");
+        }
+        ensureCapacity();
+        decimals[size] = value;
+        return size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == longs.length) {
+            longs = Arrays.copyOf(longs,size << 1);
+            decimals = Arrays.copyOf(decimals,size << 1);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Rewrites the tree of a {@link CompiledExpression} into a tree which
+ * evaluates to the same value with less work. Only operations marked
+ * pure are rearranged and ANS is never replaced by a value.
+ * <ul>
+ *     <li>Operations with constant operands are performed once while
+ *     optimizing, like 2*3+ANS to 6+ANS and ANS+1+2 to ANS+3 for an
+ *     associative +. An operation which fails is kept to report the
+ *     error during evaluation.</li>
+ *     <li>Identities of operators are removed, like ANS+0 and 0+ANS to ANS.
+ *     An operator which rounds keeps the identity unless the value is known
+ *     to fit, so ANS*2*1 becomes ANS*2 but ANS*1 is kept as it rounds ANS
+ *     to 34 digits.</li>
+ *     <li>Same subexpressions, like SQRT(ANS) in SQRT(ANS)*SQRT(ANS), are
+ *     calculated only once per evaluation.</li>
+ * </ul>
+ *
+ * @author Rahul Bagchi
+ */
+final class ExpressionOptimizer {
+
+    // the first node of each distinct pure subexpression
+    private final Map<List<Object>,Node> canonical = new HashMap<>();
+    // nodes without any impure operation
+    private final Set<Node> pure = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Node,Integer> uses = new IdentityHashMap<>();
+    private final Map<Node,Node> replacements = new IdentityHashMap<>();
+
+    private ExpressionOptimizer() {}
+
+    /**
+     * Optimize the tree
+     *
+     * @param root root of the tree
+     * @return root of the optimized tree
+     */
+    static Node optimize(Node root) {
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        Node simplified = optimizer.simplify(root);
+        optimizer.countUses(simplified);
+        return optimizer.share(simplified);
+    }
+
+    /**
+     * Fold constants and remove identities, same pure subexpressions
+     * become the same node
+     */
+    private Node simplify(Node root) {
+        return rebuild(root,node -> isOperation(node) ? null : simplifyLeaf(node),
+                (node,children) -> node instanceof Node.Chain
+                        ? simplifyChain((Node.Chain) node,children) : simplifyCall((Node.Call) node,children));
+    }
+
+    private Node simplifyLeaf(Node node) {
+        if (node instanceof Node.Literal) {
+            return canonical(Collections.singletonList(((Node.Literal) node).value()),node);
+        }
+        if (node instanceof Node.Answer) {
+            pure.add(node);
+        }
+        // variables are not pure, so subexpressions with variables are not shared
+        return node;
+    }
+
+    /**
+     * Rebuild a tree from the leaves up, keeping the path from the root on
+     * the heap instead of the stack so a deep tree does not overflow it
+     *
+     * @param before new node for a node without visiting its children,
+     *               {@literal null} to visit them
+     * @param after new node for a node from the new nodes of its children
+     * @return the new root
+     */
+    private static Node rebuild(Node root, Function<Node,Node> before, BiFunction<Node,List<Node>,Node> after) {
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        List<List<Node>> children = new ArrayList<>();
+        int top = 0;
+        nodes[0] = root;
+        children.add(new ArrayList<>());
+        Node value = null;
+        while (true) {
+            Node node = nodes[top];
+            int index = next[top];
+            if (0 == index) {
+                value = before.apply(node);
+            }
+            else {
+                children.get(top).add(value);
+                value = null;
+            }
+            if (null == value && index == node.childCount()) {
+                value = after.apply(node,children.get(top));
+            }
+            if (null != value) {
+                children.get(top).clear();
+                if (0 == top--) {
+                    return value;
+                }
+                continue;
+            }
+            next[top] = index+1;
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+            }
+            if (top == children.size()) {
+                children.add(new ArrayList<>());
+            }
+            nodes[top] = node.child(index);
+            next[top] = 0;
+        }
+    }
+
+    /**
+     * @param children simplified first operand and operands of the chain
+     */
+    private Node simplifyChain(Node.Chain chain, List<Node> children) {
+        Node first = children.get(0);
+        List<BinaryOperator> operators = new ArrayList<>(chain.size());
+        List<Node> operands = new ArrayList<>(children.subList(1,children.size()));
+        for (int i = 0; i < chain.size(); i++) {
+            operators.add(chain.operator(i));
+        }
+
+        boolean changed = true;
+        while (changed && !operators.isEmpty()) {
+            changed = false;
+
+            // the operators are performed from left to right, so constants
+            // at the beginning can be calculated with any pure operator
+            if (first instanceof Node.Literal && operands.get(0) instanceof Node.Literal
+                    && operators.get(0).isPure()) {
+                BigDecimal value = fold(operators.get(0),first,operands.get(0));
+                if (null != value) {
+                    first = literal(value);
+                    operators.remove(0);
+                    operands.remove(0);
+                    changed = true;
+                    continue;
+                }
+            }
+
+            // x op c1 op c2 is same as x op (c1 op c2) for an associative op
+            for (int i = 0; i+1 < operators.size(); i++) {
+                BinaryOperator operator = operators.get(i);
+                if (operator == operators.get(i+1) && operator.isPure() && operator.isAssociative()
+                        && operands.get(i) instanceof Node.Literal && operands.get(i+1) instanceof Node.Literal) {
+                    BigDecimal value = fold(operator,operands.get(i),operands.get(i+1));
+                    if (null != value) {
+                        operands.set(i,literal(value));
+                        operators.remove(i+1);
+                        operands.remove(i+1);
+                        changed = true;
+                    }
+                }
+            }
+
+            for (int i = operators.size()-1; i >= 0; i--) {
+                // the value the identity is applied to
+                boolean fits = 0 == i ? fits(operators.get(i),first) : fits(operators.get(i),operators.get(i-1));
+                if (isIdentity(operators.get(i),operands.get(i)) && fits) {
+                    operators.remove(i);
+                    operands.remove(i);
+                    changed = true;
+                }
+            }
+            if (!operators.isEmpty() && operators.get(0).isCommutative()
+                    && isIdentity(operators.get(0),first) && fits(operators.get(0),operands.get(0))) {
+                first = operands.get(0);
+                operators.remove(0);
+                operands.remove(0);
+                changed = true;
+            }
+        }
+        if (operators.isEmpty()) {
+            return first;
+        }
+
+        boolean isPure = pure.contains(first);
+        List<Object> key = new ArrayList<>();
+        key.add(first);
+        for (int i = 0; i < operators.size(); i++) {
+            isPure &= operators.get(i).isPure() && pure.contains(operands.get(i));
+            key.add(operators.get(i));
+            key.add(operands.get(i));
+        }
+        Node.Chain simplified = new Node.Chain(first,operators,operands);
+        return isPure ? canonical(key,simplified) : simplified;
+    }
+
+    /**
+     * @param parameters simplified parameters of the call
+     */
+    private Node simplifyCall(Node.Call call, List<Node> parameters) {
+        ParameterizedOperation function = call.function();
+        boolean isPure = function.isPure();
+        boolean isConstant = isPure;
+        for (Node parameter : parameters) {
+            isPure &= pure.contains(parameter);
+            isConstant &= parameter instanceof Node.Literal;
+        }
+        Node.Call simplified = new Node.Call(function,parameters);
+        if (isConstant) {
+            try {
+                return literal(simplified.evaluate(BigDecimal.ZERO));
+            }
+            catch (RuntimeException e) {
+                // keep the call to report the error during evaluation
+            }
+        }
+        if (!isPure) {
+            return simplified;
+        }
+        List<Object> key = new ArrayList<>();
+        key.add(function);
+        key.addAll(parameters);
+        return canonical(key,simplified);
+    }
+
+    private Node canonical(List<Object> key, Node node) {
+        Node existing = canonical.putIfAbsent(key,node);
+        if (null != existing) {
+            return existing;
+        }
+        pure.add(node);
+        return node;
+    }
+
+    private Node literal(BigDecimal value) {
+        return canonical(Collections.singletonList(value),new Node.Literal(value));
+    }
+
+    /**
+     * @return the result or {@literal null} if the operator fails
+     */
+    private static BigDecimal fold(BinaryOperator operator, Node left, Node right) {
+        try {
+            return operator.apply(((Node.Literal) left).value(),((Node.Literal) right).value());
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isIdentity(BinaryOperator operator, Node operand) {
+        BigDecimal identity = operator.rightIdentity();
+        return null != identity && operator.isPure() && operand instanceof Node.Literal
+                && 0 == identity.compareTo(((Node.Literal) operand).value());
+    }
+
+    /**
+     * @return {@literal true} if the value of the node is known to be same
+     *          after rounding to the context of the operator
+     */
+    private static boolean fits(BinaryOperator operator, Node node) {
+        MathContext context = operator.mathContext();
+        if (null == context || 0 == context.getPrecision()) {
+            return true;
+        }
+        // the value of a chain is the result of its last operator
+        while (node instanceof Node.Chain && 0 == ((Node.Chain) node).size()) {
+            node = ((Node.Chain) node).first();
+        }
+        if (node instanceof Node.Chain) {
+            Node.Chain chain = (Node.Chain) node;
+            return fits(operator,chain.operator(chain.size()-1));
+        }
+        return node instanceof Node.Literal
+                && ((Node.Literal) node).value().precision() <= context.getPrecision();
+    }
+
+    /**
+     * @return {@literal true} if the result of the other operator is known
+     *          to be same after rounding to the context of the operator
+     */
+    private static boolean fits(BinaryOperator operator, BinaryOperator other) {
+        MathContext context = operator.mathContext();
+        if (null == context || 0 == context.getPrecision()) {
+            return true;
+        }
+        MathContext rounding = other.mathContext();
+        return null != rounding && 0 != rounding.getPrecision() && rounding.getPrecision() <= context.getPrecision();
+    }
+
+    private void countUses(Node root) {
+        // the order does not matter, so the nodes left to visit are kept in any order
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            Integer count = uses.get(node);
+            uses.put(node,null == count ? 1 : count+1);
+            if (null != count) {
+                continue;
+            }
+            for (int i = 0; isOperation(node) && i < node.childCount(); i++) {
+                pending.push(node.child(i));
+            }
+        }
+    }
+
+    /**
+     * Rebuild the tree with pure subexpressions used more than once
+     * wrapped in a {@link Node.Shared}
+     */
+    private Node share(Node root) {
+        // literals and ANS are not worth sharing
+        return rebuild(root,node -> isOperation(node) ? replacements.get(node) : node,this::replace);
+    }
+
+    private Node replace(Node node, List<Node> children) {
+        Node replacement;
+        if (node instanceof Node.Chain) {
+            Node.Chain chain = (Node.Chain) node;
+            List<BinaryOperator> operators = new ArrayList<>(chain.size());
+            for (int i = 0; i < chain.size(); i++) {
+                operators.add(chain.operator(i));
+            }
+            replacement = new Node.Chain(children.get(0),operators,children.subList(1,children.size()));
+        }
+        else {
+            replacement = new Node.Call(((Node.Call) node).function(),children);
+        }
+        if (pure.contains(node) && uses.get(node) > 1) {
+            replacement = new Node.Shared(replacement);
+        }
+        replacements.put(node,replacement);
+        return replacement;
+    }
+
+    private static boolean isOperation(Node node) {
+        return node instanceof Node.Chain || node instanceof Node.Call;
+    }
+}
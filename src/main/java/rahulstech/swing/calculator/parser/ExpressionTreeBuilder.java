@@ -0,0 +1,60 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * {@link ParseHandler} which builds the {@link Node} tree of an expression
+ * without evaluating anything.
+ *
+ * @author Rahul Bagchi
+ */
+class ExpressionTreeBuilder implements ParseHandler<Node> {
+
+    @Override
+    public Node number(BigDecimal value) {
+        return new Node.Literal(value);
+    }
+
+    @Override
+    public Node answer() {
+        return Node.Answer.INSTANCE;
+    }
+
+    @Override
+    public Node variable(String name, int index) {
+        return new Node.Variable(name,index);
+    }
+
+    @Override
+    public Node operator(BinaryOperator operator, Node left, Node right) {
+        // the left operand is always the last result of the parser loop,
+        // so it is safe to extend it instead of nesting a new chain
+        Node.Chain chain = left instanceof Node.Chain ? (Node.Chain) left : new Node.Chain(left);
+        chain.append(operator,right);
+        return chain;
+    }
+
+    @Override
+    public Node function(ParameterizedOperation function, List<Node> parameters) {
+        return new Node.Call(function,parameters);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Conversions and checks used by {@link EvaluationMode#FAST_DOUBLE}.
+ * {@link Double#NaN} is used everywhere to mean the value can not be
+ * calculated as a double and the exact evaluation is required.
+ *
+ * @author Rahul Bagchi
+ */
+final class FastDouble {
+
+    /**
+     * Number of significant digits of the results
+     */
+    static final int PRECISION = 15;
+
+    private static final MathContext CONTEXT = new MathContext(PRECISION);
+
+    // an addition may lose at most this factor of its magnitude by cancellation
+    static final double MAX_CANCELLATION = 8;
+
+    private FastDouble() {}
+
+    /**
+     * @return the double value or {@link Double#NaN} if the number has more
+     *          than 15 significant digits or is out of the normal range of double
+     */
+    static double toDouble(BigDecimal value) {
+        if (value.precision() > PRECISION) {
+            return Double.NaN;
+        }
+        return check(value.doubleValue(),0 != value.signum());
+    }
+
+    /**
+     * @return the value rounded to 15 significant digits without trailing zeros
+     */
+    static BigDecimal toBigDecimal(double value) {
+        if (0 == value) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal result = new BigDecimal(value,CONTEXT).stripTrailingZeros();
+        if (result.scale() < 0 && result.precision()-result.scale() <= PRECISION) {
+            result = result.setScale(0);
+        }
+        return result;
+    }
+
+    /**
+     * @return the result or {@link Double#NaN} if it is infinite, NaN or subnormal
+     */
+    static double check(double result) {
+        return check(result,false);
+    }
+
+    /**
+     * @return the sum or {@link Double#NaN} if the operands cancel each other
+     *          so much that the sum may not be correct to 15 digits
+     */
+    static double checkSum(double left, double right, double sum) {
+        double magnitude = Math.max(Math.abs(left),Math.abs(right));
+        if (Math.abs(sum)*MAX_CANCELLATION < magnitude) {
+            return Double.NaN;
+        }
+        return check(sum);
+    }
+
+    /**
+     * @return the product or quotient or {@link Double#NaN} if it is not
+     *          usable or became 0 for non zero operands
+     */
+    static double checkProduct(double left, double right, double result) {
+        if (0 == result && 0 != left && 0 != right) {
+            return Double.NaN;
+        }
+        return check(result);
+    }
+
+    /**
+     * @return {@literal true} if the value is an integer exactly represented by a double
+     */
+    static boolean isExactInteger(double value) {
+        return Math.abs(value) <= 0x1p53 && Math.rint(value) == value;
+    }
+
+    private static double check(double value, boolean nonZero) {
+        if (!Double.isFinite(value)) {
+            return Double.NaN;
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < Double.MIN_NORMAL && (0 != magnitude || nonZero)) {
+            return Double.NaN;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * Evaluates a tree of {@link Node} keeping the unfinished nodes in arrays
+ * on the heap instead of calling the children, so a tree of any height
+ * is evaluated without {@link StackOverflowError}. Used for the nodes
+ * higher than {@link Node#MAX_RECURSION_HEIGHT}, and by
+ * {@link EvaluationBudget} for every tree.
+ * <p>
+ * Each unfinished node is a level of the stack, with the index of its next
+ * child and the result so far of a chain or the parameters of a call. The
+ * operations are performed in exactly the same order as by the nodes, so
+ * the same error is reported. A child not higher than
+ * {@link Node#MAX_RECURSION_HEIGHT} is evaluated by calling it, except
+ * while checking a budget.
+ * </p>
+ *
+ * @author Rahul Bagchi
+ */
+final class IterativeEvaluator {
+
+    private IterativeEvaluator() {}
+
+    /**
+     * Same as {@link Node#evaluate(BigDecimal, BigDecimal[])}
+     */
+    static BigDecimal evaluate(Node root, BigDecimal answer, BigDecimal[] variables) {
+        return evaluate(root,answer,variables,null);
+    }
+
+    /**
+     * Same as {@link Node#evaluate(BigDecimal, BigDecimal[])} but checks the
+     * time before and the result after every operation if a budget is given
+     *
+     * @param budget limits of the calculation, {@literal null} if none
+     */
+    static BigDecimal evaluate(Node root, BigDecimal answer, BigDecimal[] variables, EvaluationBudget budget) {
+        // values of the shared nodes for the budget, which can not use the values
+        // remembered by the nodes as they are not checked
+        Map<Node,BigDecimal> shared = null == budget ? null : new IdentityHashMap<>();
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        // the result so far of a chain or the parameters of a call
+        Object[] partial = new Object[16];
+        int top = 0;
+        nodes[0] = root;
+        partial[0] = root instanceof Node.Call ? new BigDecimal[root.childCount()] : null;
+        // value of the child before
+        BigDecimal value = null;
+        while (true) {
+            Node node = nodes[top];
+            int index = next[top];
+            if (index > 0) {
+                if (node instanceof Node.Chain) {
+                    if (1 == index) {
+                        partial[top] = value;
+                    }
+                    else {
+                        if (null != budget) {
+                            budget.checkTime();
+                        }
+                        BigDecimal result = ((Node.Chain) node).operator(index-2).apply((BigDecimal) partial[top],value);
+                        partial[top] = null == budget ? result : budget.checkResult(result);
+                    }
+                }
+                else if (node instanceof Node.Call) {
+                    ((BigDecimal[]) partial[top])[index-1] = value;
+                }
+            }
+            if (index == node.childCount()) {
+                if (node instanceof Node.Chain) {
+                    value = (BigDecimal) partial[top];
+                }
+                else if (node instanceof Node.Call) {
+                    if (null != budget) {
+                        budget.checkTime();
+                    }
+                    value = ((Node.Call) node).apply((BigDecimal[]) partial[top]);
+                    if (null != budget) {
+                        value = budget.checkResult(value);
+                    }
+                }
+                else if (null != shared) {
+                    shared.put(node,value);
+                }
+                else {
+                    ((Node.Shared) node).remember(answer,value);
+                }
+                partial[top] = null;
+                if (0 == top--) {
+                    return value;
+                }
+                continue;
+            }
+            next[top] = index+1;
+            Node child = node.child(index);
+            if (child instanceof Node.Shared) {
+                value = null == shared ? ((Node.Shared) child).remembered(answer) : shared.get(child);
+                if (null != value) {
+                    continue;
+                }
+            }
+            if (null == budget ? child.height() <= Node.MAX_RECURSION_HEIGHT : 0 == child.childCount()) {
+                value = child.evaluate(answer,variables);
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+                partial = Arrays.copyOf(partial,top << 1);
+            }
+            nodes[top] = child;
+            next[top] = 0;
+            partial[top] = child instanceof Node.Call ? new BigDecimal[child.childCount()] : null;
+        }
+    }
+
+    /**
+     * Same as {@link Node#evaluateAsDouble(double, double[])}
+     */
+    static double evaluateAsDouble(Node root, double answer, double[] variables) {
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        // the result so far of a chain
+        double[] results = new double[16];
+        // the parameters of a call
+        double[][] parameters = new double[16][];
+        int top = 0;
+        nodes[0] = root;
+        parameters[0] = root instanceof Node.Call ? new double[root.childCount()] : null;
+        double value = Double.NaN;
+        while (true) {
+            Node node = nodes[top];
+            int index = next[top];
+            // a value not usable as a double makes the node not usable
+            boolean finished = index > 0 && Double.isNaN(value);
+            if (index > 0 && !finished) {
+                if (node instanceof Node.Chain) {
+                    if (1 == index) {
+                        results[top] = value;
+                    }
+                    else {
+                        results[top] = FastDouble.check(((Node.Chain) node).operator(index-2)
+                                .applyAsDouble(results[top],value));
+                        finished = Double.isNaN(results[top]);
+                    }
+                }
+                else if (node instanceof Node.Call) {
+                    parameters[top][index-1] = value;
+                }
+            }
+            if (finished) {
+                value = Double.NaN;
+            }
+            else if (index == node.childCount()) {
+                if (node instanceof Node.Chain) {
+                    value = results[top];
+                }
+                else if (node instanceof Node.Call) {
+                    value = ((Node.Call) node).applyAsDouble(parameters[top]);
+                }
+            }
+            if (finished || index == node.childCount()) {
+                parameters[top] = null;
+                if (0 == top--) {
+                    return value;
+                }
+                continue;
+            }
+            next[top] = index+1;
+            Node child = node.child(index);
+            if (child.height() <= Node.MAX_RECURSION_HEIGHT) {
+                value = child.evaluateAsDouble(answer,variables);
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+                results = Arrays.copyOf(results,top << 1);
+                parameters = Arrays.copyOf(parameters,top << 1);
+            }
+            nodes[top] = child;
+            next[top] = 0;
+            parameters[top] = child instanceof Node.Call ? new double[child.childCount()] : null;
+        }
+    }
+
+    /**
+     * Same as {@link Node#evaluateAsLong(long, long[])}
+     */
+    static long evaluateAsLong(Node root, long answer, long[] variables) {
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        // the result so far of a chain
+        long[] results = new long[16];
+        // the parameters of a call
+        long[][] parameters = new long[16][];
+        int top = 0;
+        nodes[0] = root;
+        parameters[0] = root instanceof Node.Call ? new long[root.childCount()] : null;
+        long value = NOT_A_LONG;
+        while (true) {
+            Node node = nodes[top];
+            int index = next[top];
+            // a value which is not an integer makes the node not an integer
+            boolean finished = index > 0 && NOT_A_LONG == value;
+            if (index > 0 && !finished) {
+                if (node instanceof Node.Chain) {
+                    if (1 == index) {
+                        results[top] = value;
+                    }
+                    else {
+                        results[top] = ((Node.Chain) node).operator(index-2).applyAsLong(results[top],value);
+                        finished = NOT_A_LONG == results[top];
+                    }
+                }
+                else if (node instanceof Node.Call) {
+                    parameters[top][index-1] = value;
+                }
+            }
+            if (finished) {
+                value = NOT_A_LONG;
+            }
+            else if (index == node.childCount()) {
+                if (node instanceof Node.Chain) {
+                    value = results[top];
+                }
+                else if (node instanceof Node.Call) {
+                    value = ((Node.Call) node).applyAsLong(parameters[top]);
+                }
+            }
+            if (finished || index == node.childCount()) {
+                parameters[top] = null;
+                if (0 == top--) {
+                    return value;
+                }
+                continue;
+            }
+            next[top] = index+1;
+            Node child = node.child(index);
+            if (child.height() <= Node.MAX_RECURSION_HEIGHT) {
+                value = child.evaluateAsLong(answer,variables);
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+                results = Arrays.copyOf(results,top << 1);
+                parameters = Arrays.copyOf(parameters,top << 1);
+            }
+            nodes[top] = child;
+            next[top] = 0;
+            parameters[top] = child instanceof Node.Call ? new long[child.childCount()] : null;
+        }
+    }
+
+    /**
+     * @return the text of the tree, a chain in parentheses
+     */
+    static String toString(Node root) {
+        StringBuilder builder = new StringBuilder();
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        int top = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            Node node = nodes[top];
+            int index = next[top]++;
+            if (node instanceof Node.Chain) {
+                if (0 == index) {
+                    builder.append("(");
+                }
+                else if (index < node.childCount()) {
+                    builder.append(((Node.Chain) node).operator(index-1).name());
+                }
+            }
+            else if (node instanceof Node.Call) {
+                if (0 == index) {
+                    builder.append(((Node.Call) node).function().name()).append("(");
+                }
+                else if (index < node.childCount()) {
+                    builder.append(",");
+                }
+            }
+            else if (!(node instanceof Node.Shared)) {
+                // a literal, ANS or a variable
+                builder.append(node);
+                top--;
+                continue;
+            }
+            if (index == node.childCount()) {
+                if (!(node instanceof Node.Shared)) {
+                    builder.append(")");
+                }
+                top--;
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+            }
+            nodes[top] = node.child(index);
+            next[top] = 0;
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.OperationException;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static rahulstech.swing.calculator.parser.TokenType.KEYWORD;
+import static rahulstech.swing.calculator.parser.TokenType.NUMERIC;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.ADDITIVE;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.MULTIPLICATIVE;
+
+/**
+ * {@link Parser} which keeps the unfinished operations in arrays on the heap
+ * instead of calling itself, so an expression of any nesting depth can be
+ * parsed without {@link StackOverflowError}.
+ * <p>
+ * Each level of parentheses, including the whole expression, is a level of
+ * the stack. A level keeps the state of {@link #parseAdditiveOperation()}
+ * and {@link #parseMultiplicativeOperation()} while the next operand is
+ * parsed, and the function whose parameter it is. The parser passes each
+ * operand to the innermost level, so the handler is called in exactly the
+ * same order and with the same values as by the recursive parser.
+ * </p>
+ * <p>
+ * The innermost level is kept in fields and the outer levels are saved in
+ * the arrays, so an expression without parentheses does not use the arrays.
+ * </p>
+ *
+ * @param <T> type of the value produced by the handler
+ * @author Rahul Bagchi
+ */
+class IterativeParser<T> extends Parser<T> {
+
+    // what opened a level
+    private static final int EXPRESSION = 0;
+    private static final int GROUP = 1;
+    private static final int FUNCTION = 2;
+
+    // the innermost level, an operator is -1 before the first operator is found
+    private int type;
+    private int additiveOperator;
+    private T additiveLeft;
+    private T additiveRoot;
+    private int multiplicativeOperator;
+    private T multiplicativeLeft;
+    private T multiplicativeRoot;
+    private int function;
+    private String unknownName;
+    private List<T> parameters;
+
+    // the outer levels
+    private int[] types = new int[8];
+    private int[] additiveOperators = new int[8];
+    private Object[] additiveLefts = new Object[8];
+    private Object[] additiveRoots = new Object[8];
+    private int[] multiplicativeOperators = new int[8];
+    private Object[] multiplicativeLefts = new Object[8];
+    private Object[] multiplicativeRoots = new Object[8];
+    private int[] functions = new int[8];
+    private String[] unknownNames = new String[8];
+    private Object[] parameterLists = new Object[8];
+    private int size = 0;
+
+    // the operand parsed by parseOperand()
+    private T operand;
+
+    IterativeParser(TokenStream tokens, ParseHandler<T> handler, OperationRegistry registry) {
+        super(tokens,handler,registry);
+    }
+
+    IterativeParser(TokenStream tokens, ParseHandler<T> handler, OperationRegistry registry, String[] variables) {
+        super(tokens,handler,registry,variables);
+    }
+
+    @Override
+    T parseOperation() throws ParseException {
+        int bottom = size;
+        open(EXPRESSION);
+        T value = null;
+        boolean expectOperand = true;
+        while (true) {
+            if (expectOperand) {
+                if (!parseOperand()) {
+                    // a group or a function is opened
+                    continue;
+                }
+                value = operand;
+                operand = null;
+                expectOperand = false;
+            }
+            int operator;
+
+            // value is the right operand of the multiplicative operation
+            if (-1 == multiplicativeOperator) {
+                multiplicativeLeft = value;
+            }
+            else {
+                T result = handler.operator(binaryOperator(multiplicativeOperator),multiplicativeLeft,value);
+                multiplicativeLeft = result;
+                if (null != result) {
+                    multiplicativeRoot = result;
+                }
+                value = multiplicativeRoot;
+            }
+            if (hasToken(1) && -1 != (operator = findOperator(MULTIPLICATIVE))) {
+                advance();
+                multiplicativeOperator = operator;
+                expectOperand = true;
+                continue;
+            }
+            multiplicativeOperator = -1;
+            multiplicativeLeft = multiplicativeRoot = null;
+
+            // value is the right operand of the additive operation
+            if (-1 == additiveOperator) {
+                additiveLeft = value;
+            }
+            else {
+                T result = handler.operator(binaryOperator(additiveOperator),additiveLeft,value);
+                additiveLeft = result;
+                if (null != result) {
+                    additiveRoot = result;
+                }
+                value = additiveRoot;
+            }
+            if (hasToken(1) && -1 != (operator = findOperator(ADDITIVE))) {
+                advance();
+                additiveOperator = operator;
+                expectOperand = true;
+                continue;
+            }
+            additiveOperator = -1;
+            additiveLeft = additiveRoot = null;
+
+            // value is the operation inside the level
+            if (GROUP == type) {
+                if (!check(")")) {
+                    throw new ParseException("expected )");
+                }
+                advance();
+                depth--;
+            }
+            else if (FUNCTION == type) {
+                parameters.add(value);
+                if (check(",")) {
+                    advance();
+                }
+                if (!check(")")) {
+                    expectOperand = true;
+                    continue;
+                }
+                value = callFunction();
+            }
+            close();
+            if (size == bottom) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Parse the operand at the current token like {@link #parseBaseOperation()}
+     * except a group or a function with parameters, for which a level is
+     * opened to parse its content.
+     *
+     * @return {@literal true} if the operand is parsed, {@literal false}
+     *          if a level is opened
+     * @throws ParseException thrown during parsing
+     */
+    private boolean parseOperand() throws ParseException {
+        if (!hasToken(0)) {
+            throw new ParseException("no more token available");
+        }
+        // numbers are checked here and the rest separately, so this
+        // method is small enough to be inlined into the parser loop
+        if (check("+",NUMERIC) || check("-",NUMERIC)) {
+            boolean positive = tokens.matches(0,"+");
+            advance();
+            operand = parseNumber(!positive);
+            return true;
+        }
+        else if (check(NUMERIC)) {
+            operand = parseNumber(false);
+            return true;
+        }
+        return parseOtherOperand();
+    }
+
+    /**
+     * Parse the operand at the current token which is not a number
+     *
+     * @see #parseOperand()
+     */
+    private boolean parseOtherOperand() throws ParseException {
+        if (check(KEYWORD,"(")) {
+            int function = dispatchTable.find(tokens);
+            // kept only to report unknown function after parsing parameters
+            String unknownName = -1 == function ? tokens.literal(0) : null;
+            advance();
+            advance(); // for '('
+            enterParentheses();
+            open(FUNCTION);
+            this.function = function;
+            this.unknownName = unknownName;
+            this.parameters = new ArrayList<>();
+            if (!check(")")) {
+                return false;
+            }
+            operand = callFunction();
+            close();
+        }
+        else if (check("ANS")) {
+            advance();
+            operand = handler.answer();
+        }
+        else if (check("(")) {
+            advance();
+            enterParentheses();
+            open(GROUP);
+            return false;
+        }
+        else {
+            int variable = check(KEYWORD) ? findVariable() : -1;
+            if (-1 == variable) {
+                throw new ParseException("unexpected token "+peek(0));
+            }
+            advance();
+            operand = handler.variable(variables[variable],variable);
+        }
+        return true;
+    }
+
+    private BinaryOperator binaryOperator(int operator) {
+        return (BinaryOperator) dispatchTable.operation(operator);
+    }
+
+    /**
+     * Call the function of the innermost level when the current token is its ')'
+     */
+    private T callFunction() {
+        advance(); // for ')'
+        depth--;
+        if (-1 == function) {
+            throw new OperationException("Operation \""+unknownName+"\" not implemented");
+        }
+        return handler.function((ParameterizedOperation) dispatchTable.operation(function),parameters);
+    }
+
+    /**
+     * Save the innermost level and start a new one
+     */
+    private void open(int type) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = this.type;
+        additiveOperators[size] = additiveOperator;
+        additiveLefts[size] = additiveLeft;
+        additiveRoots[size] = additiveRoot;
+        multiplicativeOperators[size] = multiplicativeOperator;
+        multiplicativeLefts[size] = multiplicativeLeft;
+        multiplicativeRoots[size] = multiplicativeRoot;
+        functions[size] = function;
+        unknownNames[size] = unknownName;
+        parameterLists[size] = parameters;
+        size++;
+        this.type = type;
+        additiveOperator = multiplicativeOperator = -1;
+        additiveLeft = additiveRoot = multiplicativeLeft = multiplicativeRoot = null;
+        unknownName = null;
+        parameters = null;
+    }
+
+    /**
+     * Finish the innermost level and restore the saved one
+     */
+    @SuppressWarnings("unchecked")
+    private void close() {
+        size--;
+        type = types[size];
+        additiveOperator = additiveOperators[size];
+        additiveLeft = (T) additiveLefts[size];
+        additiveRoot = (T) additiveRoots[size];
+        multiplicativeOperator = multiplicativeOperators[size];
+        multiplicativeLeft = (T) multiplicativeLefts[size];
+        multiplicativeRoot = (T) multiplicativeRoots[size];
+        function = functions[size];
+        unknownName = unknownNames[size];
+        parameters = (List<T>) parameterLists[size];
+        additiveLefts[size] = additiveRoots[size] = multiplicativeLefts[size] = multiplicativeRoots[size] = null;
+        unknownNames[size] = null;
+        parameterLists[size] = null;
+    }
+
+    private void grow() {
+        int capacity = size << 1;
+        types = Arrays.copyOf(types,capacity);
+        additiveOperators = Arrays.copyOf(additiveOperators,capacity);
+        additiveLefts = Arrays.copyOf(additiveLefts,capacity);
+        additiveRoots = Arrays.copyOf(additiveRoots,capacity);
+        multiplicativeOperators = Arrays.copyOf(multiplicativeOperators,capacity);
+        multiplicativeLefts = Arrays.copyOf(multiplicativeLefts,capacity);
+        multiplicativeRoots = Arrays.copyOf(multiplicativeRoots,capacity);
+        functions = Arrays.copyOf(functions,capacity);
+        unknownNames = Arrays.copyOf(unknownNames,capacity);
+        parameterLists = Arrays.copyOf(parameterLists,capacity);
+    }
+}
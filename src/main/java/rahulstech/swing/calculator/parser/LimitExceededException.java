@@ -0,0 +1,38 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * Thrown when a calculation goes over one of its {@link EvaluationLimits}
+ *
+ * @author Rahul Bagchi
+ */
+public class LimitExceededException extends CalculatorException {
+
+    private final EvaluationLimits.Limit limit;
+
+    public LimitExceededException(EvaluationLimits.Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    /**
+     * @return the limit exceeded
+     */
+    public EvaluationLimits.Limit getLimit() {
+        return limit;
+    }
+}
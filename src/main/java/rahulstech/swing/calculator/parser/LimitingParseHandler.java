@@ -0,0 +1,83 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * {@link ParseHandler} which checks the {@link EvaluationBudget} of the
+ * calculation at each operation performed by an {@link ExpressionEvaluator}.
+ * Used only for calculations with limits.
+ *
+ * @author Rahul Bagchi
+ */
+final class LimitingParseHandler implements ParseHandler<Integer> {
+
+    private final ExpressionEvaluator evaluator;
+    private final EvaluationBudget budget;
+
+    LimitingParseHandler(ExpressionEvaluator evaluator, EvaluationBudget budget) {
+        this.evaluator = evaluator;
+        this.budget = budget;
+    }
+
+    @Override
+    public Integer number(BigDecimal value) {
+        return evaluator.number(value);
+    }
+
+    @Override
+    public Integer number(long value) {
+        return evaluator.number(value);
+    }
+
+    @Override
+    public Integer answer() {
+        return evaluator.answer();
+    }
+
+    @Override
+    public Integer variable(String name, int index) {
+        return evaluator.variable(name,index);
+    }
+
+    @Override
+    public Integer operator(BinaryOperator operator, Integer left, Integer right) {
+        budget.beforeOperation();
+        return checkResult(evaluator.operator(operator,left,right));
+    }
+
+    @Override
+    public Integer function(ParameterizedOperation function, List<Integer> parameters) {
+        budget.beforeOperation();
+        return checkResult(evaluator.function(function,parameters));
+    }
+
+    private Integer checkResult(Integer slot) {
+        BigDecimal value = evaluator.decimalOrNull(slot);
+        if (null == value) {
+            budget.checkResult(evaluator.longValue(slot));
+        }
+        else {
+            budget.checkResult(value);
+        }
+        return slot;
+    }
+}
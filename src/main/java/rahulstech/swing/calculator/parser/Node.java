@@ -0,0 +1,617 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static rahulstech.swing.calculator.parser.operation.ParameterizedOperation.NOT_A_LONG;
+
+/**
+ * A node of the tree of a {@link CompiledExpression}. Nodes are not
+ * changed once the tree is built.
+ * <p>
+ * The nodes evaluate their children by calling them, which is the fastest
+ * way for the trees of usual expressions. A node higher than
+ * {@link #MAX_RECURSION_HEIGHT} is evaluated by {@link IterativeEvaluator}
+ * instead, so a deeply nested expression does not overflow the stack.
+ * </p>
+ *
+ * @author Rahul Bagchi
+ */
+abstract class Node {
+
+    static final BigDecimal[] NO_VARIABLES = new BigDecimal[0];
+
+    // height of the highest node evaluated by calling its children
+    static final int MAX_RECURSION_HEIGHT = 256;
+
+    /**
+     * Evaluate this node
+     *
+     * @param answer value of the keyword ANS
+     * @param variables value of each variable by its index
+     * @return the result
+     */
+    abstract BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables);
+
+    /**
+     * Evaluate this node of an expression without variables
+     *
+     * @param answer value of the keyword ANS
+     * @return the result
+     */
+    final BigDecimal evaluate(BigDecimal answer) {
+        return evaluate(answer,NO_VARIABLES);
+    }
+
+    /**
+     * Evaluate this node with doubles for {@link EvaluationMode#FAST_DOUBLE}
+     *
+     * @param answer value of the keyword ANS or {@link Double#NaN} if not
+     *               usable as a double
+     * @param variables value of each variable by its index, {@link Double#NaN}
+     *                  if not usable as a double
+     * @return the result or {@link Double#NaN} if the node must be evaluated exactly
+     */
+    abstract double evaluateAsDouble(double answer, double[] variables);
+
+    /**
+     * Evaluate this node with long integers
+     *
+     * @param answer value of the keyword ANS or
+     *               {@link ParameterizedOperation#NOT_A_LONG} if not an integer
+     * @param variables value of each variable by its index,
+     *                  {@link ParameterizedOperation#NOT_A_LONG} if not an integer
+     * @return the result or {@link ParameterizedOperation#NOT_A_LONG} if the
+     *          node must be evaluated with BigDecimal
+     */
+    abstract long evaluateAsLong(long answer, long[] variables);
+
+    /**
+     * @return number of nodes on the longest path from this node down to
+     *          a leaf, 0 for a leaf
+     */
+    int height() {
+        return 0;
+    }
+
+    /**
+     * @return number of the nodes this node is calculated from
+     */
+    int childCount() {
+        return 0;
+    }
+
+    /**
+     * @param index index of the child, less than {@link #childCount()}
+     * @return the child node
+     */
+    Node child(int index) {
+        throw new IndexOutOfBoundsException("index: "+index);
+    }
+
+    /**
+     * @return the value as a long if it is an integer with scale 0 that fits
+     *          in a long, {@link ParameterizedOperation#NOT_A_LONG} otherwise
+     */
+    static long longValue(BigDecimal value) {
+        if (0 != value.scale() || value.unscaledValue().bitLength() > 63) {
+            return NOT_A_LONG;
+        }
+        return value.longValue();
+    }
+
+    /**
+     * A number literal
+     */
+    static final class Literal extends Node {
+
+        private final BigDecimal value;
+        private final double doubleValue;
+        private final long longValue;
+
+        Literal(BigDecimal value) {
+            this.value = value;
+            this.doubleValue = FastDouble.toDouble(value);
+            this.longValue = longValue(value);
+        }
+
+        BigDecimal value() {
+            return value;
+        }
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            return value;
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            return doubleValue;
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            return longValue;
+        }
+
+        @Override
+        public String toString() {
+            return value.toString();
+        }
+    }
+
+    /**
+     * The keyword ANS, its value is supplied during evaluation
+     */
+    static final class Answer extends Node {
+
+        static final Answer INSTANCE = new Answer();
+
+        private Answer() {}
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            return answer;
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            return answer;
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            return answer;
+        }
+
+        @Override
+        public String toString() {
+            return "ANS";
+        }
+    }
+
+    /**
+     * A variable of the expression, its value is supplied during evaluation
+     * by the index of the variable
+     */
+    static final class Variable extends Node {
+
+        private final String name;
+        private final int index;
+
+        Variable(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        int index() {
+            return index;
+        }
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            return variables[index];
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            return variables[index];
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            return variables[index];
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Operands with operators in between like a+b*c. The operators are
+     * performed from left to right, so a chain is same as a left deep tree
+     * of binary operators but does not grow deeper for long expressions.
+     * Operators are appended only while building the tree.
+     */
+    static final class Chain extends Node {
+
+        private final Node first;
+        private BinaryOperator[] operators = new BinaryOperator[2];
+        private Node[] operands = new Node[2];
+        private int size = 0;
+        private int height;
+
+        Chain(Node first) {
+            this.first = first;
+            this.height = first.height()+1;
+        }
+
+        Chain(Node first, List<BinaryOperator> operators, List<Node> operands) {
+            this.first = first;
+            this.operators = operators.toArray(new BinaryOperator[0]);
+            this.operands = operands.toArray(new Node[0]);
+            this.size = this.operators.length;
+            this.height = first.height()+1;
+            for (Node operand : this.operands) {
+                this.height = Math.max(this.height,operand.height()+1);
+            }
+        }
+
+        Node first() {
+            return first;
+        }
+
+        int size() {
+            return size;
+        }
+
+        BinaryOperator operator(int index) {
+            return operators[index];
+        }
+
+        Node operand(int index) {
+            return operands[index];
+        }
+
+        @Override
+        int childCount() {
+            return size+1;
+        }
+
+        @Override
+        Node child(int index) {
+            return 0 == index ? first : operands[index-1];
+        }
+
+        void append(BinaryOperator operator, Node operand) {
+            if (size == operators.length) {
+                operators = Arrays.copyOf(operators,size << 1);
+                operands = Arrays.copyOf(operands,size << 1);
+            }
+            operators[size] = operator;
+            operands[size] = operand;
+            size++;
+            height = Math.max(height,operand.height()+1);
+        }
+
+        @Override
+        int height() {
+            return height;
+        }
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluate(this,answer,variables);
+            }
+            BigDecimal result = first.evaluate(answer,variables);
+            for (int i = 0; i < size; i++) {
+                BigDecimal right = operands[i].evaluate(answer,variables);
+                result = operators[i].apply(result,right);
+            }
+            return result;
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluateAsDouble(this,answer,variables);
+            }
+            double result = first.evaluateAsDouble(answer,variables);
+            for (int i = 0; i < size && !Double.isNaN(result); i++) {
+                double right = operands[i].evaluateAsDouble(answer,variables);
+                if (Double.isNaN(right)) {
+                    return right;
+                }
+                result = FastDouble.check(operators[i].applyAsDouble(result,right));
+            }
+            return result;
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluateAsLong(this,answer,variables);
+            }
+            long result = first.evaluateAsLong(answer,variables);
+            for (int i = 0; i < size && NOT_A_LONG != result; i++) {
+                long right = operands[i].evaluateAsLong(answer,variables);
+                if (NOT_A_LONG == right) {
+                    return NOT_A_LONG;
+                }
+                result = operators[i].applyAsLong(result,right);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return IterativeEvaluator.toString(this);
+        }
+    }
+
+    /**
+     * A function call like SQRT(a)
+     */
+    static final class Call extends Node {
+
+        private final ParameterizedOperation function;
+        private final Node[] parameters;
+        private final int height;
+
+        Call(ParameterizedOperation function, List<Node> parameters) {
+            this.function = function;
+            this.parameters = parameters.toArray(new Node[0]);
+            int height = 0;
+            for (Node parameter : this.parameters) {
+                height = Math.max(height,parameter.height());
+            }
+            this.height = height+1;
+        }
+
+        ParameterizedOperation function() {
+            return function;
+        }
+
+        int parameterCount() {
+            return parameters.length;
+        }
+
+        Node parameter(int index) {
+            return parameters[index];
+        }
+
+        @Override
+        int height() {
+            return height;
+        }
+
+        @Override
+        int childCount() {
+            return parameters.length;
+        }
+
+        @Override
+        Node child(int index) {
+            return parameters[index];
+        }
+
+        /**
+         * Perform the function with the values of the parameters
+         */
+        BigDecimal apply(BigDecimal[] values) {
+            switch (values.length) {
+                case 1:
+                    return function.apply(values[0]);
+                case 2:
+                    return function.apply(values[0],values[1]);
+                default:
+                    return function.apply(values,0,values.length);
+            }
+        }
+
+        /**
+         * Perform the function with the double values of the parameters
+         */
+        double applyAsDouble(double[] values) {
+            switch (values.length) {
+                case 1:
+                    return FastDouble.check(function.applyAsDouble(values[0]));
+                case 2:
+                    return FastDouble.check(function.applyAsDouble(values[0],values[1]));
+                default:
+                    return FastDouble.check(function.applyAsDouble(values,0,values.length));
+            }
+        }
+
+        /**
+         * Perform the function with the long values of the parameters
+         */
+        long applyAsLong(long[] values) {
+            switch (values.length) {
+                case 1:
+                    return function.applyAsLong(values[0]);
+                case 2:
+                    return function.applyAsLong(values[0],values[1]);
+                default:
+                    return function.applyAsLong(values,0,values.length);
+            }
+        }
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluate(this,answer,variables);
+            }
+            switch (parameters.length) {
+                case 1:
+                    return function.apply(parameters[0].evaluate(answer,variables));
+                case 2:
+                    BigDecimal param1 = parameters[0].evaluate(answer,variables);
+                    return function.apply(param1,parameters[1].evaluate(answer,variables));
+                default:
+                    BigDecimal[] values = new BigDecimal[parameters.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = parameters[i].evaluate(answer,variables);
+                    }
+                    return function.apply(values,0,values.length);
+            }
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluateAsDouble(this,answer,variables);
+            }
+            // a parameter not usable as a double makes the call not usable
+            switch (parameters.length) {
+                case 1:
+                    double param = parameters[0].evaluateAsDouble(answer,variables);
+                    if (Double.isNaN(param)) {
+                        return param;
+                    }
+                    return FastDouble.check(function.applyAsDouble(param));
+                case 2:
+                    double param1 = parameters[0].evaluateAsDouble(answer,variables);
+                    double param2 = parameters[1].evaluateAsDouble(answer,variables);
+                    if (Double.isNaN(param1) || Double.isNaN(param2)) {
+                        return Double.NaN;
+                    }
+                    return FastDouble.check(function.applyAsDouble(param1,param2));
+                default:
+                    double[] values = new double[parameters.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = parameters[i].evaluateAsDouble(answer,variables);
+                        if (Double.isNaN(values[i])) {
+                            return Double.NaN;
+                        }
+                    }
+                    return FastDouble.check(function.applyAsDouble(values,0,values.length));
+            }
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            if (height > MAX_RECURSION_HEIGHT) {
+                return IterativeEvaluator.evaluateAsLong(this,answer,variables);
+            }
+            switch (parameters.length) {
+                case 1:
+                    long param = parameters[0].evaluateAsLong(answer,variables);
+                    if (NOT_A_LONG == param) {
+                        return NOT_A_LONG;
+                    }
+                    return function.applyAsLong(param);
+                case 2:
+                    long param1 = parameters[0].evaluateAsLong(answer,variables);
+                    long param2 = parameters[1].evaluateAsLong(answer,variables);
+                    if (NOT_A_LONG == param1 || NOT_A_LONG == param2) {
+                        return NOT_A_LONG;
+                    }
+                    return function.applyAsLong(param1,param2);
+                default:
+                    long[] values = new long[parameters.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = parameters[i].evaluateAsLong(answer,variables);
+                        if (NOT_A_LONG == values[i]) {
+                            return NOT_A_LONG;
+                        }
+                    }
+                    return function.applyAsLong(values,0,values.length);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return IterativeEvaluator.toString(this);
+        }
+    }
+
+    /**
+     * A subexpression used at more than one place of the tree. It must
+     * not contain any impure operation or variable, so its value depends
+     * on the value of ANS only. The value is remembered with the value of ANS it was
+     * calculated for, so all the places share one calculation.
+     */
+    static final class Shared extends Node {
+
+        private static final class Memo {
+
+            final BigDecimal answer;
+            final BigDecimal value;
+
+            Memo(BigDecimal answer, BigDecimal value) {
+                this.answer = answer;
+                this.value = value;
+            }
+        }
+
+        private final Node node;
+        private volatile Memo memo = null;
+
+        Shared(Node node) {
+            this.node = node;
+        }
+
+        Node node() {
+            return node;
+        }
+
+        @Override
+        int height() {
+            return node.height()+1;
+        }
+
+        @Override
+        int childCount() {
+            return 1;
+        }
+
+        @Override
+        Node child(int index) {
+            if (0 != index) {
+                throw new IndexOutOfBoundsException("index: "+index);
+            }
+            return node;
+        }
+
+        @Override
+        BigDecimal evaluate(BigDecimal answer, BigDecimal[] variables) {
+            BigDecimal value = remembered(answer);
+            if (null != value) {
+                return value;
+            }
+            value = node.evaluate(answer,variables);
+            remember(answer,value);
+            return value;
+        }
+
+        /**
+         * @return the value calculated for the value of ANS or {@literal null} if not known
+         */
+        BigDecimal remembered(BigDecimal answer) {
+            Memo memo = this.memo;
+            return null != memo && memo.answer == answer ? memo.value : null;
+        }
+
+        void remember(BigDecimal answer, BigDecimal value) {
+            this.memo = new Memo(answer,value);
+        }
+
+        @Override
+        double evaluateAsDouble(double answer, double[] variables) {
+            return node.evaluateAsDouble(answer,variables);
+        }
+
+        @Override
+        long evaluateAsLong(long answer, long[] variables) {
+            return node.evaluateAsLong(answer,variables);
+        }
+
+        @Override
+        public String toString() {
+            return node.toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.metrics.CalculatorMetrics;
+import rahulstech.swing.calculator.parser.operation.Operation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Census of the tree of a {@link CompiledExpression}: the number of
+ * operator and function nodes of each operation and the number of nodes.
+ * A shared subexpression is counted once for all its places. The census
+ * is taken from the tree, not while evaluating, so it is an estimate of
+ * the operations one evaluation performs. Expressions have no loops or
+ * branches, but an evaluation with long integers or doubles which falls
+ * back to BigDecimal performs some operations again.
+ *
+ * @author Rahul Bagchi
+ */
+final class OperationCensus {
+
+    private final String[] names;
+    private final long[] counts;
+    private int nodeCount = 0;
+    private int operationNodeCount = 0;
+
+    OperationCensus(Node root) {
+        Map<String,Long> counts = new LinkedHashMap<>();
+        count(root,counts,Collections.newSetFromMap(new IdentityHashMap<>()));
+        this.names = counts.keySet().toArray(new String[0]);
+        this.counts = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            this.counts[i] = counts.get(names[i]);
+        }
+    }
+
+    /**
+     * @return number of nodes of the tree, a shared subexpression is counted once
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return number of operator and function nodes of the tree
+     */
+    int operationNodeCount() {
+        return operationNodeCount;
+    }
+
+    /**
+     * Add the operation nodes of the tree to the metrics as the invocations
+     * of one evaluation
+     */
+    void record(CalculatorMetrics metrics) {
+        for (int i = 0; i < names.length; i++) {
+            metrics.recordOperation(names[i],counts[i]);
+        }
+    }
+
+    private void count(Node root, Map<String,Long> counts, Set<Node> shared) {
+        // nodes on the path from the root with the index of their next child,
+        // on the heap so a deep tree does not overflow the stack
+        Node[] nodes = new Node[16];
+        int[] next = new int[16];
+        int top = 0;
+        nodes[0] = root;
+        while (top >= 0) {
+            Node node = nodes[top];
+            int index = next[top]++;
+            if (0 == index) {
+                if (!(node instanceof Node.Shared)) {
+                    nodeCount++;
+                }
+                if (node instanceof Node.Call) {
+                    add(((Node.Call) node).function(),counts);
+                }
+                else if (node instanceof Node.Shared && !shared.add(node)) {
+                    top--;
+                    continue;
+                }
+            }
+            else if (node instanceof Node.Chain && index < node.childCount()) {
+                add(((Node.Chain) node).operator(index-1),counts);
+            }
+            if (index == node.childCount()) {
+                top--;
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes,top << 1);
+                next = Arrays.copyOf(next,top << 1);
+            }
+            nodes[top] = node.child(index);
+            next[top] = 0;
+        }
+    }
+
+    private void add(Operation operation, Map<String,Long> counts) {
+        counts.merge(operation.name(),1L,Long::sum);
+        operationNodeCount++;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.Operation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable set of registered operations of a {@link Calculator}.
+ * Registering or unregistering an operation creates a new registry,
+ * so a parser can keep using the registry it started with while another
+ * thread changes the operations. The {@link DispatchTable} is built
+ * once for each registry.
+ *
+ * @author Rahul Bagchi
+ */
+final class OperationRegistry {
+
+    static final OperationRegistry EMPTY = new OperationRegistry(new HashMap<>());
+
+    private final Map<String,Operation> operations;
+    private final DispatchTable dispatchTable;
+
+    private OperationRegistry(Map<String,Operation> operations) {
+        this.operations = Collections.unmodifiableMap(operations);
+        this.dispatchTable = new DispatchTable(operations.values());
+    }
+
+    /**
+     * Create a new registry with all the operations of this registry and
+     * the given operation
+     *
+     * @param operation the operation to add
+     * @return the new registry
+     * @throws CalculatorException if operation with same name already available
+     */
+    OperationRegistry with(Operation operation) throws CalculatorException {
+        String name = operation.name();
+        if (operations.containsKey(name)) {
+            throw new CalculatorException("another operation with name \""+name+"\" is already added");
+        }
+        Map<String,Operation> newOperations = new HashMap<>(operations);
+        newOperations.put(name,operation);
+        return new OperationRegistry(newOperations);
+    }
+
+    /**
+     * Create a new registry with all the operations of this registry
+     * except the operation with given name
+     *
+     * @param name name of the operation to remove
+     * @return the new registry
+     * @throws CalculatorException if no operation registered with the name
+     */
+    OperationRegistry without(String name) throws CalculatorException {
+        if (!operations.containsKey(name)) {
+            throw new CalculatorException("no operation found with name \""+name+"\"");
+        }
+        Map<String,Operation> newOperations = new HashMap<>(operations);
+        newOperations.remove(name);
+        return new OperationRegistry(newOperations);
+    }
+
+    /**
+     * @return unmodifiable map of operation name to operation
+     */
+    Map<String,Operation> operations() {
+        return operations;
+    }
+
+    /**
+     * @return the table to find the operation of a token
+     */
+    DispatchTable dispatchTable() {
+        return dispatchTable;
+    }
+}
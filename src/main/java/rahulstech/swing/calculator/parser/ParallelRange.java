@@ -0,0 +1,85 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a loop over a range of indexes in parallel in the common
+ * {@link ForkJoinPool} by splitting the range into chunks. Small ranges
+ * run in the calling thread.
+ *
+ * @author Rahul Bagchi
+ */
+final class ParallelRange extends RecursiveAction {
+
+    /**
+     * The loop over a part of the range
+     */
+    interface Body {
+
+        /**
+         * @param from first index, inclusive
+         * @param to last index, exclusive
+         */
+        void run(int from, int to);
+    }
+
+    // smaller chunks cost more in scheduling than they gain
+    private static final int MIN_CHUNK_SIZE = 4096;
+    // number of chunks per thread, more chunks balance uneven work better
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final Body body;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+
+    private ParallelRange(Body body, int from, int to, int chunkSize) {
+        this.body = body;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Run the body for the indexes from 0 to size and wait until done
+     *
+     * @param size number of indexes
+     * @param body the loop
+     */
+    static void run(int size, Body body) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE,size/(pool.getParallelism()*CHUNKS_PER_THREAD));
+        if (size <= chunkSize) {
+            body.run(0,size);
+        }
+        else {
+            pool.invoke(new ParallelRange(body,0,size,chunkSize));
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to-from <= chunkSize) {
+            body.run(from,to);
+            return;
+        }
+        int middle = (from+to) >>> 1;
+        invokeAll(new ParallelRange(body,from,middle,chunkSize),new ParallelRange(body,middle,to,chunkSize));
+    }
+}
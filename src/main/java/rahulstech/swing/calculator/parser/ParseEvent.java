@@ -0,0 +1,77 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of {@link Calculator} parsing the tokens of an
+ * expression. When the expression is not compiled it is evaluated while
+ * parsing, so the event also includes the evaluation.
+ *
+ * @author Rahul Bagchi
+ */
+@Name("rahulstech.swing.calculator.Parse")
+@Label("Parse")
+@Description("Tokens of an expression parsed, and evaluated if not compiled")
+@Category({"Calculator","Parser"})
+@StackTrace(false)
+final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Expression Length")
+    @Description("Number of characters, -1 if read from a stream")
+    int expressionLength;
+
+    @Label("Token Count")
+    @Description("Number of tokens, -1 if read from a stream")
+    int tokenCount;
+
+    @Label("Nesting Depth")
+    @Description("Maximum number of parentheses open at the same time, -1 if read from a stream")
+    int nestingDepth;
+
+    @Label("Evaluated")
+    @Description("Evaluated while parsing instead of compiled to a tree")
+    boolean evaluated;
+
+    /**
+     * Created only while the flight recorder is initialized, as loading an
+     * event class initializes the flight recorder. Started when created.
+     */
+    ParseEvent() {
+        begin();
+    }
+
+    /**
+     * End the event and set the fields from the tokens and commit if enabled
+     */
+    void commit(TokenStream stream, boolean evaluated) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        TokenBuffer tokens = stream instanceof BufferTokenStream ? ((BufferTokenStream) stream).buffer() : null;
+        this.expressionLength = null == tokens ? -1 : tokens.source().length();
+        this.tokenCount = null == tokens ? -1 : tokens.size();
+        this.nestingDepth = null == tokens ? -1 : tokens.nestingDepth();
+        this.evaluated = evaluated;
+        commit();
+    }
+}
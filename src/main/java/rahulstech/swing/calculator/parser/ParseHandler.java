@@ -0,0 +1,72 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Receives the parts of an expression from the {@link Parser} as soon
+ * as they are parsed. Depending on the implementation the parts are
+ * either evaluated immediately or collected into a tree.
+ *
+ * @param <T> type of the value produced for each part
+ * @author Rahul Bagchi
+ * @see ExpressionEvaluator
+ * @see ExpressionTreeBuilder
+ */
+interface ParseHandler<T> {
+
+    /**
+     * Called for a number literal including its sign
+     */
+    T number(BigDecimal value);
+
+    /**
+     * Called for an integer literal including its sign which fits in a
+     * long. The default implementation calls {@link #number(BigDecimal)}.
+     */
+    default T number(long value) {
+        return number(BigDecimal.valueOf(value));
+    }
+
+    /**
+     * Called for the keyword ANS
+     */
+    T answer();
+
+    /**
+     * Called for a variable, only if the parser is given variable names
+     *
+     * @param name name of the variable
+     * @param index index of the variable in the given names
+     */
+    T variable(String name, int index);
+
+    /**
+     * Called for an operator between two operands, after both the
+     * operands are parsed
+     */
+    T operator(BinaryOperator operator, T left, T right);
+
+    /**
+     * Called for a function call, after all its parameters are parsed
+     */
+    T function(ParameterizedOperation function, List<T> parameters);
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.Operation;
+import rahulstech.swing.calculator.parser.operation.OperationException;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static rahulstech.swing.calculator.parser.TokenType.KEYWORD;
+import static rahulstech.swing.calculator.parser.TokenType.NUMERIC;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.ADDITIVE;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.MULTIPLICATIVE;
+
+/**
+ * Recursive descent parser of the expression grammar. Each parsed part
+ * is passed to a {@link ParseHandler} which decides what to do with it.
+ * A parser is used for a single expression only.
+ * <p>
+ * Each level of parentheses costs several stack frames, so a deeply
+ * nested expression may throw {@link StackOverflowError}, see
+ * {@link IterativeParser} which does not use recursion.
+ * </p>
+ *
+ * @param <T> type of the value produced by the handler
+ * @author Rahul Bagchi
+ */
+class Parser<T> {
+
+    // any integer with this many digits fits in a long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    final TokenStream tokens;
+    final ParseHandler<T> handler;
+    final DispatchTable dispatchTable;
+    final String[] variables;
+    // reusable buffer to parse number literals
+    private char[] digits = new char[32];
+    // parentheses open now and the maximum allowed
+    int depth = 0;
+    private int maxDepth = Integer.MAX_VALUE;
+
+    Parser(TokenStream tokens, ParseHandler<T> handler, OperationRegistry registry) {
+        this(tokens,handler,registry,new String[0]);
+    }
+
+    /**
+     * @param variables names of the variables allowed in the expression,
+     *                  other keywords are unexpected tokens
+     */
+    Parser(TokenStream tokens, ParseHandler<T> handler, OperationRegistry registry, String[] variables) {
+        this.tokens = tokens;
+        this.handler = handler;
+        this.dispatchTable = registry.dispatchTable();
+        this.variables = variables;
+    }
+
+    /**
+     * Set the maximum number of parentheses, including the ones of the
+     * functions, open at the same time. A deeper expression fails with
+     * {@link LimitExceededException} before it is deep enough to overflow
+     * the stack.
+     */
+    void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Parse any type operation available just next
+     *
+     * @return value produced by the handler for the operation
+     * @throws ParseException thrown during parsing
+     */
+    T parseOperation() throws ParseException {
+        return parseAdditiveOperation();
+    }
+
+    /**
+     * Parse additive operation i.e. operations with additive priority
+     *
+     * @return value produced by the handler
+     * @throws ParseException thrown during parsing
+     */
+    T parseAdditiveOperation() throws ParseException {
+        T left = parseMultiplicativeOperation();
+        if (!hasToken(1) || -1 == findOperator(ADDITIVE)){
+            return left;
+        }
+        T root = null;
+        int operator;
+        while (hasToken(1) && -1 != (operator = findOperator(ADDITIVE))) {
+            advance();
+            T right = parseMultiplicativeOperation();
+            T result = handler.operator((BinaryOperator) dispatchTable.operation(operator),left,right);
+            left = result;
+            if (null != result) {
+                root = result;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Parse multiplicative operations i.e. operations with multiplicative
+     * priority
+     *
+     * @return value produced by the handler
+     * @throws ParseException thrown during parsing
+     */
+    T parseMultiplicativeOperation() throws ParseException {
+        T left = parseBaseOperation();
+        if (!hasToken(1) || -1 == findOperator(MULTIPLICATIVE)) return left;
+        T root = null;
+        int operator;
+        while (hasToken(1) && -1 != (operator = findOperator(MULTIPLICATIVE))) {
+            advance();
+            T right = parseBaseOperation();
+            T result = handler.operator((BinaryOperator) dispatchTable.operation(operator),left,right);
+            left = result;
+            if (null != result) {
+                root = result;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Parse number literals, functions, operators, groups etc
+     *
+     * @return value produced by the handler
+     * @throws ParseException thrown during parsing
+     */
+    T parseBaseOperation() throws ParseException {
+        if (!hasToken(0)) {
+            throw new ParseException("no more token available");
+        }
+        if (check("+",NUMERIC) || check("-",NUMERIC)) {
+            boolean positive = tokens.matches(0,"+");
+            advance();
+            return parseNumber(!positive);
+        }
+        else if (check(NUMERIC)) {
+            return parseNumber(false);
+        }
+        else if (check(KEYWORD,"(")) {
+            int function = dispatchTable.find(tokens);
+            // kept only to report unknown function after parsing parameters
+            String unknownName = -1 == function ? tokens.literal(0) : null;
+            advance();
+            List<T> parameters = new ArrayList<>();
+            advance(); // for '('
+            enterParentheses();
+            while (!check(")")) {
+                T param = parseOperation();
+                parameters.add(param);
+                if (check(",")) {
+                    advance();
+                }
+            }
+            if (!check(")")) {
+                throw new ParseException("expected )");
+            }
+            advance(); // for ')'
+            depth--;
+            if (-1 == function) {
+                throw new OperationException("Operation \""+unknownName+"\" not implemented");
+            }
+            return handler.function((ParameterizedOperation) dispatchTable.operation(function),parameters);
+        }
+        else if (check("ANS")) {
+            advance();
+            return handler.answer();
+        }
+        else if (check("(")) {
+            advance();
+            enterParentheses();
+            T result = parseOperation();
+            if (!check(")")) {
+                throw new ParseException("expected )");
+            }
+            advance();
+            depth--;
+            return result;
+        }
+        else {
+            int variable = check(KEYWORD) ? findVariable() : -1;
+            if (-1 == variable) {
+                throw new ParseException("unexpected token "+peek(0));
+            }
+            advance();
+            return handler.variable(variables[variable],variable);
+        }
+    }
+
+    void enterParentheses() {
+        if (++depth > maxDepth) {
+            throw new LimitExceededException(EvaluationLimits.Limit.DEPTH,"nesting depth is more than "+maxDepth);
+        }
+    }
+
+    boolean check(Object... tokenTypeOrLiteral) {
+        int offset = 0;
+        for (Object o : tokenTypeOrLiteral) {
+            if (!hasToken(offset)) return false;
+            if (o instanceof TokenType) {
+                TokenType type = (TokenType) o;
+                if (tokens.type(offset) != type)
+                    return false;
+            }
+            else {
+                String literal = (String) o;
+                if (!tokens.matches(offset,literal))
+                    return false;
+            }
+            offset++;
+        }
+        return true;
+    }
+
+    boolean hasToken(int offset) {
+        return tokens.hasToken(offset);
+    }
+
+    /**
+     * Get token at offset distance from current position, if available.
+     * 0 -> current token
+     * > 0 -> token after current position
+     * The returned token is created on each call, use it only when the
+     * text of the token is really needed like in error messages.
+     *
+     * @param offset
+     * @return the token
+     * @throws IndexOutOfBoundsException if no token availble
+     */
+    Token peek(int offset) {
+        return tokens.token(offset);
+    }
+
+    /**
+     * Parse the current number token and increase the cursor current by one.
+     * Integers small enough for a long are passed to the handler without
+     * creating a {@link BigDecimal}.
+     *
+     * @param negate {@literal true} if the number has a - sign
+     * @return value produced by the handler
+     */
+    T parseNumber(boolean negate) {
+        int length = tokens.length(0);
+        if (length > digits.length) {
+            digits = new char[Math.max(length,digits.length << 1)];
+        }
+        tokens.copyChars(0,digits);
+        advance();
+        if (length <= MAX_LONG_DIGITS) {
+            long value = 0;
+            int i = 0;
+            for (; i < length; i++) {
+                char c = digits[i];
+                if (c < '0' || c > '9') break;
+                value = value*10+(c-'0');
+            }
+            if (i == length) {
+                return handler.number(negate ? -value : value);
+            }
+        }
+        BigDecimal number = new BigDecimal(digits,0,length);
+        return handler.number(negate ? number.negate() : number);
+    }
+
+    /**
+     * @return index of the variable named by the current token or -1
+     */
+    int findVariable() {
+        for (int i = 0; i < variables.length; i++) {
+            if (tokens.matches(0,variables[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the operation of the current token if it has the given priority
+     *
+     * @param priority the priority of the operation
+     * @return index of the operation in the dispatch table if found, -1 otherwise
+     */
+    int findOperator(Operation.Priority priority) {
+        int index = dispatchTable.find(tokens);
+        if (-1 != index && priority == dispatchTable.priority(index)) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Increase the parser current postion by one
+     */
+    void advance() {
+        tokens.advance();
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static rahulstech.swing.calculator.parser.TokenType.*;
+import static rahulstech.swing.calculator.parser.Tokenizer.*;
+
+/**
+ * {@link TokenStream} which tokenizes the characters of a {@link Reader}
+ * lazily, i.e. a token is read only when the parser asks for it. The
+ * characters are read through a fixed size buffer and only a few tokens
+ * ahead of the current position are kept, so the memory does not grow
+ * with the length of the input. Produces the same tokens as
+ * {@link Tokenizer}.
+ *
+ * @author Rahul Bagchi
+ */
+class ReaderTokenStream implements TokenStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    // maximum number of tokens can be looked ahead
+    private static final int LOOKAHEAD = 4;
+
+    private final Reader reader;
+    // characters read from the reader but not yet tokenized
+    private final char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+    // index of the next unread character in the whole input
+    private int offset = 0;
+
+    // ring of tokens read ahead of the current position
+    private final TokenType[] types = new TokenType[LOOKAHEAD];
+    private final int[] starts = new int[LOOKAHEAD];
+    private final StringBuilder[] texts = new StringBuilder[LOOKAHEAD];
+    private int head = 0;
+    private int count = 0;
+
+    // a digit run like 0012 not followed by a period is tokenized as
+    // 0, 0 and 12. pending tokens of such a run are kept here.
+    private int pendingZeros = 0;
+    private int pendingZerosStart;
+    private final StringBuilder pendingDigits = new StringBuilder();
+    private int pendingDigitsStart;
+
+    /**
+     * Create a new token stream
+     *
+     * @param reader non null reader to read the expression
+     * @throws IllegalArgumentException if reader has no character
+     */
+    ReaderTokenStream(Reader reader) {
+        this(reader,DEFAULT_BUFFER_SIZE);
+    }
+
+    ReaderTokenStream(Reader reader, int bufferSize) {
+        if (null == reader) {
+            throw new NullPointerException("reader == null");
+        }
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        for (int i = 0; i < LOOKAHEAD; i++) {
+            texts[i] = new StringBuilder();
+        }
+        if (-1 == peekChar()) {
+            throw new IllegalArgumentException("can not tokenize empty string");
+        }
+    }
+
+    @Override
+    public boolean hasToken(int offset) throws ParseException {
+        if (offset >= LOOKAHEAD) {
+            throw new IllegalArgumentException("can not look ahead "+offset+" tokens");
+        }
+        while (count <= offset && readToken()) {
+            // read until enough tokens available
+        }
+        return count > offset;
+    }
+
+    @Override
+    public TokenType type(int offset) throws ParseException {
+        return types[slot(offset)];
+    }
+
+    @Override
+    public boolean matches(int offset, String literal) throws ParseException {
+        StringBuilder text = texts[slot(offset)];
+        int length = text.length();
+        if (length != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length(int offset) throws ParseException {
+        return texts[slot(offset)].length();
+    }
+
+    @Override
+    public char charAt(int offset, int position) throws ParseException {
+        return texts[slot(offset)].charAt(position);
+    }
+
+    @Override
+    public int copyChars(int offset, char[] dest) throws ParseException {
+        StringBuilder text = texts[slot(offset)];
+        int length = text.length();
+        text.getChars(0,length,dest,0);
+        return length;
+    }
+
+    @Override
+    public String literal(int offset) throws ParseException {
+        return texts[slot(offset)].toString();
+    }
+
+    @Override
+    public Token token(int offset) throws ParseException {
+        int slot = slot(offset);
+        return new Token(types[slot],texts[slot].toString(),starts[slot]);
+    }
+
+    @Override
+    public void advance() throws ParseException {
+        if (!hasToken(0)) {
+            throw new IndexOutOfBoundsException("can not move pointer @ "+offset);
+        }
+        head = (head+1)%LOOKAHEAD;
+        count--;
+    }
+
+    /**
+     * Find the ring slot of the token at offset
+     *
+     * @throws IndexOutOfBoundsException if no token available at offset
+     */
+    private int slot(int offset) {
+        if (!hasToken(offset)) {
+            throw new IndexOutOfBoundsException("no token available @ "+offset);
+        }
+        return (head+offset)%LOOKAHEAD;
+    }
+
+    /**
+     * Read the next token and add it to the end of the ring
+     *
+     * @return {@literal true} if a token read, {@literal false} if end of input reached
+     * @throws ParseException if any invalid character found
+     */
+    private boolean readToken() throws ParseException {
+        if (readPendingToken()) {
+            return true;
+        }
+        int c = peekChar();
+        while (-1 != c && WHITESPACE == classOf((char) c)) {
+            readChar();
+            c = peekChar();
+        }
+        if (-1 == c) {
+            return false;
+        }
+        byte charClass = classOf((char) c);
+        int start = offset;
+        if (LETTER == charClass) {
+            StringBuilder text = newToken(KEYWORD,start);
+            text.append(readChar());
+            while (-1 != (c = peekChar())) {
+                charClass = classOf((char) c);
+                if (LETTER != charClass && DIGIT != charClass) break;
+                text.append(readChar());
+            }
+        }
+        else if (DIGIT == charClass) {
+            readNumber(start);
+        }
+        else if (WHITESPACE != charClass) {
+            StringBuilder text = newToken(SYMBOL,start);
+            char first = readChar();
+            text.append(first);
+            c = peekChar();
+            if (Character.isHighSurrogate(first) && -1 != c && Character.isLowSurrogate((char) c)) {
+                text.append(readChar());
+            }
+        }
+        else {
+            throw new ParseException("invalid character '"+(char) c+"'");
+        }
+        return true;
+    }
+
+    /**
+     * Read a number starting with a digit. Digits followed by a period
+     * is a decimal number, otherwise each leading 0 is a separate number
+     * and the remaining digits is another number, same as
+     * {@link TokenType#NUMERIC NUMERIC} pattern
+     *
+     * @param start start of the number in the input
+     */
+    private void readNumber(int start) {
+        int zeros = 0;
+        int c;
+        while ('0' == (c = peekChar())) {
+            readChar();
+            zeros++;
+        }
+        pendingDigits.setLength(0);
+        while (-1 != c && DIGIT == classOf((char) c)) {
+            pendingDigits.append(readChar());
+            c = peekChar();
+        }
+        if ('.' == c) {
+            StringBuilder text = newToken(NUMERIC,start);
+            for (int i = 0; i < zeros; i++) {
+                text.append('0');
+            }
+            text.append(pendingDigits).append(readChar());
+            while (-1 != (c = peekChar()) && DIGIT == classOf((char) c)) {
+                text.append(readChar());
+            }
+            pendingDigits.setLength(0);
+        }
+        else {
+            pendingZeros = zeros;
+            pendingZerosStart = start;
+            pendingDigitsStart = start+zeros;
+            readPendingToken();
+        }
+    }
+
+    /**
+     * Add the next pending token of a digit run, if any, to the ring
+     *
+     * @return {@literal true} if a pending token found, {@literal false} otherwise
+     */
+    private boolean readPendingToken() {
+        if (pendingZeros > 0) {
+            newToken(NUMERIC,pendingZerosStart).append('0');
+            pendingZeros--;
+            pendingZerosStart++;
+            return true;
+        }
+        if (pendingDigits.length() > 0) {
+            newToken(NUMERIC,pendingDigitsStart).append(pendingDigits);
+            pendingDigits.setLength(0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add a new token at the end of the ring
+     *
+     * @return the empty text of the new token
+     */
+    private StringBuilder newToken(TokenType type, int start) {
+        int slot = (head+count)%LOOKAHEAD;
+        types[slot] = type;
+        starts[slot] = start;
+        StringBuilder text = texts[slot];
+        text.setLength(0);
+        count++;
+        return text;
+    }
+
+    /**
+     * Get the next character without consuming it
+     *
+     * @return the next character or -1 if end of input reached
+     */
+    private int peekChar() {
+        if (position == limit && !fillBuffer()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Consume the next character. Call {@link #peekChar()} to check
+     * availability before calling this method.
+     */
+    private char readChar() {
+        offset++;
+        return buffer[position++];
+    }
+
+    private boolean fillBuffer() {
+        if (endOfInput) {
+            return false;
+        }
+        try {
+            int read;
+            do {
+                read = reader.read(buffer,0,buffer.length);
+            }
+            while (0 == read);
+            if (-1 == read) {
+                endOfInput = true;
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+        catch (IOException e) {
+            throw new CalculatorException("can not read the expression",e);
+        }
+    }
+}
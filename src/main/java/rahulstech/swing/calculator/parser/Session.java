@@ -0,0 +1,104 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State of a single user of a {@link Calculator}, the last result used as
+ * the value of the keyword ANS and optionally the recent calculations. A
+ * calculator can be shared by many threads, each user should calculate
+ * with its own session to get its own last result as ANS.
+ *
+ * @author Rahul Bagchi
+ * @see Calculator#newSession()
+ * @see SessionRegistry
+ */
+public class Session {
+
+    private volatile BigDecimal answer = BigDecimal.ZERO;
+    // recent calculations in a ring, null if not kept
+    private final CalculationResult[] history;
+    private int historyStart = 0;
+    private int historySize = 0;
+
+    Session() {
+        this(0);
+    }
+
+    /**
+     * @param historySize number of recent calculations to keep
+     */
+    Session(int historySize) {
+        this.history = 0 == historySize ? null : new CalculationResult[historySize];
+    }
+
+    /**
+     * @return the last result of this session, initially 0
+     */
+    public BigDecimal answer() {
+        return answer;
+    }
+
+    /**
+     * @return the recent calculations of this session from the oldest,
+     *          empty if the session does not keep history
+     */
+    public List<CalculationResult> history() {
+        if (null == history) {
+            return Collections.emptyList();
+        }
+        synchronized (history) {
+            List<CalculationResult> entries = new ArrayList<>(historySize);
+            for (int i = 0; i < historySize; i++) {
+                entries.add(history[(historyStart+i)%history.length]);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Store the result as the last result and add the calculation to the
+     * history if the history is kept
+     *
+     * @param expression the expression calculated, {@literal null} if not known
+     * @param result the result
+     */
+    void record(String expression, BigDecimal result) {
+        this.answer = result;
+        if (null == history || null == expression) {
+            return;
+        }
+        CalculationResult entry = new CalculationResult(expression,result,null);
+        synchronized (history) {
+            if (historySize < history.length) {
+                history[(historyStart+historySize++)%history.length] = entry;
+            }
+            else {
+                history[historyStart] = entry;
+                historyStart = (historyStart+1)%history.length;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Session(ANS="+answer+")";
+    }
+}
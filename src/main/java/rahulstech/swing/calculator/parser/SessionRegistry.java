@@ -0,0 +1,269 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Sessions of many users looked up by an id, for a calculator shared by
+ * many users like a server. A session not used for the idle timeout is
+ * removed, and when there are more sessions than the maximum size the
+ * least recently used sessions are removed. A removed session is created
+ * again with ANS 0 when its id is used next time. Many threads can use
+ * the registry at the same time.
+ * <p>
+ * Removing by size is done in sweeps, a sweep removes down to 15/16 of
+ * the maximum size, so the cost of finding the least recently used
+ * sessions is shared by many new sessions.
+ *
+ * @author Rahul Bagchi
+ * @see Calculator#calculate(Session, String)
+ */
+public class SessionRegistry {
+
+    private final int maximumSize;
+    private final long idleTimeoutNanos;
+    private final int historySize;
+    private final Map<String,Entry> entries = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final AtomicLong lastCleanUp;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Create a new registry
+     *
+     * @param maximumSize maximum number of sessions to keep
+     * @param idleTimeout time after which an unused session is removed
+     * @param historySize number of recent calculations kept by each session, 0 for none
+     * @throws IllegalArgumentException if maximumSize is less than 1, idleTimeout
+     *          is not positive or historySize is negative
+     */
+    public SessionRegistry(int maximumSize, Duration idleTimeout, int historySize) {
+        this(maximumSize,idleTimeout,historySize,System::nanoTime);
+    }
+
+    /**
+     * @param clock the time in nanoseconds, like {@link System#nanoTime()}
+     */
+    SessionRegistry(int maximumSize, Duration idleTimeout, int historySize, LongSupplier clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        if (historySize < 0) {
+            throw new IllegalArgumentException("historySize must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.historySize = historySize;
+        this.clock = clock;
+        this.lastCleanUp = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Get the session of the id and mark it as recently used. A new session
+     * is created if the id has no session or its session is removed.
+     *
+     * @param id the id of the session
+     * @return the session
+     */
+    public Session get(String id) {
+        if (null == id) {
+            throw new NullPointerException("id == null");
+        }
+        long now = clock.getAsLong();
+        Entry entry = entries.get(id);
+        if (null != entry && entry.isIdle(now,idleTimeoutNanos) && entries.remove(id,entry)) {
+            expirationCount.increment();
+            entry = null;
+        }
+        if (null != entry) {
+            hitCount.increment();
+            entry.lastAccess = now;
+            return entry.session;
+        }
+        missCount.increment();
+        Entry created = new Entry(new Session(historySize),now);
+        entry = entries.putIfAbsent(id,created);
+        if (null == entry) {
+            entry = created;
+        }
+        else {
+            entry.lastAccess = now;
+        }
+        long lastCleanUp = this.lastCleanUp.get();
+        if (entries.size() > maximumSize) {
+            evict();
+        }
+        else if (now-lastCleanUp > idleTimeoutNanos/2 && this.lastCleanUp.compareAndSet(lastCleanUp,now)) {
+            removeIdle(now);
+        }
+        return entry.session;
+    }
+
+    /**
+     * @param id the id of the session
+     * @return the session or {@literal null} if the id has no session,
+     *          the session is not marked as used
+     */
+    public Session getIfPresent(String id) {
+        Entry entry = entries.get(id);
+        return null == entry || entry.isIdle(clock.getAsLong(),idleTimeoutNanos) ? null : entry.session;
+    }
+
+    /**
+     * Remove the session of the id
+     *
+     * @param id the id of the session
+     */
+    public void remove(String id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Remove the sessions not used for the idle timeout. This is done
+     * also while creating new sessions, call it to remove idle sessions
+     * when no session is created for a long time.
+     */
+    public void cleanUp() {
+        long now = clock.getAsLong();
+        lastCleanUp.set(now);
+        removeIdle(now);
+    }
+
+    private void removeIdle(long now) {
+        entries.forEach((id,entry) -> {
+            if (entry.isIdle(now,idleTimeoutNanos) && entries.remove(id,entry)) {
+                expirationCount.increment();
+            }
+        });
+    }
+
+    /**
+     * Remove the idle sessions and then the least recently used sessions
+     * down to the low water mark
+     */
+    private synchronized void evict() {
+        if (entries.size() <= maximumSize) {
+            // already done by another thread
+            return;
+        }
+        cleanUp();
+        int lowWaterMark = maximumSize-maximumSize/16;
+        int excess = entries.size()-lowWaterMark;
+        if (excess <= 0) {
+            return;
+        }
+        // the times are copied, sessions are used while sorting
+        List<Candidate> oldest = new ArrayList<>(entries.size());
+        entries.forEach((id,entry) -> oldest.add(new Candidate(id,entry,entry.lastAccess)));
+        oldest.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+        for (int i = 0; i < excess && i < oldest.size(); i++) {
+            Candidate candidate = oldest.get(i);
+            if (entries.remove(candidate.id,candidate.entry)) {
+                evictionCount.increment();
+            }
+        }
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public Duration idleTimeout() {
+        return Duration.ofNanos(idleTimeoutNanos);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups finding an existing session
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return number of lookups creating a new session
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of sessions removed because of the maximum size
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return number of sessions removed because of the idle timeout
+     */
+    public long expirationCount() {
+        return expirationCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionRegistry(size="+size()+", maximumSize="+maximumSize+", hits="+hitCount()
+                +", misses="+missCount()+", evictions="+evictionCount()+", expirations="+expirationCount()+")";
+    }
+
+    private static final class Entry {
+
+        final Session session;
+        volatile long lastAccess;
+
+        Entry(Session session, long lastAccess) {
+            this.session = session;
+            this.lastAccess = lastAccess;
+        }
+
+        boolean isIdle(long now, long idleTimeoutNanos) {
+            return now-lastAccess > idleTimeoutNanos;
+        }
+    }
+
+    private static final class Candidate {
+
+        final String id;
+        final Entry entry;
+        final long lastAccess;
+
+        Candidate(String id, Entry entry, long lastAccess) {
+            this.id = id;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
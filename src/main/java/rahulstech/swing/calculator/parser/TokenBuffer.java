@@ -0,0 +1,225 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact storage of all the tokens of an expression. Instead of one
+ * {@link Token} object per token this class keeps the token types and
+ * start and end offsets into the original input in parallel primitive
+ * arrays. A {@link Token} is created only when asked for by
+ * {@link #token(int)}, for example to show in an error message.
+ *
+ * @author Rahul Bagchi
+ * @see Tokenizer#tokenizeToBuffer()
+ */
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // the tokenized input
+    private final CharSequence source;
+    // ordinal of TokenType of each token
+    private byte[] types;
+    // start position of each token in the source, inclusive
+    private int[] starts;
+    // end position of each token in the source, exclusive
+    private int[] ends;
+    private int size = 0;
+
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        int initial = Math.max(capacity,4);
+        this.types = new byte[initial];
+        this.starts = new int[initial];
+        this.ends = new int[initial];
+    }
+
+    /**
+     * Add a new token at the end of the buffer
+     *
+     * @param type type of the token
+     * @param start start position in source, inclusive
+     * @param end end position in source, exclusive
+     */
+    void add(TokenType type, int start, int end) {
+        if (size == types.length) {
+            int newCapacity = size+(size >> 1);
+            types = Arrays.copyOf(types,newCapacity);
+            starts = Arrays.copyOf(starts,newCapacity);
+            ends = Arrays.copyOf(ends,newCapacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum number of parentheses open at the same time
+     */
+    int nestingDepth() {
+        int depth = 0;
+        int maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            if (TokenType.SYMBOL != TYPES[types[i]]) {
+                continue;
+            }
+            char c = source.charAt(starts[i]);
+            if ('(' == c) {
+                maxDepth = Math.max(maxDepth,++depth);
+            }
+            else if (')' == c) {
+                depth--;
+            }
+        }
+        return maxDepth;
+    }
+
+    public TokenType type(int index) {
+        checkIndex(index);
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    public int length(int index) {
+        checkIndex(index);
+        return ends[index]-starts[index];
+    }
+
+    /**
+     * Get a character of the token at index
+     *
+     * @param index index of the token
+     * @param position position of the character in the token
+     * @return the character
+     */
+    public char charAt(int index, int position) {
+        checkIndex(index);
+        int start = starts[index];
+        if (position < 0 || position >= ends[index]-start) {
+            throw new IndexOutOfBoundsException("token length "+(ends[index]-start)+
+                    "; but requested character @ "+position);
+        }
+        return source.charAt(start+position);
+    }
+
+    /**
+     * Check if text of the token at index is same as the literal.
+     * No new string is created for the comparison.
+     *
+     * @param index index of the token
+     * @param literal the text to compare
+     * @return {@literal true} if same, {@literal false} otherwise
+     */
+    public boolean matches(int index, String literal) {
+        checkIndex(index);
+        int start = starts[index];
+        int length = ends[index]-start;
+        if (length != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start+i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the characters of the token at index into the array
+     *
+     * @param index index of the token
+     * @param dest array to copy into, must be large enough
+     * @return number of characters copied
+     */
+    public int copyChars(int index, char[] dest) {
+        checkIndex(index);
+        int start = starts[index];
+        int length = ends[index]-start;
+        for (int i = 0; i < length; i++) {
+            dest[i] = source.charAt(start+i);
+        }
+        return length;
+    }
+
+    /**
+     * Creates the text of the token at index
+     *
+     * @param index index of the token
+     * @return the text of the token
+     */
+    public String literal(int index) {
+        checkIndex(index);
+        return source.subSequence(starts[index],ends[index]).toString();
+    }
+
+    /**
+     * Creates a {@link Token} view of the token at index
+     *
+     * @param index index of the token
+     * @return new instance of {@link Token}
+     */
+    public Token token(int index) {
+        return new Token(type(index),literal(index),starts[index]);
+    }
+
+    /**
+     * Creates a {@link Token} for each token in this buffer
+     *
+     * @return non null instance of {@link List} of {@link Token}
+     */
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("available tokens count "+size+
+                    "; but requested token @ "+index);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBuffer(size="+size+")";
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+/**
+ * Sequential access to the tokens of an expression used by the
+ * {@link Calculator} while parsing. All the methods take an offset
+ * relative to the current position, 0 means the current token.
+ *
+ * @author Rahul Bagchi
+ * @see BufferTokenStream
+ * @see ReaderTokenStream
+ */
+interface TokenStream {
+
+    /**
+     * Check if a token is available at offset distance from the
+     * current position
+     */
+    boolean hasToken(int offset) throws ParseException;
+
+    TokenType type(int offset) throws ParseException;
+
+    /**
+     * Check if the text of the token at offset is same as the literal
+     * without creating a new string
+     */
+    boolean matches(int offset, String literal) throws ParseException;
+
+    int length(int offset) throws ParseException;
+
+    /**
+     * Get a character of the token at offset
+     *
+     * @param offset offset of the token
+     * @param position position of the character in the token
+     */
+    char charAt(int offset, int position) throws ParseException;
+
+    /**
+     * Copy the characters of the token at offset into the array
+     *
+     * @return number of characters copied
+     */
+    int copyChars(int offset, char[] dest) throws ParseException;
+
+    String literal(int offset) throws ParseException;
+
+    /**
+     * Creates a {@link Token} for the token at offset. Use it only when
+     * really needed like in error messages.
+     */
+    Token token(int offset) throws ParseException;
+
+    /**
+     * Increase the current position by one
+     */
+    void advance() throws ParseException;
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of {@link Tokenizer} splitting an expression into tokens
+ *
+ * @author Rahul Bagchi
+ */
+@Name("rahulstech.swing.calculator.Tokenize")
+@Label("Tokenize")
+@Description("Expression split into tokens")
+@Category({"Calculator","Parser"})
+@StackTrace(false)
+final class TokenizeEvent extends jdk.jfr.Event {
+
+    @Label("Expression Length")
+    int expressionLength;
+
+    @Label("Token Count")
+    int tokenCount;
+
+    /**
+     * Created only while the flight recorder is initialized, as loading an
+     * event class initializes the flight recorder. Started when created.
+     */
+    TokenizeEvent() {
+        begin();
+    }
+}
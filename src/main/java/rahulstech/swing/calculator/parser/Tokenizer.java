@@ -15,25 +15,59 @@
  */
 package rahulstech.swing.calculator.parser;
 
+import jdk.jfr.FlightRecorder;
+
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static rahulstech.swing.calculator.parser.TokenType.*;
 
 /**
+ * Splits an expression into {@link Token tokens}. The input is scanned
+ * only once from left to right, each character is classified using a
+ * lookup table instead of matching the regular expressions of
+ * {@link TokenType}. The produced tokens are exactly the same as
+ * matching those patterns one after another.
  *
  * @author Rahul Bagchi
  */
 public class Tokenizer {
 
+    // character classes used by the lookup table
+    static final byte OTHER = 0;
+    static final byte WHITESPACE = 1;
+    static final byte DIGIT = 2;
+    static final byte LETTER = 3;
+    static final byte PERIOD = 4;
+
+    // character class of each ascii character, all non ascii
+    // characters are of class OTHER
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        // same as \s of java.util.regex
+        CHAR_CLASS[' '] = WHITESPACE;
+        CHAR_CLASS['\t'] = WHITESPACE;
+        CHAR_CLASS['\n'] = WHITESPACE;
+        CHAR_CLASS[0x0B] = WHITESPACE;
+        CHAR_CLASS['\f'] = WHITESPACE;
+        CHAR_CLASS['\r'] = WHITESPACE;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = DIGIT;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CHAR_CLASS[c] = LETTER;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = LETTER;
+        }
+        CHAR_CLASS['_'] = LETTER;
+        CHAR_CLASS['.'] = PERIOD;
+    }
+
     // the string to tokenize
-    private final String input;
+    private final CharSequence input;
     private final int inputLength;
-    // java.ragex.Matcher to match whit space
-    // in the input string
-    private final Matcher wsMatcher;
     // last found token, initially null
     private Token lastToken = null;
     // index from which next character start
@@ -46,13 +80,12 @@ public class Tokenizer {
      * @param input non null non empty string to parse
      * @throws IllegalArgumentException if input is null or empty
      */
-    public Tokenizer(String input) {
-        if (null == input || "".equals(input)) {
+    public Tokenizer(CharSequence input) {
+        if (null == input || 0 == input.length()) {
             throw new IllegalArgumentException("can not tokenize empty string");
         }
         this.input = input;
         this.inputLength = input.length();
-        this.wsMatcher = Pattern.compile("\\s+").matcher(input);
     }
 
     /**
@@ -62,21 +95,57 @@ public class Tokenizer {
      * @throws ParseException exception thrown by {@link #nextToken()}
      */
     public List<Token> tokenize() throws ParseException {
+        TokenizeEvent event = FlightRecorder.isInitialized() ? new TokenizeEvent() : null;
         List<Token> tokens = new ArrayList<>();
         while (hasToken()) {
             Token token = nextToken();
             tokens.add(token);
         }
+        commit(event,tokens.size());
         return tokens;
     }
 
+    /**
+     * Parse all token from the input into a compact {@link TokenBuffer}.
+     * Unlike {@link #tokenize()} no {@link Token} or substring is created
+     * for the tokens.
+     *
+     * @return non null instance of {@link TokenBuffer}
+     * @throws ParseException if any invalid character found
+     */
+    public TokenBuffer tokenizeToBuffer() throws ParseException {
+        TokenizeEvent event = FlightRecorder.isInitialized() ? new TokenizeEvent() : null;
+        TokenBuffer buffer = new TokenBuffer(input,inputLength >> 2);
+        while (hasToken()) {
+            TokenType type = nextType();
+            int start = offset;
+            int end = scan(type,start);
+            buffer.add(type,start,end);
+            this.offset = end;
+        }
+        commit(event,buffer.size());
+        return buffer;
+    }
+
+    private void commit(TokenizeEvent event, int tokenCount) {
+        if (null == event) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.expressionLength = inputLength;
+            event.tokenCount = tokenCount;
+            event.commit();
+        }
+    }
+
     /**
      * Check if any charatcer availble after the current postion or not,
      * exclusing whitespace
      */
     public boolean hasToken() {
-        if (wsMatcher.find(offset) && offset == wsMatcher.start()) {
-            offset = wsMatcher.end();
+        while (offset < inputLength && WHITESPACE == classOf(input.charAt(offset))) {
+            offset++;
         }
         return offset < inputLength;
     }
@@ -89,20 +158,7 @@ public class Tokenizer {
      * @throws ParseException if any invalid character found
      */
     public Token nextToken() throws ParseException {
-        Token token;
-        if (check(KEYWORD)) {
-            token = nextKeyword();
-        }
-        else if (check(SYMBOL)) {
-            token = nextSymbol();
-
-        }
-        else if (check(NUMERIC)) {
-            token = nextNumber();
-        }
-        else {
-            throw new ParseException("invalid character '"+input.charAt(offset)+"'");
-        }
+        Token token = pop(nextType());
         this.lastToken = token;
         return token;
     }
@@ -134,6 +190,27 @@ public class Tokenizer {
         return pop(NUMERIC);
     }
 
+    /**
+     * Find the type of the token just after the current position
+     *
+     * @return type of the next token
+     * @throws ParseException if any invalid character found
+     */
+    private TokenType nextType() throws ParseException {
+        if (check(KEYWORD)) {
+            return KEYWORD;
+        }
+        else if (check(SYMBOL)) {
+            return SYMBOL;
+        }
+        else if (check(NUMERIC)) {
+            return NUMERIC;
+        }
+        else {
+            throw new ParseException("invalid character '"+input.charAt(offset)+"'");
+        }
+    }
+
     /**
      * Check if next token is of given type with out changing the
      * cursor position.
@@ -142,11 +219,18 @@ public class Tokenizer {
      * @return {@literal true} if available, {@literal false} otherwise
      */
     private boolean check(TokenType type) {
-        Matcher matcher = Pattern.compile(type.getPattern()).matcher(input).region(offset,inputLength);
-        if (matcher.find()) {
-            return offset == matcher.start();
+        if (offset >= inputLength) {
+            return false;
+        }
+        byte charClass = classOf(input.charAt(offset));
+        switch (type) {
+            case KEYWORD:
+                return LETTER == charClass;
+            case NUMERIC:
+                return DIGIT == charClass;
+            default:
+                return DIGIT != charClass && WHITESPACE != charClass;
         }
-        return false;
     }
 
     /**
@@ -158,10 +242,90 @@ public class Tokenizer {
      * @return parsed token
      */
     private Token pop(TokenType type) {
-        Matcher matcher = Pattern.compile(type.getPattern()).matcher(input).region(offset,inputLength);
-        matcher.find();
-        Token token = new Token(type,matcher.group(),matcher.start());
-        this.offset = matcher.end();
+        int start = offset;
+        int end = scan(type,start);
+        Token token = new Token(type,input.subSequence(start,end).toString(),start);
+        this.offset = end;
         return token;
     }
+
+    /**
+     * Find the end of the token of given type starting at the given index
+     *
+     * @param type type of the token
+     * @param start start index of the token
+     * @return end index of the token, exclusive
+     */
+    private int scan(TokenType type, int start) {
+        switch (type) {
+            case KEYWORD:
+                return scanKeyword(start);
+            case NUMERIC:
+                return scanNumber(start);
+            default:
+                return scanSymbol(start);
+        }
+    }
+
+    /**
+     * Find the end of the keyword starting at the given index. Same as
+     * matching {@link TokenType#KEYWORD KEYWORD} pattern.
+     */
+    private int scanKeyword(int start) {
+        int end = start+1;
+        while (end < inputLength) {
+            byte charClass = classOf(input.charAt(end));
+            if (LETTER != charClass && DIGIT != charClass) break;
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Find the end of the number starting at the given index. Same as
+     * matching {@link TokenType#NUMERIC NUMERIC} pattern, i.e. digits
+     * followed by a period are decimal, otherwise the number is either
+     * an integer not starting with 0 or a single 0.
+     */
+    private int scanNumber(int start) {
+        int end = skipDigits(start);
+        if (end < inputLength && PERIOD == classOf(input.charAt(end))) {
+            return skipDigits(end+1);
+        }
+        if ('0' != input.charAt(start)) {
+            return end;
+        }
+        return start+1;
+    }
+
+    /**
+     * Find the end of the symbol starting at the given index. Same as
+     * matching {@link TokenType#SYMBOL SYMBOL} pattern, which matches a
+     * whole code point i.e. both chars of a surrogate pair.
+     */
+    private int scanSymbol(int start) {
+        if (start+1 < inputLength && Character.isHighSurrogate(input.charAt(start))
+                && Character.isLowSurrogate(input.charAt(start+1))) {
+            return start+2;
+        }
+        return start+1;
+    }
+
+    private int skipDigits(int from) {
+        int end = from;
+        while (end < inputLength && DIGIT == classOf(input.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Find the character class of a character
+     *
+     * @param c the character
+     * @return one of the character class constants of this class
+     */
+    static byte classOf(char c) {
+        return c < CHAR_CLASS.length ? CHAR_CLASS[c] : OTHER;
+    }
 }
@@ -27,6 +27,9 @@ public abstract class AbstractOperation implements Operation {
 
     private String name;
     private Priority priority;
+    private boolean pure = false;
+    private boolean commutative = false;
+    private boolean associative = false;
 
     protected AbstractOperation(String name, Priority priority) {
         this.name = name;
@@ -43,6 +46,45 @@ public abstract class AbstractOperation implements Operation {
         return name;
     }
 
+    @Override
+    public boolean isPure() {
+        return pure;
+    }
+
+    @Override
+    public boolean isCommutative() {
+        return commutative;
+    }
+
+    @Override
+    public boolean isAssociative() {
+        return associative;
+    }
+
+    /**
+     * @param pure {@literal true} if the operation is pure
+     * @see Operation#isPure()
+     */
+    protected void setPure(boolean pure) {
+        this.pure = pure;
+    }
+
+    /**
+     * @param commutative {@literal true} if the operation is commutative
+     * @see Operation#isCommutative()
+     */
+    protected void setCommutative(boolean commutative) {
+        this.commutative = commutative;
+    }
+
+    /**
+     * @param associative {@literal true} if the operation is associative
+     * @see Operation#isAssociative()
+     */
+    protected void setAssociative(boolean associative) {
+        this.associative = associative;
+    }
+
     @Override
     public String toString() {
         return name+"["+priority+"]";
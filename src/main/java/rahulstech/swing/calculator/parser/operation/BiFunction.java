@@ -17,6 +17,8 @@ package rahulstech.swing.calculator.parser.operation;
 
 import rahulstech.swing.calculator.parser.ParseException;
 
+import jdk.jfr.FlightRecorder;
+
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -41,8 +43,107 @@ public abstract class BiFunction extends AbstractParameterizedOperation {
 
     protected abstract BigDecimal evaluate(BigDecimal param1, BigDecimal param2);
 
+    /**
+     * Performs the function on doubles. The default implementation returns
+     * {@link Double#NaN} so the expression is evaluated with BigDecimal.
+     *
+     * @param param1 the first parameter
+     * @param param2 the second parameter
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    protected double evaluateAsDouble(double param1, double param2) {
+        return Double.NaN;
+    }
+
+    /**
+     * Performs the function on integers. The default implementation returns
+     * {@link #NOT_A_LONG} so the function is performed with BigDecimal.
+     *
+     * @param param1 the first parameter
+     * @param param2 the second parameter
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    protected long evaluateAsLong(long param1, long param2) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal param) {
+        throw new ParseException(name()+" requirs exactly two paramters");
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal param1, BigDecimal param2) {
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(param1,param2);
+        if (null != event) {
+            event.commit(this,2);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal[] params, int from, int count) {
+        if (count > 2) {
+            throw new ParseException(name()+" requires exactly two parameter");
+        }
+        if (count < 2) {
+            throw new ParseException(name()+" requirs exactly two paramters");
+        }
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(params[from],params[from+1]);
+        if (null != event) {
+            event.commit(this,2);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final double applyAsDouble(double param) {
+        return Double.NaN;
+    }
+
+    @Override
+    public final double applyAsDouble(double param1, double param2) {
+        OperationTimer.count();
+        return evaluateAsDouble(param1,param2);
+    }
+
+    @Override
+    public final double applyAsDouble(double[] params, int from, int count) {
+        if (2 != count) {
+            return Double.NaN;
+        }
+        OperationTimer.count();
+        return evaluateAsDouble(params[from],params[from+1]);
+    }
+
+    @Override
+    public final long applyAsLong(long param) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final long applyAsLong(long param1, long param2) {
+        OperationTimer.count();
+        return evaluateAsLong(param1,param2);
+    }
+
+    @Override
+    public final long applyAsLong(long[] params, int from, int count) {
+        if (2 != count) {
+            return NOT_A_LONG;
+        }
+        OperationTimer.count();
+        return evaluateAsLong(params[from],params[from+1]);
+    }
+
     @Override
-    public BigDecimal evaluate() {
+    public final BigDecimal evaluate() {
         ensureParameterCount(2,2,name()+" requirs exactly two paramters");
         BigDecimal param1 = parameters().get(0);
         BigDecimal param2 = parameters().get(1);
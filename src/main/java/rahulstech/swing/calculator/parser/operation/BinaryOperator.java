@@ -17,12 +17,18 @@ package rahulstech.swing.calculator.parser.operation;
 
 import rahulstech.swing.calculator.parser.ParseException;
 
+import jdk.jfr.FlightRecorder;
+
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.Arrays;
 import java.util.List;
 
 public abstract class BinaryOperator extends AbstractParameterizedOperation {
 
+    private BigDecimal rightIdentity = null;
+    private MathContext mathContext = null;
+
     public BinaryOperator(String name,Priority priority) {
         super(name,priority);
     }
@@ -47,8 +53,142 @@ public abstract class BinaryOperator extends AbstractParameterizedOperation {
         return parameters().get(1);
     }
 
+    /**
+     * The right identity is a number e for which x op e is equal to x for
+     * any x, like 0 for + and 1 for *. If the operator is commutative it is
+     * also the left identity. The optimizer removes the identity from an
+     * expression. For an operator which rounds its result to a
+     * {@link #mathContext()} x op e is x only if x fits in the context, so
+     * the identity is removed only where x is known to fit.
+     *
+     * @return the right identity or {@literal null} if the operator has none
+     */
+    public BigDecimal rightIdentity() {
+        return rightIdentity;
+    }
+
+    /**
+     * @param rightIdentity the right identity or {@literal null}
+     * @see #rightIdentity()
+     */
+    protected void setRightIdentity(BigDecimal rightIdentity) {
+        this.rightIdentity = rightIdentity;
+    }
+
+    /**
+     * @return the context the results are rounded to or {@literal null} if
+     *          the results are not rounded
+     */
+    public MathContext mathContext() {
+        return mathContext;
+    }
+
+    /**
+     * @param mathContext the context the results are rounded to or {@literal null}
+     * @see #mathContext()
+     */
+    protected void setMathContext(MathContext mathContext) {
+        this.mathContext = mathContext;
+    }
+
     protected abstract BigDecimal evaluate(BigDecimal left, BigDecimal right);
 
+    /**
+     * Performs the operator on doubles. The default implementation returns
+     * {@link Double#NaN} so the expression is evaluated with BigDecimal.
+     *
+     * @param left the left operand
+     * @param right the right operand
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    protected double evaluateAsDouble(double left, double right) {
+        return Double.NaN;
+    }
+
+    /**
+     * Performs the operator on integers. The default implementation returns
+     * {@link #NOT_A_LONG} so the operator is performed with BigDecimal.
+     *
+     * @param left the left operand
+     * @param right the right operand
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    protected long evaluateAsLong(long left, long right) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal param) {
+        throw new ParseException(name()+" requires exactly two parameters");
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal left, BigDecimal right) {
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(left,right);
+        if (null != event) {
+            event.commit(this,2);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal[] params, int from, int count) {
+        if (2 != count) {
+            throw new ParseException(name()+" requires exactly two parameters");
+        }
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(params[from],params[from+1]);
+        if (null != event) {
+            event.commit(this,2);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final double applyAsDouble(double param) {
+        return Double.NaN;
+    }
+
+    @Override
+    public final double applyAsDouble(double left, double right) {
+        OperationTimer.count();
+        return evaluateAsDouble(left,right);
+    }
+
+    @Override
+    public final double applyAsDouble(double[] params, int from, int count) {
+        if (2 != count) {
+            return Double.NaN;
+        }
+        OperationTimer.count();
+        return evaluateAsDouble(params[from],params[from+1]);
+    }
+
+    @Override
+    public final long applyAsLong(long param) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final long applyAsLong(long left, long right) {
+        OperationTimer.count();
+        return evaluateAsLong(left,right);
+    }
+
+    @Override
+    public final long applyAsLong(long[] params, int from, int count) {
+        if (2 != count) {
+            return NOT_A_LONG;
+        }
+        OperationTimer.count();
+        return evaluateAsLong(params[from],params[from+1]);
+    }
+
     @Override
     public final BigDecimal evaluate() {
         ensureParameterCount(2,2,name()+" requires exactly two paramters");
@@ -21,7 +21,12 @@ import java.math.BigDecimal;
  * Base class for all kind of mathematical operations or
  * constant values. Each operation has a name, priority
  * to identiry its calculation precendence and an evaluation
- * method to perform actula mathematical operation
+ * method to perform actula mathematical operation.
+ * <p>
+ * An operation also tells the optimizer of the calculator how it may be
+ * rearranged. All of them are {@literal false} by default, which never
+ * allows any optimization.
+ * </p>
  *
  * @author Rahul Bagchi
  */
@@ -40,4 +45,29 @@ public interface Operation {
     String name();
 
     BigDecimal evaluate();
+
+    /**
+     * A pure operation always returns the same result for the same
+     * parameters and has no side effect, so it can be performed once for
+     * constant parameters or for repeated parameters
+     *
+     * @return {@literal true} if the operation is pure
+     */
+    default boolean isPure() {
+        return false;
+    }
+
+    /**
+     * @return {@literal true} if the order of the parameters does not change the result
+     */
+    default boolean isCommutative() {
+        return false;
+    }
+
+    /**
+     * @return {@literal true} if (a op b) op c is exactly same as a op (b op c)
+     */
+    default boolean isAssociative() {
+        return false;
+    }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser.operation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of an operation performed with BigDecimal
+ * parameters. Only operations taking longer than the threshold, 1 ms by
+ * default, are recorded. Operations performed with longs or doubles are
+ * not recorded.
+ *
+ * @author Rahul Bagchi
+ */
+@Name("rahulstech.swing.calculator.Operation")
+@Label("Operation")
+@Description("Slow operation performed with BigDecimal parameters")
+@Category({"Calculator","Evaluator"})
+@Threshold("1 ms")
+final class OperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Parameter Count")
+    int parameterCount;
+
+    /**
+     * Created only while the flight recorder is initialized, as loading an
+     * event class initializes the flight recorder. Started when created.
+     */
+    OperationEvent() {
+        begin();
+    }
+
+    /**
+     * End the event, then set the fields and commit if enabled and slower
+     * than the threshold, which compares the duration between begin and end
+     */
+    void commit(Operation operation, int parameterCount) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.operation = operation.name();
+        this.parameterCount = parameterCount;
+        commit();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser.operation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the slowest operation performed by a thread between
+ * {@link #start()} and {@link #stop()}, for reporting slow calculations,
+ * and counts the operations performed. Only operations performed with
+ * BigDecimal parameters are timed, the long and double ones are too fast
+ * to matter, but they are counted. While no thread is timing an operation
+ * costs a single read of a counter.
+ *
+ * @author Rahul Bagchi
+ */
+public final class OperationTimer {
+
+    // number of timers started and not stopped by all the threads
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    private static final ThreadLocal<OperationTimer> CURRENT = new ThreadLocal<>();
+
+    // timer of the thread before this one started, for nested calculations
+    private final OperationTimer previous;
+    private String slowestOperation = null;
+    private long slowestNanos = 0;
+    private long operationCount = 0;
+
+    private OperationTimer(OperationTimer previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Start timing the operations of the current thread
+     *
+     * @return the timer, which must be stopped by the same thread
+     */
+    public static OperationTimer start() {
+        OperationTimer timer = new OperationTimer(CURRENT.get());
+        CURRENT.set(timer);
+        ACTIVE.incrementAndGet();
+        return timer;
+    }
+
+    /**
+     * Stop timing the operations of the current thread. The operations
+     * are also of the calculation timed by the timer started before this
+     * one, so they are added to it.
+     */
+    public void stop() {
+        ACTIVE.decrementAndGet();
+        if (null == previous) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+            previous.operationCount += operationCount;
+            if (null != slowestOperation
+                    && (null == previous.slowestOperation || slowestNanos > previous.slowestNanos)) {
+                previous.slowestOperation = slowestOperation;
+                previous.slowestNanos = slowestNanos;
+            }
+        }
+    }
+
+    /**
+     * @return name of the slowest operation or {@literal null} if none is timed
+     */
+    public String slowestOperation() {
+        return slowestOperation;
+    }
+
+    /**
+     * @return time taken by the slowest operation in nanoseconds
+     */
+    public long slowestNanos() {
+        return slowestNanos;
+    }
+
+    /**
+     * Number of operations performed, each time an operation is performed.
+     * An operation performed with long integers or doubles and then again
+     * with BigDecimal, because the result is not exact, is counted twice.
+     *
+     * @return number of operations performed
+     */
+    public long operationCount() {
+        return operationCount;
+    }
+
+    /**
+     * Count the operation if the current thread is timing, for an operation
+     * performed with long integers or doubles
+     */
+    public static void count() {
+        if (0 == ACTIVE.get()) {
+            return;
+        }
+        OperationTimer timer = CURRENT.get();
+        if (null != timer) {
+            timer.operationCount++;
+        }
+    }
+
+    /**
+     * Count the operation and take the start time, for an operation performed
+     * with BigDecimal. An operation overriding the apply methods calls this
+     * and {@link #end(Operation, long)} itself.
+     *
+     * @return start time of an operation or 0 if no thread is timing
+     */
+    public static long begin() {
+        if (0 == ACTIVE.get()) {
+            return 0;
+        }
+        count();
+        return System.nanoTime();
+    }
+
+    /**
+     * Time the operation if the current thread is timing
+     *
+     * @param start value returned by {@link #begin()}
+     */
+    public static void end(Operation operation, long start) {
+        if (0 == start) {
+            return;
+        }
+        OperationTimer timer = CURRENT.get();
+        if (null == timer) {
+            return;
+        }
+        long nanos = System.nanoTime()-start;
+        if (null == timer.slowestOperation || nanos > timer.slowestNanos) {
+            timer.slowestOperation = operation.name();
+            timer.slowestNanos = nanos;
+        }
+    }
+}
@@ -15,18 +15,169 @@
  */
 package rahulstech.swing.calculator.parser.operation;
 
+import jdk.jfr.FlightRecorder;
+
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Base class for all mathematical operations that requires
  * atleast one parameter like operator and functions.
+ * <p>
+ * The parser performs an operation by calling one of the apply methods,
+ * which receive the parameters as arguments and do not keep them, so
+ * the same operation can be performed by many threads at the same time.
+ * The default apply methods adapt to {@link #parameters(List)} and
+ * {@link #evaluate()} for operations implemented only that way.
+ * </p>
+ * <p>
+ * The applyAsDouble methods perform the operation on primitive doubles
+ * for the fast double evaluation mode of the calculator. An operation
+ * returns {@link Double#NaN} for anything it can not calculate as a
+ * double, then the expression is evaluated again with the apply methods.
+ * The defaults return {@link Double#NaN}.
+ * </p>
+ * <p>
+ * The applyAsLong methods perform the operation on integers so the
+ * calculator can avoid {@link BigDecimal} for integer arithmetic. An
+ * operation returns {@link #NOT_A_LONG} if the result is not an integer,
+ * does not fit in a long or is an error, then the operation is performed
+ * again with the apply methods. The result must be same as the result of
+ * the apply methods for integer parameters with scale 0. The defaults
+ * return {@link #NOT_A_LONG}.
+ * </p>
  *
  * @author Rahuls Bagchi
  */
 public interface ParameterizedOperation extends Operation {
 
+    /**
+     * Returned by the applyAsLong methods when the result can not be
+     * calculated as a long
+     */
+    long NOT_A_LONG = Long.MIN_VALUE;
+
     List<BigDecimal> parameters();
 
     void parameters(List<BigDecimal> parameters);
+
+    /**
+     * Performs the operation with a single parameter
+     *
+     * @param param the parameter
+     * @return the result
+     */
+    default BigDecimal apply(BigDecimal param) {
+        return apply(new BigDecimal[]{param},0,1);
+    }
+
+    /**
+     * Performs the operation with two parameters, like an operator with
+     * its left and right operands
+     *
+     * @param param1 the first parameter
+     * @param param2 the second parameter
+     * @return the result
+     */
+    default BigDecimal apply(BigDecimal param1, BigDecimal param2) {
+        return apply(new BigDecimal[]{param1,param2},0,2);
+    }
+
+    /**
+     * Performs the operation with count parameters starting at index from
+     * of the array. The array is not changed or kept by the operation.
+     * The default implementation sets the parameters by
+     * {@link #parameters(List)} and calls {@link #evaluate()}, so the
+     * evaluation is synchronized on this operation.
+     *
+     * @param params array containing the parameters
+     * @param from index of the first parameter
+     * @param count number of parameters
+     * @return the result
+     */
+    default BigDecimal apply(BigDecimal[] params, int from, int count) {
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result;
+        synchronized (this) {
+            parameters(Arrays.asList(params).subList(from,from+count));
+            result = evaluate();
+        }
+        if (null != event) {
+            event.commit(this,count);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    /**
+     * Performs the operation with a single double parameter
+     *
+     * @param param the parameter
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    default double applyAsDouble(double param) {
+        return applyAsDouble(new double[]{param},0,1);
+    }
+
+    /**
+     * Performs the operation with two double parameters
+     *
+     * @param param1 the first parameter
+     * @param param2 the second parameter
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    default double applyAsDouble(double param1, double param2) {
+        return applyAsDouble(new double[]{param1,param2},0,2);
+    }
+
+    /**
+     * Performs the operation with count double parameters starting at
+     * index from of the array. The default implementation returns
+     * {@link Double#NaN}.
+     *
+     * @param params array containing the parameters
+     * @param from index of the first parameter
+     * @param count number of parameters
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    default double applyAsDouble(double[] params, int from, int count) {
+        return Double.NaN;
+    }
+
+    /**
+     * Performs the operation with a single integer parameter
+     *
+     * @param param the parameter
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    default long applyAsLong(long param) {
+        return applyAsLong(new long[]{param},0,1);
+    }
+
+    /**
+     * Performs the operation with two integer parameters
+     *
+     * @param param1 the first parameter
+     * @param param2 the second parameter
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    default long applyAsLong(long param1, long param2) {
+        return applyAsLong(new long[]{param1,param2},0,2);
+    }
+
+    /**
+     * Performs the operation with count integer parameters starting at
+     * index from of the array. The default implementation returns
+     * {@link #NOT_A_LONG}.
+     *
+     * @param params array containing the parameters
+     * @param from index of the first parameter
+     * @param count number of parameters
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    default long applyAsLong(long[] params, int from, int count) {
+        return NOT_A_LONG;
+    }
 }
@@ -17,6 +17,8 @@ package rahulstech.swing.calculator.parser.operation;
 
 import rahulstech.swing.calculator.parser.ParseException;
 
+import jdk.jfr.FlightRecorder;
+
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -42,6 +44,103 @@ public abstract class UniFunction extends AbstractParameterizedOperation {
 
     protected abstract BigDecimal evaluate(BigDecimal param);
 
+    /**
+     * Performs the function on a double. The default implementation returns
+     * {@link Double#NaN} so the expression is evaluated with BigDecimal.
+     *
+     * @param param the parameter
+     * @return the result or {@link Double#NaN} if not supported
+     */
+    protected double evaluateAsDouble(double param) {
+        return Double.NaN;
+    }
+
+    /**
+     * Performs the function on an integer. The default implementation returns
+     * {@link #NOT_A_LONG} so the function is performed with BigDecimal.
+     *
+     * @param param the parameter
+     * @return the result or {@link #NOT_A_LONG} if not supported
+     */
+    protected long evaluateAsLong(long param) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal param) {
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(param);
+        if (null != event) {
+            event.commit(this,1);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal param1, BigDecimal param2) {
+        throw new ParseException(name()+" requires exactly one parameter");
+    }
+
+    @Override
+    public final BigDecimal apply(BigDecimal[] params, int from, int count) {
+        if (count > 1) {
+            throw new ParseException(name()+" requires exactly one parameter");
+        }
+        if (count < 1) {
+            throw new ParseException(name()+" requirs exactly one parameter");
+        }
+        OperationEvent event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+        long start = OperationTimer.begin();
+        BigDecimal result = evaluate(params[from]);
+        if (null != event) {
+            event.commit(this,1);
+        }
+        OperationTimer.end(this,start);
+        return result;
+    }
+
+    @Override
+    public final double applyAsDouble(double param) {
+        OperationTimer.count();
+        return evaluateAsDouble(param);
+    }
+
+    @Override
+    public final double applyAsDouble(double param1, double param2) {
+        return Double.NaN;
+    }
+
+    @Override
+    public final double applyAsDouble(double[] params, int from, int count) {
+        if (1 != count) {
+            return Double.NaN;
+        }
+        OperationTimer.count();
+        return evaluateAsDouble(params[from]);
+    }
+
+    @Override
+    public final long applyAsLong(long param) {
+        OperationTimer.count();
+        return evaluateAsLong(param);
+    }
+
+    @Override
+    public final long applyAsLong(long param1, long param2) {
+        return NOT_A_LONG;
+    }
+
+    @Override
+    public final long applyAsLong(long[] params, int from, int count) {
+        if (1 != count) {
+            return NOT_A_LONG;
+        }
+        OperationTimer.count();
+        return evaluateAsLong(params[from]);
+    }
+
     @Override
     public final BigDecimal evaluate() {
         ensureParameterCount(1,1,name()+" requirs exactly one parameter");
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.server;
+
+import rahulstech.swing.calculator.metrics.LatencyHistogram;
+import rahulstech.swing.calculator.parser.Calculator;
+import rahulstech.swing.calculator.parser.EvaluationLimits;
+import rahulstech.swing.calculator.parser.SessionRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A line based TCP server sharing one {@link Calculator} among many
+ * clients. Each connection is handled by its own thread, a virtual thread
+ * when the JDK supports it, so a blocked client costs no platform thread.
+ * <p>
+ * The client sends one request per line and gets one response line per
+ * request in the same order. A client may send many requests without
+ * waiting for the responses, the responses are written together when no
+ * more requests are waiting to be read.
+ * <ul>
+ *     <li>an expression is calculated with the session of the connection,
+ *     so ANS is the last result of the same connection. The response is
+ *     {@code OK <result>} or {@code ERR <message>}</li>
+ *     <li>{@code SESSION <id>} makes the connection use the session of the
+ *     id from the {@link SessionRegistry} of the server, so a client can
+ *     continue with its ANS in a new connection, responds with ANS</li>
+ *     <li>{@code HISTORY} responds with {@code OK <n>} followed by n lines
+ *     {@code <expression> = <result>} of the recent calculations of the session</li>
+ *     <li>{@code BATCH <n>} followed by n expression lines calculates the
+ *     expressions in parallel, each with its own session, and responds
+ *     with n response lines</li>
+ *     <li>{@code STATS} responds with the number of requests and the
+ *     p50 and p99 latency</li>
+ *     <li>{@code QUIT} closes the connection</li>
+ * </ul>
+ * Backpressure: a connection over the maximum number of connections is
+ * refused with {@code ERR}, requests wait while the maximum number of
+ * requests are calculating, which stops reading from the clients, and
+ * lines and batches longer than the limits are rejected. Every expression
+ * is calculated within {@link #DEFAULT_LIMITS} or the limits set by
+ * {@link #setEvaluationLimits(EvaluationLimits)}, so one expression can not
+ * keep a thread busy for long.
+ *
+ * @author Rahul Bagchi
+ */
+public class CalculatorServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7171;
+
+    public static final EvaluationLimits DEFAULT_LIMITS = EvaluationLimits.NONE
+            .withMaxTime(Duration.ofSeconds(1))
+            .withMaxDepth(256)
+            .withMaxDigits(10000)
+            .withMaxScale(10000)
+            .withMaxOperations(100000);
+
+    private final Calculator calculator;
+    private final InetSocketAddress address;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private SessionRegistry sessions = new SessionRegistry(10000,Duration.ofMinutes(30),16);
+    private int maxConnections = 1024;
+    private int maxConcurrentRequests = Runtime.getRuntime().availableProcessors()*2;
+    private int maxLineLength = 64*1024;
+    private int maxBatchSize = 10000;
+    private int maxBatchLength = 1024*1024;
+    private EvaluationLimits evaluationLimits = DEFAULT_LIMITS;
+    private Semaphore connectionPermits;
+    private Semaphore requestPermits;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private boolean virtualThreads;
+    private Thread acceptor;
+    private volatile boolean running = false;
+
+    /**
+     * Create a server listening on the loopback address
+     *
+     * @param calculator the calculator to share
+     * @param port the port, 0 for any free port
+     */
+    public CalculatorServer(Calculator calculator, int port) {
+        this(calculator,new InetSocketAddress(InetAddress.getLoopbackAddress(),port));
+    }
+
+    /**
+     * @param calculator the calculator to share
+     * @param address the address to listen on
+     */
+    public CalculatorServer(Calculator calculator, InetSocketAddress address) {
+        if (null == calculator) {
+            throw new NullPointerException("calculator == null");
+        }
+        if (null == address) {
+            throw new NullPointerException("address == null");
+        }
+        this.calculator = calculator;
+        this.address = address;
+    }
+
+    /**
+     * @param sessions the registry of the sessions used by the command {@code SESSION}
+     */
+    public void setSessionRegistry(SessionRegistry sessions) {
+        checkNotStarted();
+        if (null == sessions) {
+            throw new NullPointerException("sessions == null");
+        }
+        this.sessions = sessions;
+    }
+
+    /**
+     * @return the registry of the sessions used by the command {@code SESSION}
+     */
+    public SessionRegistry getSessionRegistry() {
+        return sessions;
+    }
+
+    /**
+     * @param maxConnections number of connections served at the same time
+     */
+    public void setMaxConnections(int maxConnections) {
+        checkNotStarted();
+        this.maxConnections = positive(maxConnections,"maxConnections");
+    }
+
+    /**
+     * @param maxConcurrentRequests number of requests calculated at the same time
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        checkNotStarted();
+        this.maxConcurrentRequests = positive(maxConcurrentRequests,"maxConcurrentRequests");
+    }
+
+    /**
+     * @param maxLineLength the longest request line
+     */
+    public void setMaxLineLength(int maxLineLength) {
+        checkNotStarted();
+        this.maxLineLength = positive(maxLineLength,"maxLineLength");
+    }
+
+    /**
+     * @param maxBatchSize the most expressions in a batch
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        checkNotStarted();
+        this.maxBatchSize = positive(maxBatchSize,"maxBatchSize");
+    }
+
+    /**
+     * @param maxBatchLength the most characters of all the expressions in
+     *                       a batch, a longer batch is read but not kept
+     */
+    public void setMaxBatchLength(int maxBatchLength) {
+        checkNotStarted();
+        this.maxBatchLength = positive(maxBatchLength,"maxBatchLength");
+    }
+
+    /**
+     * @param limits limits of each expression calculated for the clients
+     */
+    public void setEvaluationLimits(EvaluationLimits limits) {
+        checkNotStarted();
+        if (null == limits) {
+            throw new NullPointerException("limits == null");
+        }
+        this.evaluationLimits = limits;
+    }
+
+    /**
+     * Start listening and serving the clients
+     *
+     * @throws IOException if fails to listen
+     * @throws IllegalStateException if already started
+     */
+    public synchronized void start() throws IOException {
+        checkNotStarted();
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        connectionPermits = new Semaphore(maxConnections);
+        requestPermits = new Semaphore(maxConcurrentRequests,true);
+        executor = newVirtualThreadExecutor();
+        virtualThreads = null != executor;
+        if (!virtualThreads) {
+            executor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task,"calculator-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        running = true;
+        acceptor = new Thread(this::acceptConnections,"calculator-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the port listening on, useful if started with port 0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return {@literal true} if connections are handled by virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return latency of the requests from reading to writing the response
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * Stop listening and close all the connections
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        executor.shutdown();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (SocketException closed) {
+                return;
+            }
+            catch (IOException e) {
+                continue;
+            }
+            if (!connectionPermits.tryAcquire()) {
+                Connection.refuse(socket,"too many connections");
+                continue;
+            }
+            Connection connection = new Connection(this,socket);
+            connections.add(connection);
+            try {
+                executor.execute(connection);
+            }
+            catch (RejectedExecutionException stopped) {
+                closed(connection);
+                connection.close();
+            }
+        }
+    }
+
+    Calculator calculator() {
+        return calculator;
+    }
+
+    SessionRegistry sessions() {
+        return sessions;
+    }
+
+    Semaphore requestPermits() {
+        return requestPermits;
+    }
+
+    int maxLineLength() {
+        return maxLineLength;
+    }
+
+    int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    int maxBatchLength() {
+        return maxBatchLength;
+    }
+
+    EvaluationLimits evaluationLimits() {
+        return evaluationLimits;
+    }
+
+    void closed(Connection connection) {
+        if (connections.remove(connection)) {
+            connectionPermits.release();
+        }
+    }
+
+    private void checkNotStarted() {
+        if (null != serverSocket) {
+            throw new IllegalStateException("server is already started");
+        }
+    }
+
+    private static int positive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name+" must be positive");
+        }
+        return value;
+    }
+
+    /**
+     * @return executor starting a virtual thread for each task, {@literal null}
+     *          before JDK 21
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException unsupported) {
+            return null;
+        }
+    }
+
+    /**
+     * Run a server until the process is stopped. The optional argument is the port.
+     * The metrics of the calculator are available by JMX.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Calculator calculator = new Calculator();
+        calculator.enableMetrics().registerMBean("server");
+        CalculatorServer server = new CalculatorServer(calculator,port);
+        server.start();
+        System.out.println("listening on "+server.address.getHostString()+":"+server.getPort()
+                +(server.isUsingVirtualThreads() ? " with virtual threads" : ""));
+        server.acceptor.join();
+    }
+}
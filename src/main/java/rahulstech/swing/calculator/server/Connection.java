@@ -0,0 +1,288 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.server;
+
+import rahulstech.swing.calculator.parser.CalculationResult;
+import rahulstech.swing.calculator.parser.Calculator;
+import rahulstech.swing.calculator.parser.CalculatorException;
+import rahulstech.swing.calculator.parser.Session;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Serves the requests of a single client of {@link CalculatorServer}
+ *
+ * @author Rahul Bagchi
+ */
+final class Connection implements Runnable {
+
+    private static final String BATCH = "BATCH ";
+    private static final String SESSION = "SESSION ";
+    private static final String HISTORY = "HISTORY";
+    private static final String STATS = "STATS";
+    private static final String QUIT = "QUIT";
+
+    private final CalculatorServer server;
+    private final Socket socket;
+    // used until the client chooses a session by its id
+    private final Session ownSession;
+    private String sessionId = null;
+    private final StringBuilder line = new StringBuilder();
+    // the last line read is longer than the maximum
+    private boolean tooLong = false;
+    private BufferedReader in;
+    private Writer out;
+
+    Connection(CalculatorServer server, Socket socket) {
+        this.server = server;
+        this.socket = socket;
+        this.ownSession = server.calculator().newSession();
+    }
+
+    /**
+     * Tell the client why it is not served and close the socket
+     */
+    static void refuse(Socket socket, String reason) {
+        try (Socket s = socket) {
+            s.getOutputStream().write(("ERR "+reason+"\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException ignored) {
+            // the client is gone anyway
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(),StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),StandardCharsets.UTF_8));
+            String request;
+            while (null != (request = readLine())) {
+                if (tooLong) {
+                    writeError(tooLongMessage());
+                }
+                else if (QUIT.equals(request)) {
+                    break;
+                }
+                else {
+                    serve(request);
+                }
+                // pipelined requests are answered together
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+        catch (IOException | InterruptedException closed) {
+            // the client or the server closed the connection
+        }
+        finally {
+            server.closed(this);
+            close();
+        }
+    }
+
+    void close() {
+        try {
+            socket.close();
+        }
+        catch (IOException ignored) {
+            // nothing more to do
+        }
+    }
+
+    private void serve(String request) throws IOException, InterruptedException {
+        if (request.startsWith(BATCH)) {
+            serveBatch(request.substring(BATCH.length()).trim());
+        }
+        else if (request.startsWith(SESSION)) {
+            String id = request.substring(SESSION.length()).trim();
+            if (id.isEmpty()) {
+                writeError("missing session id");
+            }
+            else {
+                sessionId = id;
+                out.write("OK "+session().answer()+"\n");
+            }
+        }
+        else if (HISTORY.equals(request)) {
+            List<CalculationResult> history = session().history();
+            out.write("OK "+history.size()+"\n");
+            for (CalculationResult entry : history) {
+                out.write(entry.expression()+" = "+entry.value()+"\n");
+            }
+        }
+        else if (STATS.equals(request)) {
+            out.write("OK "+server.latency()+" sessions="+server.sessions().size()
+                    +" hits="+server.sessions().hitCount()+" evictions="+server.sessions().evictionCount()
+                    +" expirations="+server.sessions().expirationCount()+"\n");
+        }
+        else {
+            long start = System.nanoTime();
+            String response = calculate(request);
+            out.write(response);
+            server.latency().record(System.nanoTime()-start);
+        }
+    }
+
+    private void serveBatch(String count) throws IOException, InterruptedException {
+        int size;
+        try {
+            size = Integer.parseInt(count);
+        }
+        catch (NumberFormatException e) {
+            writeError("invalid batch size "+count);
+            return;
+        }
+        if (size < 0 || size > server.maxBatchSize()) {
+            // the lines of the batch are taken as expressions
+            writeError("batch size must be between 0 and "+server.maxBatchSize());
+            return;
+        }
+        List<String> expressions = new ArrayList<>(Math.min(size,1024));
+        BitSet tooLongLines = new BitSet();
+        long length = 0;
+        for (int i = 0; i < size; i++) {
+            String expression = readLine();
+            if (null == expression) {
+                throw new IOException("connection closed in the middle of a batch");
+            }
+            length += expression.length();
+            if (length > server.maxBatchLength()) {
+                // the rest is read only to find the next request
+                expressions = null;
+            }
+            else {
+                tooLongLines.set(i,tooLong);
+                expressions.add(expression);
+            }
+        }
+        if (null == expressions) {
+            for (int i = 0; i < size; i++) {
+                writeError("batch is longer than "+server.maxBatchLength()+" characters");
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        List<CalculationResult> results;
+        server.requestPermits().acquire();
+        try {
+            results = server.calculator().calculateAll(expressions,server.evaluationLimits());
+        }
+        finally {
+            server.requestPermits().release();
+        }
+        for (int i = 0; i < size; i++) {
+            CalculationResult result = results.get(i);
+            if (tooLongLines.get(i)) {
+                writeError(tooLongMessage());
+            }
+            else if (result.isSuccess()) {
+                out.write("OK "+result.value()+"\n");
+            }
+            else {
+                writeError(result.error().getMessage());
+            }
+        }
+        server.latency().record(System.nanoTime()-start);
+    }
+
+    private String calculate(String expression) throws InterruptedException {
+        Calculator calculator = server.calculator();
+        server.requestPermits().acquire();
+        try {
+            BigDecimal value = calculator.calculate(session(),expression,server.evaluationLimits());
+            return "OK "+value+"\n";
+        }
+        catch (CalculatorException e) {
+            return error(e.getMessage());
+        }
+        catch (RuntimeException e) {
+            // like arithmetic exceptions of BigDecimal, the connection must go on
+            return error(e.getMessage());
+        }
+        finally {
+            server.requestPermits().release();
+        }
+    }
+
+    /**
+     * @return the session chosen by the client, looked up again for each
+     *          request to keep it from being removed as idle
+     */
+    private Session session() {
+        return null == sessionId ? ownSession : server.sessions().get(sessionId);
+    }
+
+    private void writeError(String message) throws IOException {
+        out.write(error(message));
+    }
+
+    private String tooLongMessage() {
+        return "line is longer than "+server.maxLineLength()+" characters";
+    }
+
+    private static String error(String message) {
+        // a message must not break the response into lines
+        return "ERR "+String.valueOf(message).replace('\n',' ').replace('\r',' ')+"\n";
+    }
+
+    /**
+     * Read a request line. A line longer than the maximum is not kept, it
+     * is read as an empty line and {@link #tooLong} is set.
+     *
+     * @return the line or {@literal null} at the end of the input
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        int c = in.read();
+        if (-1 == c) {
+            return null;
+        }
+        for (; -1 != c && '\n' != c; c = in.read()) {
+            if (line.length() <= server.maxLineLength()) {
+                // one more than the maximum for a trailing \r
+                line.append((char) c);
+            }
+            else {
+                tooLong = true;
+            }
+        }
+        int length = line.length();
+        if (length > 0 && '\r' == line.charAt(length-1)) {
+            length--;
+        }
+        if (tooLong || length > server.maxLineLength()) {
+            tooLong = true;
+            return "";
+        }
+        return line.substring(0,length);
+    }
+}
@@ -19,6 +19,7 @@ import rahulstech.swing.calculator.history.HistoryEntry;
 import rahulstech.swing.calculator.history.HistoryStorage;
 import rahulstech.swing.calculator.parser.Calculator;
 import rahulstech.swing.calculator.parser.CalculatorException;
+import rahulstech.swing.calculator.parser.EvaluationMode;
 
 import javax.swing.*;
 import java.awt.*;
@@ -93,6 +94,7 @@ public class CalculatorWindow extends javax.swing.JFrame {
         btnRemainder = new javax.swing.JButton();
         btnComma = new javax.swing.JButton();
         btnHistory = new javax.swing.JButton();
+        chkFastMode = new javax.swing.JCheckBox();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
         setTitle("Calculator");
@@ -477,6 +479,14 @@ public class CalculatorWindow extends javax.swing.JFrame {
             }
         });
 
+        chkFastMode.setText("fast (15 digits)");
+        chkFastMode.setToolTipText("calculate with double precision, exact calculation is used when the result may be inaccurate");
+        chkFastMode.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                onClickFastMode(evt);
+            }
+        });
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -488,7 +498,9 @@ public class CalculatorWindow extends javax.swing.JFrame {
                     .addComponent(result, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(btnPanel, javax.swing.GroupLayout.DEFAULT_SIZE, 492, Short.MAX_VALUE)))
             .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
-                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addContainerGap()
+                .addComponent(chkFastMode)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addComponent(btnHistory)
                 .addContainerGap())
         );
@@ -496,7 +508,9 @@ public class CalculatorWindow extends javax.swing.JFrame {
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(layout.createSequentialGroup()
                 .addContainerGap()
-                .addComponent(btnHistory)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(chkFastMode)
+                    .addComponent(btnHistory))
                 .addGap(18, 18, 18)
                 .addComponent(expressionInput, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addGap(18, 18, 18)
@@ -638,6 +652,14 @@ public class CalculatorWindow extends javax.swing.JFrame {
         historyWindow.setVisible(true);
     }//GEN-LAST:event_onClickHistory
 
+    /**
+     * Switch between exact and fast double calculation
+     */
+    private void onClickFastMode(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_onClickFastMode
+        calculator.setEvaluationMode(chkFastMode.isSelected()
+                ? EvaluationMode.FAST_DOUBLE : EvaluationMode.EXACT);
+    }//GEN-LAST:event_onClickFastMode
+
     /**
      * Adds text to the expression input field. If more than
      * one charatcer is selected then it will replace those with
@@ -790,6 +812,7 @@ public class CalculatorWindow extends javax.swing.JFrame {
     private javax.swing.JButton btnRemainder;
     private javax.swing.JButton btnSqrt;
     private javax.swing.JButton btnSquare;
+    private javax.swing.JCheckBox chkFastMode;
     private javax.swing.JTextField expressionInput;
     private javax.swing.JLabel result;
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Each line of the input must get its result on the same line of the
+ * output, in parallel mode too, and the exit status must tell whether
+ * any line failed.
+ *
+ * @author Rahul Bagchi
+ */
+class CalculatorCliTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resultsOnSameLines() throws IOException {
+        Path input = write("1+2\r\n\n   \nANS+5\n2/0\n1+)\n(10^999999999)^999999999\n3*4");
+        Path output = directory.resolve("output.txt");
+        assertEquals(1,CalculatorCli.run(new String[]{"-i",input.toString(),"-o",output.toString()}));
+        assertEquals(Arrays.asList("3","","","5","error: can not divide with 0","error: unexpected token Token(SYMBOL=)@2)",
+                "error: Overflow","12"),Files.readAllLines(output,StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void allLinesCalculated() throws IOException {
+        Path input = write("1+2\n\n4*5\n");
+        Path output = directory.resolve("output.txt");
+        assertEquals(0,CalculatorCli.run(new String[]{"--input",input.toString(),"--output",output.toString()}));
+        assertEquals(Arrays.asList("3","","20"),Files.readAllLines(output,StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void tooLongLines() throws IOException {
+        Path input = write("1+2+3\n1+2+30\r\n"+LineReaderTest.repeat('1',100000)+"\n1+2\n");
+        for (String threads : new String[]{"1","4"}) {
+            Path output = directory.resolve("output"+threads+".txt");
+            assertEquals(1,CalculatorCli.run(new String[]{"-i",input.toString(),"-o",output.toString(),
+                    "--max-line","5","-p",threads}));
+            assertEquals(Arrays.asList("6","error: line is longer than 5 characters",
+                    "error: line is longer than 5 characters","3"),Files.readAllLines(output,StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void parallelKeepsLineOrder() throws IOException {
+        // several batches, with failing and blank lines between
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            if (0 == i % 97) {
+                lines.add("");
+                expected.add("");
+            }
+            else if (0 == i % 31) {
+                lines.add(i+"/0");
+                expected.add("error: can not divide with 0");
+            }
+            else {
+                lines.add(i+"*3+ANS");
+                expected.add(Integer.toString(i*3));
+            }
+        }
+        Path input = directory.resolve("input.txt");
+        Files.write(input,lines,StandardCharsets.UTF_8);
+        Path sequential = directory.resolve("sequential.txt");
+        Path parallel = directory.resolve("parallel.txt");
+        assertEquals(1,CalculatorCli.run(new String[]{"-i",input.toString(),"-o",sequential.toString()}));
+        assertEquals(1,CalculatorCli.run(new String[]{"-i",input.toString(),"-o",parallel.toString(),"-p","4"}));
+        assertEquals(expected,Files.readAllLines(parallel,StandardCharsets.UTF_8));
+        assertEquals(Files.readAllLines(sequential,StandardCharsets.UTF_8),
+                Files.readAllLines(parallel,StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void invalidArguments() {
+        assertEquals(2,CalculatorCli.run(new String[]{"--unknown"}));
+        assertEquals(2,CalculatorCli.run(new String[]{"-p","many"}));
+        assertEquals(2,CalculatorCli.run(new String[]{"-i"}));
+        assertEquals(2,CalculatorCli.run(new String[]{"-i",directory.resolve("missing.txt").toString()}));
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = directory.resolve("input.txt");
+        Files.write(file,text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
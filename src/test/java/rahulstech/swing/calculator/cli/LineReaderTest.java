@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lines must be read whole whatever the buffers split, and written back
+ * the same.
+ *
+ * @author Rahul Bagchi
+ */
+class LineReaderTest {
+
+    // size of the buffers of the reader and the writer
+    private static final int BUFFER_SIZE = 64*1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void characterSplitByBuffer() throws IOException {
+        // the three bytes of the euro sign are split by the end of the first buffer
+        String first = repeat('1',BUFFER_SIZE-1)+"\u20ac2";
+        String second = "\u00e9\u4e2d";
+        Path file = write(first+"\n"+second+"\r\n");
+        try (LineReader reader = reader(file,2*BUFFER_SIZE)) {
+            assertEquals(first,reader.readLine());
+            assertEquals(second,reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void lineEnds() throws IOException {
+        Path file = write("1+1\r\n\n  \r\n2\r3\nlast");
+        try (LineReader reader = reader(file,100)) {
+            assertEquals(Arrays.asList("1+1","","  ","2\r3","last"),readAll(reader));
+        }
+    }
+
+    @Test
+    void tooLongLine() throws IOException {
+        // longer than the buffer too, so it is never kept whole
+        Path file = write("12345\n123456\r\n"+repeat('7',3*BUFFER_SIZE)+"\n1234\r\n");
+        try (LineReader reader = reader(file,5)) {
+            assertEquals("12345",reader.readLine());
+            assertFalse(reader.isTooLong());
+            assertEquals("",reader.readLine());
+            assertTrue(reader.isTooLong());
+            assertEquals("",reader.readLine());
+            assertTrue(reader.isTooLong());
+            assertEquals("1234",reader.readLine());
+            assertFalse(reader.isTooLong());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void writtenLinesAreReadBack() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add(i+"\u20ac\u00e9"+repeat('x',i % 13));
+        }
+        Path file = directory.resolve("lines.txt");
+        try (LineWriter writer = new LineWriter(FileChannel.open(file,StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE),StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.writeLine(line);
+            }
+        }
+        try (LineReader reader = reader(file,100)) {
+            assertEquals(lines,readAll(reader));
+        }
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = directory.resolve("input.txt");
+        Files.write(file,text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static LineReader reader(Path file, int maxLineLength) throws IOException {
+        return new LineReader(FileChannel.open(file,StandardOpenOption.READ),StandardCharsets.UTF_8,maxLineLength);
+    }
+
+    private static List<String> readAll(LineReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while (null != (line = reader.readLine())) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars,c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rotation of the files and what happens to the lines when the writer
+ * can not keep up or the file can not be written.
+ *
+ * @author Rahul Bagchi
+ */
+class AsyncRotatingAppenderTest {
+
+    // each line is 10 bytes with the separator
+    private static final int LINE_SIZE = 9+System.lineSeparator().length();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rotatesToBackups() throws IOException {
+        Path file = directory.resolve("slow.log");
+        AsyncRotatingAppender appender = new AsyncRotatingAppender(file,10*LINE_SIZE,3,1024);
+        for (int i = 0; i < 55; i++) {
+            assertTrue(appender.append(line(i)));
+        }
+        appender.close();
+        assertEquals(lines(50,55),read(file));
+        assertEquals(lines(40,50),read(file.resolveSibling("slow.log.1")));
+        assertEquals(lines(30,40),read(file.resolveSibling("slow.log.2")));
+        assertEquals(lines(20,30),read(file.resolveSibling("slow.log.3")));
+        assertFalse(Files.exists(file.resolveSibling("slow.log.4")));
+        assertEquals(0,appender.dropped());
+        assertEquals(0,appender.failures());
+    }
+
+    @Test
+    void rotatesWithoutBackups() throws IOException {
+        Path file = directory.resolve("slow.log");
+        AsyncRotatingAppender appender = new AsyncRotatingAppender(file,10*LINE_SIZE,0,1024);
+        for (int i = 0; i < 25; i++) {
+            appender.append(line(i));
+        }
+        appender.close();
+        assertEquals(lines(20,25),read(file));
+        assertFalse(Files.exists(file.resolveSibling("slow.log.1")));
+    }
+
+    @Test
+    void appendsToExistingFile() throws IOException {
+        Path file = directory.resolve("slow.log");
+        Files.write(file,lines(0,8),StandardCharsets.UTF_8);
+        AsyncRotatingAppender appender = new AsyncRotatingAppender(file,10*LINE_SIZE,1,1024);
+        for (int i = 8; i < 12; i++) {
+            appender.append(line(i));
+        }
+        appender.close();
+        assertEquals(lines(10,12),read(file));
+        assertEquals(lines(0,10),read(file.resolveSibling("slow.log.1")));
+    }
+
+    @Test
+    void droppedWhenFullOrClosed() throws IOException {
+        Path file = directory.resolve("slow.log");
+        AsyncRotatingAppender appender = new AsyncRotatingAppender(file,Long.MAX_VALUE,0,2);
+        int added = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (appender.append(line(i))) {
+                added++;
+            }
+        }
+        // close must not wait for room in the full queue
+        assertTimeoutPreemptively(Duration.ofSeconds(10),appender::close);
+        assertFalse(appender.append(line(0)));
+        List<String> written = read(file);
+        assertEquals(100001,written.size()+appender.dropped());
+        assertTrue(written.size() <= added);
+        // the lines written are in the order added
+        for (int i = 1; i < written.size(); i++) {
+            assertTrue(index(written.get(i-1)) < index(written.get(i)),written.get(i));
+        }
+    }
+
+    @Test
+    void goesOnAfterFailure() throws IOException, InterruptedException {
+        // a file in place of the directory makes opening the log fail
+        Path blocker = directory.resolve("logs");
+        Files.write(blocker,new byte[0]);
+        Path file = blocker.resolve("slow.log");
+        AsyncRotatingAppender appender = new AsyncRotatingAppender(file,Long.MAX_VALUE,0,1024);
+        appender.append(line(0));
+        appender.append(line(1));
+        for (int i = 0; i < 1000 && appender.failures() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2,appender.failures());
+        Files.delete(blocker);
+        appender.append(line(2));
+        appender.close();
+        assertEquals(Arrays.asList(line(2)),read(file));
+        assertEquals(2,appender.failures());
+    }
+
+    private static String line(int index) {
+        return String.format("line-%04d",index);
+    }
+
+    private static int index(String line) {
+        return Integer.parseInt(line.substring("line-".length()));
+    }
+
+    private static List<String> lines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            lines.add(line(i));
+        }
+        return lines;
+    }
+
+    private static List<String> read(Path file) throws IOException {
+        return Files.readAllLines(file,StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The lines of {@link SlowCalculationLog}: only slow calculations, a
+ * sample of them if asked, with the expression escaped, truncated or hashed.
+ *
+ * @author Rahul Bagchi
+ */
+class SlowCalculationLogTest {
+
+    private static final long SLOW = Duration.ofMillis(250).toNanos();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void onlySlowCalculations() throws IOException {
+        SlowCalculationLog log = new SlowCalculationLog(directory.resolve("slow.log"));
+        Map<CalculatorMetrics.Phase,Long> phases = new EnumMap<>(CalculatorMetrics.Phase.class);
+        phases.put(CalculatorMetrics.Phase.TOKENIZE,0L);
+        phases.put(CalculatorMetrics.Phase.EVALUATE,Duration.ofMillis(249).toNanos()+5000);
+        log.record("2^99999",SLOW,phases,"^",Duration.ofMillis(248).toNanos(),Thread.currentThread());
+        log.record("1+1",Duration.ofMillis(100).toNanos(),phases,"+",1000,Thread.currentThread());
+        log.record(null,SLOW,phases,null,0,Thread.currentThread());
+        List<String> lines = close(log);
+        assertEquals(2,lines.size());
+        assertTrue(lines.get(0).endsWith(" thread="+Thread.currentThread().getName()
+                +" total=250.000ms evaluate=249.005ms slowest=^ 248.000ms expression=\"2^99999\""),lines.get(0));
+        assertTrue(lines.get(1).endsWith(" evaluate=249.005ms expression=-"),lines.get(1));
+        assertEquals(2,log.slowCount());
+    }
+
+    @Test
+    void expressionEscapedAndTruncated() throws IOException {
+        SlowCalculationLog log = new SlowCalculationLog(directory.resolve("slow.log"));
+        log.record("1+\"2\"\t\\",SLOW,phases(),null,0,Thread.currentThread());
+        log.setMaxExpressionLength(5);
+        log.record("1234567890",SLOW,phases(),null,0,Thread.currentThread());
+        log.record("12345",SLOW,phases(),null,0,Thread.currentThread());
+        List<String> lines = close(log);
+        assertTrue(lines.get(0).endsWith(" expression=\"1+\\\"2\\\" \\\\\""),lines.get(0));
+        assertTrue(lines.get(1).endsWith(" expression=\"12345\"...(10 chars)"),lines.get(1));
+        assertTrue(lines.get(2).endsWith(" expression=\"12345\""),lines.get(2));
+    }
+
+    @Test
+    void expressionHashed() throws IOException {
+        SlowCalculationLog log = new SlowCalculationLog(directory.resolve("slow.log"));
+        log.setHashExpressions(true);
+        log.record("2^99999",SLOW,phases(),null,0,Thread.currentThread());
+        List<String> lines = close(log);
+        assertTrue(lines.get(0).endsWith(
+                " expression=sha256:cb7d1643c59ff7fba018c44c2fefb56342f0a6de16f8ffb784a3ea9a94189a80"),lines.get(0));
+    }
+
+    @Test
+    void sampled() throws IOException {
+        SlowCalculationLog log = new SlowCalculationLog(directory.resolve("slow.log"));
+        log.setSamplingRate(0.25);
+        for (int i = 0; i < 800; i++) {
+            log.record("1+"+i,SLOW,phases(),null,0,Thread.currentThread());
+        }
+        List<String> lines = close(log);
+        assertEquals(800,log.slowCount());
+        // about 200, far more than 10 standard deviations away is a bug
+        assertTrue(lines.size() > 80 && lines.size() < 320,Integer.toString(lines.size()));
+        assertEquals(0,log.droppedCount());
+    }
+
+    private static Map<CalculatorMetrics.Phase,Long> phases() {
+        return new EnumMap<>(CalculatorMetrics.Phase.class);
+    }
+
+    private List<String> close(SlowCalculationLog log) throws IOException {
+        log.close();
+        assertEquals(0,log.failureCount());
+        return Files.readAllLines(directory.resolve("slow.log"),StandardCharsets.UTF_8);
+    }
+}
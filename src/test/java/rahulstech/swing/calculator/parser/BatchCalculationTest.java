@@ -0,0 +1,136 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.OperationException;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The results of a batch must be in the order of the expressions, and an
+ * expression which fails must fail alone, whatever runs the batch.
+ *
+ * @author Rahul Bagchi
+ */
+class BatchCalculationTest {
+
+    // more than a chunk, so the batch is split between threads
+    private static final int SIZE = 500;
+
+    @Test
+    void commonPool() {
+        assertResults(new Calculator().calculateAll(expressions()));
+    }
+
+    @Test
+    void forkJoinPool() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            assertResults(new Calculator().calculateAll(expressions(),pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void executor() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertResults(new Calculator().calculateAll(expressions(),executor));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void stream() {
+        assertResults(new Calculator().calculateAll(expressions().stream()));
+    }
+
+    @Test
+    void cachedWithLimits() {
+        Calculator calculator = new Calculator();
+        calculator.enableCache(8);
+        assertResults(calculator.calculateAll(expressions(),EvaluationLimits.NONE));
+    }
+
+    /**
+     * @return valid expressions mixed with expressions failing in different ways
+     */
+    private static List<String> expressions() {
+        List<String> expressions = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            switch (i % 5) {
+                case 1:
+                    expressions.add("2/0");
+                    break;
+                case 2:
+                    expressions.add("1+)");
+                    break;
+                case 3:
+                    // BigDecimal throws ArithmeticException
+                    expressions.add("(10^999999999)^999999999");
+                    break;
+                default:
+                    // ANS is 0 in every expression
+                    expressions.add("ANS+"+i+"*2");
+            }
+        }
+        return expressions;
+    }
+
+    private static void assertResults(List<CalculationResult> results) {
+        List<String> expressions = expressions();
+        assertEquals(SIZE,results.size());
+        for (int i = 0; i < SIZE; i++) {
+            CalculationResult result = results.get(i);
+            assertEquals(expressions.get(i),result.expression());
+            switch (i % 5) {
+                case 1:
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.error() instanceof OperationException);
+                    assertEquals("can not divide with 0",result.error().getMessage());
+                    break;
+                case 2:
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.error() instanceof ParseException);
+                    break;
+                case 3:
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.error().getCause() instanceof ArithmeticException);
+                    assertNull(result.value());
+                    break;
+                default:
+                    assertTrue(result.isSuccess(),result.expression());
+                    assertEquals(BigDecimal.valueOf(2L*i),result.value());
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The generated code must give the same result as the interpreter, for
+ * integer expressions evaluated with longs too, and must call the
+ * interpreter only for the parts of the expression it can not generate.
+ *
+ * @author Rahul Bagchi
+ */
+class BytecodeCompilerTest {
+
+    private static final String[] VARIABLES = {"x","y"};
+
+    @Test
+    void integerExpressionReachesGeneratedCode() {
+        Calculator calculator = new Calculator();
+        calculator.setCompileThreshold(5);
+        CompiledExpression expression = calculator.compile("ANS*3+x-REMAINDER(x,4)","x");
+        BigDecimal[] values = {BigDecimal.valueOf(10)};
+        for (int i = 1; i < 5; i++) {
+            assertEquals(BigDecimal.valueOf(3L*i+8),expression.evaluate(BigDecimal.valueOf(i),values));
+            assertFalse(expression.isCompiledToBytecode());
+        }
+        assertEquals(BigDecimal.valueOf(23),expression.evaluate(BigDecimal.valueOf(5),values));
+        assertTrue(expression.isCompiledToBytecode());
+        assertEquals(BigDecimal.valueOf(26),expression.evaluate(BigDecimal.valueOf(6),values));
+    }
+
+    @Test
+    void largeExpressionIsPartlyGenerated() {
+        StringBuilder builder = new StringBuilder("x");
+        for (int i = 0; i < 1500; i++) {
+            builder.insert(0,"(SQRT(y*y)+").append(")*1");
+        }
+        String expression = builder.toString();
+        CompiledExpression generated = compile(0,false,expression);
+        CompiledExpression interpreted = compile(-1,false,expression);
+        assertTrue(generated.isCompiledToBytecode());
+        assertMatches(interpreted,generated,BigDecimal.ONE,BigDecimal.valueOf(2),BigDecimal.valueOf(3));
+        assertMatches(interpreted,generated,BigDecimal.ONE,new BigDecimal("0.5"),BigDecimal.valueOf(3));
+    }
+
+    @Test
+    void randomExpressionsMatchInterpreter() {
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            boolean optimize = random.nextBoolean();
+            String expression = randomExpression(random,1+random.nextInt(i % 10 == 0 ? 7 : 4),
+                    1+random.nextInt(i % 10 == 0 ? 10 : 4));
+            CompiledExpression generated;
+            CompiledExpression interpreted;
+            try {
+                generated = compile(0,optimize,expression);
+                interpreted = compile(-1,optimize,expression);
+            }
+            catch (CalculatorException e) {
+                continue;
+            }
+            assertTrue(generated.isCompiledToBytecode(),expression);
+            if (random.nextBoolean()) {
+                assertMatches(interpreted,generated,BigDecimal.valueOf(random.nextInt(50)),
+                        BigDecimal.valueOf(random.nextInt(30)-5),BigDecimal.valueOf(7));
+            }
+            else {
+                assertMatches(interpreted,generated,new BigDecimal("2.25"),
+                        BigDecimal.valueOf(random.nextInt(30)-5),new BigDecimal("0.5"));
+            }
+        }
+    }
+
+    private static CompiledExpression compile(int threshold, boolean optimize, String expression) {
+        Calculator calculator = new Calculator();
+        calculator.setCompileThreshold(threshold);
+        calculator.setOptimizationEnabled(optimize);
+        return calculator.compile(expression,VARIABLES);
+    }
+
+    private static void assertMatches(CompiledExpression expected, CompiledExpression actual,
+                                      BigDecimal answer, BigDecimal... values) {
+        // evaluated twice for the shared subexpressions remembering their value
+        for (int i = 0; i < 2; i++) {
+            assertEquals(result(expected,answer,values),result(actual,answer,values),actual.expression());
+        }
+    }
+
+    private static String result(CompiledExpression expression, BigDecimal answer, BigDecimal[] values) {
+        try {
+            return expression.evaluate(answer,values).toString();
+        }
+        catch (RuntimeException e) {
+            return e.getClass().getName()+": "+e.getMessage();
+        }
+    }
+
+    private static String randomExpression(Random random, int depth, int width) {
+        if (depth <= 0 || 0 == random.nextInt(4)) {
+            switch (random.nextInt(5)) {
+                case 0: return "ANS";
+                case 1: return "x";
+                case 2: return "y";
+                case 3: return Integer.toString(random.nextInt(20));
+                default: return (1+random.nextInt(9))+".5";
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        switch (random.nextInt(5)) {
+            case 0:
+                return "SQRT("+randomExpression(random,depth-1,width)+")";
+            case 1:
+                return "REMAINDER("+randomExpression(random,depth-1,width)+","
+                        +randomExpression(random,depth-1,width)+")";
+            case 2:
+                builder.append("AVG(");
+                for (int i = 1+random.nextInt(width); i >= 0; i--) {
+                    builder.append(randomExpression(random,depth-1,width)).append(i > 0 ? "," : ")");
+                }
+                return builder.toString();
+            default:
+                builder.append("(").append(randomExpression(random,depth-1,width));
+                for (int i = random.nextInt(width); i >= 0; i--) {
+                    builder.append("+-*/%".charAt(random.nextInt(5))).append(randomExpression(random,depth-1,width));
+                }
+                return builder.append(")").toString();
+        }
+    }
+}
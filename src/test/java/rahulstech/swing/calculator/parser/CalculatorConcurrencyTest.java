@@ -0,0 +1,118 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many threads share one {@link Calculator}, each with its own session.
+ * Every result and the ANS of every session must be the same as if the
+ * threads calculated one after another.
+ *
+ * @author Rahul Bagchi
+ */
+class CalculatorConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 3000;
+    // expressions shared by all the threads, more than a small cache can keep
+    private static final int SHARED_EXPRESSIONS = 50;
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 40, 1000})
+    void sessionsAreIsolated(int cacheSize) throws InterruptedException {
+        Calculator calculator = new Calculator();
+        ExpressionCache cache = 0 == cacheSize ? null : calculator.enableCache(cacheSize);
+        // compiled expressions are shared, so they switch tiers while in use
+        calculator.setCompileThreshold(10);
+
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    calculate(calculator,id,failures);
+                }
+                catch (Throwable ex) {
+                    failures.add("thread "+id+": "+ex);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty(),() -> failures.size()+" failures, first: "+failures.peek());
+        if (null != cache) {
+            // each calculation looks up the cache once
+            assertEquals((long) THREADS*(ITERATIONS+1),cache.hitCount()+cache.missCount());
+            assertTrue(cache.size() <= cacheSize,cache::toString);
+        }
+    }
+
+    private static void calculate(Calculator calculator, int id, Queue<String> failures) {
+        Session session = calculator.newSession();
+        BigDecimal expected = BigDecimal.valueOf(id);
+        check(calculator.calculate(session,String.valueOf(id)),expected,session,id,failures);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String expression;
+            switch ((i+id)%4) {
+                case 0:
+                    expression = "ANS+1";
+                    expected = expected.add(BigDecimal.ONE);
+                    break;
+                case 1:
+                    expression = "ANS*2-ANS";
+                    break;
+                case 2:
+                    // known to this thread only
+                    expression = "(ANS+"+id+")-"+id;
+                    break;
+                default:
+                    int n = i%SHARED_EXPRESSIONS;
+                    expression = "ANS+"+n+"*2-"+(2*n);
+            }
+            check(calculator.calculate(session,expression),expected,session,id,failures);
+        }
+    }
+
+    private static void check(BigDecimal result, BigDecimal expected, Session session, int id,
+                              Queue<String> failures) {
+        if (0 != expected.compareTo(result)) {
+            failures.add("thread "+id+": expected "+expected+" but was "+result);
+        }
+        else if (0 != expected.compareTo(session.answer())) {
+            failures.add("thread "+id+": expected ANS "+expected+" but was "+session.answer());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expressions nested far deeper than the stack allows recursion must be
+ * calculated in every mode, with the same result as a shallow expression.
+ *
+ * @author Rahul Bagchi
+ */
+class DeepNestingTest {
+
+    private static final int LEVELS = 20000;
+
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+
+    @Test
+    void calculate() {
+        Calculator calculator = new Calculator();
+        Session session = calculator.newSession();
+        calculator.calculate(session,"2");
+        assertEquals(answerPlusLevels(2),calculator.calculate(session,deep("ANS")));
+        assertEquals(answerPlusLevels(LEVELS/2+2),calculator.calculate(session,deep("ANS")));
+    }
+
+    @Test
+    void calculateReader() {
+        Calculator calculator = new Calculator();
+        assertEquals(answerPlusLevels(0),calculator.calculate(new StringReader(deep("ANS"))));
+    }
+
+    @Test
+    void compileAndEvaluate() {
+        CompiledExpression expression = new Calculator().compile(deep("ANS"));
+        assertEquals(answerPlusLevels(7),expression.evaluate(BigDecimal.valueOf(7)));
+        assertEquals(answerPlusLevels(HALF),expression.evaluate(HALF));
+    }
+
+    @Test
+    void cache() {
+        Calculator calculator = new Calculator();
+        calculator.enableCache(4);
+        Session session = calculator.newSession();
+        assertEquals(answerPlusLevels(0),calculator.calculate(session,deep("ANS")));
+        assertEquals(answerPlusLevels(LEVELS/2),calculator.calculate(session,deep("ANS")));
+    }
+
+    @Test
+    void fastDouble() {
+        CompiledExpression expression = new Calculator().compile(deep("ANS"));
+        assertEquals(answerPlusLevels(3),expression.evaluate(BigDecimal.valueOf(3),EvaluationMode.FAST_DOUBLE));
+        assertEquals(0,answerPlusLevels(HALF).compareTo(expression.evaluate(HALF,EvaluationMode.FAST_DOUBLE)));
+    }
+
+    @Test
+    void calculateWithStats() {
+        Calculator calculator = new Calculator();
+        CalculationResult result = calculator.calculateWithStats(calculator.newSession(),deep("ANS"));
+        assertEquals(answerPlusLevels(0),result.value());
+        assertEquals(LEVELS,result.stats().operationCount());
+    }
+
+    @Test
+    void optimized() {
+        Calculator calculator = new Calculator();
+        calculator.setOptimizationEnabled(true);
+        CompiledExpression expression = calculator.compile(deep("ANS+(1+2)*3"));
+        assertEquals(answerPlusLevels(14),expression.evaluate(BigDecimal.valueOf(5)));
+        assertEquals(answerPlusLevels(HALF.add(BigDecimal.valueOf(9))),expression.evaluate(HALF));
+    }
+
+    @Test
+    void bytecode() {
+        Calculator calculator = new Calculator();
+        calculator.setCompileThreshold(1);
+        CompiledExpression expression = calculator.compile(deep("ANS"));
+        assertEquals(answerPlusLevels(4),expression.evaluate(BigDecimal.valueOf(4)));
+        assertTrue(expression.isCompiledToBytecode());
+        assertEquals(answerPlusLevels(4),expression.evaluate(BigDecimal.valueOf(4)));
+        assertEquals(answerPlusLevels(HALF),expression.evaluate(HALF));
+    }
+
+    @Test
+    void limits() {
+        Calculator calculator = new Calculator();
+        Session session = calculator.newSession();
+        calculator.calculate(session,"6");
+        assertEquals(answerPlusLevels(6),calculator.calculate(session,deep("ANS"),EvaluationLimits.NONE));
+    }
+
+    @Test
+    void column() {
+        CompiledExpression expression = new Calculator().compile(deep("x"),"x");
+        double[] in = {1,2.5,-3};
+        double[] out = new double[in.length];
+        expression.evaluateColumn(in,out);
+        for (int i = 0; i < in.length; i++) {
+            assertEquals(in[i]+LEVELS/2,out[i]);
+        }
+        BigDecimal[] exactIn = {BigDecimal.ONE,HALF};
+        BigDecimal[] exactOut = new BigDecimal[exactIn.length];
+        expression.evaluateColumn(exactIn,exactOut);
+        assertEquals(answerPlusLevels(1),exactOut[0]);
+        assertEquals(answerPlusLevels(HALF),exactOut[1]);
+    }
+
+    @Test
+    void text() {
+        CompiledExpression expression = new Calculator().compile(deep("ANS"));
+        // the text of a chain is in parentheses like the text of the expression
+        assertEquals("CompiledExpression("+deep("ANS")+")",expression.toString());
+    }
+
+    /**
+     * @return the expression nested {@link #LEVELS} times around the core,
+     *          alternately adding 1 and taking a remainder which does not change
+     *          the value, so its value is the core plus half the levels
+     */
+    private static String deep(String core) {
+        StringBuilder builder = new StringBuilder(LEVELS*16);
+        for (int i = 0; i < LEVELS; i += 2) {
+            builder.append("(1+REMAINDER(");
+        }
+        builder.append(core);
+        for (int i = 0; i < LEVELS; i += 2) {
+            builder.append(",1000000))");
+        }
+        return builder.toString();
+    }
+
+    private static BigDecimal answerPlusLevels(long answer) {
+        return BigDecimal.valueOf(answer+LEVELS/2);
+    }
+
+    private static BigDecimal answerPlusLevels(BigDecimal answer) {
+        return answer.add(BigDecimal.valueOf(LEVELS/2));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.Operation;
+import rahulstech.swing.calculator.parser.operation.UniFunction;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.MULTIPLICATIVE;
+
+/**
+ * Every registered name must be found in the {@link DispatchTable}, even
+ * names with the same {@link String#hashCode()} and more names than can
+ * be placed without sharing a slot.
+ *
+ * @author Rahul Bagchi
+ */
+class DispatchTableTest {
+
+    @Test
+    void namesWithSameStringHash() {
+        assertEquals("Ea".hashCode(),"FB".hashCode());
+        Calculator calculator = new Calculator();
+        calculator.registerOperation(function("Ea"));
+        calculator.registerOperation(function("FB"));
+        assertEquals(0,BigDecimal.valueOf(3).compareTo(calculator.calculate("Ea(1)+FB(2)")));
+    }
+
+    @Test
+    void manyNames() {
+        Random random = new Random(7);
+        List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder("F");
+            for (int j = random.nextInt(6); j >= 0; j--) {
+                name.append((char) ('A'+random.nextInt(26)));
+            }
+            name.append(i);
+            operations.add(function(name.toString()));
+        }
+        DispatchTable table = new DispatchTable(operations);
+        for (int i = 0; i < operations.size(); i++) {
+            String name = operations.get(i).name();
+            assertSame(operations.get(i),table.operation(find(table,name)),name);
+            assertEquals(-1,find(table,name+"X"),name);
+        }
+    }
+
+    private static int find(DispatchTable table, String name) {
+        return table.find(new BufferTokenStream(new Tokenizer(name).tokenizeToBuffer()));
+    }
+
+    private static Operation function(String name) {
+        return new UniFunction(name,MULTIPLICATIVE) {
+            @Override
+            protected BigDecimal evaluate(BigDecimal param) {
+                return param;
+            }
+        };
+    }
+}
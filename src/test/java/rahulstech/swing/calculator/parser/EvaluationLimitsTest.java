@@ -0,0 +1,125 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Every limit of {@link EvaluationLimits} must stop the calculation, whether
+ * it is calculated while parsing, taken from the cache or compiled before.
+ *
+ * @author Rahul Bagchi
+ */
+class EvaluationLimitsTest {
+
+    enum Way {
+        WHILE_PARSING,
+        CACHED,
+        COMPILED
+    }
+
+    @ParameterizedTest
+    @EnumSource(Way.class)
+    void depth(Way way) {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxDepth(10);
+        assertEquals(BigDecimal.valueOf(3),calculate(way,"((((((((((1+2))))))))))",limits));
+        assertExceeded(way,"(((((((((((1+2)))))))))))",limits,EvaluationLimits.Limit.DEPTH);
+        assertExceeded(way,"SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(SQRT(1)))))))))))",limits,
+                EvaluationLimits.Limit.DEPTH);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Way.class)
+    void operations(Way way) {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxOperations(5);
+        assertEquals(BigDecimal.valueOf(6),calculate(way,"1+1+1+1+1+1",limits));
+        assertExceeded(way,"1+1+1+1+1+1+1",limits,EvaluationLimits.Limit.OPERATIONS);
+        assertExceeded(way,"AVG(1,2)*SQRT(4)-2^2+REMAINDER(5,3)/1",limits,EvaluationLimits.Limit.OPERATIONS);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Way.class)
+    void digits(Way way) {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxDigits(100);
+        assertEquals(0,BigDecimal.TEN.pow(99).compareTo(calculate(way,"10^99",limits)));
+        assertExceeded(way,"9^999999999",limits,EvaluationLimits.Limit.DIGITS);
+        assertExceeded(way,"10^99*10",limits,EvaluationLimits.Limit.DIGITS);
+        // integers fitting in a long
+        assertExceeded(way,"123456*1000",EvaluationLimits.NONE.withMaxDigits(8),EvaluationLimits.Limit.DIGITS);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Way.class)
+    void scale(Way way) {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxScale(5);
+        assertEquals(new BigDecimal("0.03125"),calculate(way,"1/32",limits));
+        assertExceeded(way,"1/3",limits,EvaluationLimits.Limit.SCALE);
+        assertExceeded(way,"0.001*0.001",limits,EvaluationLimits.Limit.SCALE);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Way.class)
+    void time(Way way) {
+        StringBuilder expression = new StringBuilder("SQRT(2)");
+        for (int i = 0; i < 20000; i++) {
+            expression.append("+SQRT(").append(i+3).append(')');
+        }
+        assertExceeded(way,expression.toString(),EvaluationLimits.NONE.withMaxTime(Duration.ofMillis(1)),
+                EvaluationLimits.Limit.TIME);
+    }
+
+    private static void assertExceeded(Way way, String expression, EvaluationLimits limits,
+                                       EvaluationLimits.Limit limit) {
+        LimitExceededException e = assertThrows(LimitExceededException.class,
+                () -> calculate(way,expression,limits),expression);
+        assertEquals(limit,e.getLimit(),expression);
+    }
+
+    /**
+     * Calculate twice the way asked, the second calculation takes the
+     * expression from the cache, and the session must be the same
+     */
+    private static BigDecimal calculate(Way way, String expression, EvaluationLimits limits) {
+        Calculator calculator = new Calculator();
+        Session session = calculator.newSession();
+        BigDecimal value;
+        switch (way) {
+            case CACHED:
+                calculator.enableCache(4);
+                calculator.calculate(session,expression);
+                value = calculator.calculate(session,expression,limits);
+                break;
+            case COMPILED:
+                // evaluated many times, as generated code would not check the limits
+                calculator.setCompileThreshold(1);
+                CompiledExpression compiled = calculator.compile(expression);
+                calculator.evaluate(session,compiled);
+                value = calculator.evaluate(session,compiled,limits);
+                break;
+            default:
+                value = calculator.calculate(session,expression,limits);
+        }
+        assertEquals(value,session.answer());
+        return value;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * {@link Calculator#calculateWithStats(Session, String)} must calculate
+ * like {@link Calculator#calculate(Session, String)} and count the
+ * operations really performed.
+ *
+ * @author Rahul Bagchi
+ */
+class EvaluationStatsTest {
+
+    @Test
+    void calculatedWhileParsing() {
+        Calculator calculator = new Calculator();
+        EvaluationStats stats = stats(calculator,"1+2*3-AVG(4,6)",BigDecimal.valueOf(2));
+        assertEquals(12,stats.tokenCount());
+        // no tree is built
+        assertEquals(0,stats.nodeCount());
+        assertEquals(4,stats.operationCount());
+    }
+
+    @Test
+    void compiledAndCached() {
+        Calculator calculator = new Calculator();
+        calculator.enableCache(4);
+        EvaluationStats first = stats(calculator,"1+2*3-AVG(4,6)",BigDecimal.valueOf(2));
+        EvaluationStats cached = stats(calculator,"1+2*3-AVG(4,6)",BigDecimal.valueOf(2));
+        assertEquals(12,cached.tokenCount());
+        assertTrue(cached.nodeCount() > 0);
+        assertEquals(first.nodeCount(),cached.nodeCount());
+        assertEquals(4,first.operationCount());
+        assertEquals(4,cached.operationCount());
+    }
+
+    @Test
+    void operationsPerformedAgainAreCounted() {
+        Calculator calculator = new Calculator();
+        // the long multiplication overflows and is performed again with
+        // BigDecimal, then the addition is performed only with BigDecimal
+        EvaluationStats stats = stats(calculator,"3037000500*3037000500+1",new BigDecimal("9223372037000250001"));
+        assertEquals(3,stats.operationCount());
+    }
+
+    @Test
+    void failedCalculation() {
+        Calculator calculator = new Calculator();
+        CalculationResult result = calculator.calculateWithStats(calculator.newSession(),"1+2/0+");
+        assertFalse(result.isSuccess());
+        assertEquals("can not divide with 0",result.error().getMessage());
+        assertEquals(6,result.stats().tokenCount());
+    }
+
+    @Test
+    void allocationBudget() {
+        Calculator calculator = new Calculator();
+        assumeTrue(calculator.calculateWithStats(calculator.newSession(),"1+1").stats().allocatedBytes() >= 0,
+                "allocated bytes are not measured by this JVM");
+        calculator.setAllocationBudget(1);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> calculator.calculateWithStats(calculator.newSession(),"2*(3+4)"));
+        assertTrue(e.getMessage().startsWith("calculating \"2*(3+4)\" allocated "),e.getMessage());
+        calculator.setAllocationBudget(0);
+        assertEquals(BigDecimal.valueOf(14),calculator.calculateWithStats(calculator.newSession(),"2*(3+4)").value());
+    }
+
+    private static EvaluationStats stats(Calculator calculator, String expression, BigDecimal expected) {
+        CalculationResult result = calculator.calculateWithStats(calculator.newSession(),expression);
+        assertEquals(0,expected.compareTo(result.value()),expression);
+        return result.stats();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Calculating with the cache must give the same result, or fail with the
+ * same error, as calculating while parsing without the cache, even when
+ * an operation fails before a syntax error.
+ *
+ * @author Rahul Bagchi
+ */
+class ExpressionCacheTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1/0/)", "SQRT(0-4)+(", "5/0+SQRT(", "1+)", "2*(3", "SQRT(4", "2*3.5", "ANS+1",
+            "REMAINDER(7.5,2)", "FOO(1/0)", "FOO(1)"})
+    void sameAsWithoutCache(String expression) {
+        Calculator uncached = new Calculator();
+        Calculator cached = new Calculator();
+        cached.enableCache(4);
+        // twice, the second time from the cache if valid
+        assertEquals(outcome(uncached,expression),outcome(cached,expression));
+        assertEquals(outcome(uncached,expression),outcome(cached,expression));
+    }
+
+    @Test
+    void onlyValidExpressionIsCached() {
+        Calculator calculator = new Calculator();
+        ExpressionCache cache = calculator.enableCache(4);
+        calculator.calculate("1+2");
+        calculator.calculate("1+2");
+        assertEquals(1,cache.missCount());
+        assertEquals(1,cache.hitCount());
+        assertEquals("OperationException: can not divide with 0",outcome(calculator,"1/0/)"));
+        assertEquals(1,cache.size());
+    }
+
+    /**
+     * @return the result or the type and the message of the exception
+     */
+    static String outcome(Calculator calculator, String expression) {
+        try {
+            return calculator.calculate(expression).toString();
+        }
+        catch (CalculatorException e) {
+            return e.getClass().getSimpleName()+": "+e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Evaluating while parsing has no values for variables, so a variable
+ * must be rejected as an invalid expression naming the variable.
+ *
+ * @author Rahul Bagchi
+ */
+class ExpressionEvaluatorTest {
+
+    private static final String[] VARIABLES = {"x"};
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void evaluatesWithoutVariables(boolean iterative) {
+        assertEquals(BigDecimal.valueOf(7),evaluate("ANS*2+1",iterative));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void variableIsRejected(boolean iterative) {
+        ParseException e = assertThrows(ParseException.class,() -> evaluate("1+x",iterative));
+        assertEquals("variable x has no value",e.getMessage());
+    }
+
+    @Test
+    void limitedVariableIsRejected() {
+        ParseHandler<Integer> handler = new LimitingParseHandler(new ExpressionEvaluator(BigDecimal.ONE),
+                new EvaluationBudget(EvaluationLimits.NONE));
+        ParseException e = assertThrows(ParseException.class,
+                () -> new Parser<>(tokens("x"),handler,registry(),VARIABLES).parseOperation());
+        assertEquals("variable x has no value",e.getMessage());
+    }
+
+    /**
+     * Evaluate while parsing with 3 as ANS
+     */
+    private static BigDecimal evaluate(String expression, boolean iterative) {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(BigDecimal.valueOf(3));
+        Parser<Integer> parser = iterative ? new IterativeParser<>(tokens(expression),evaluator,registry(),VARIABLES)
+                : new Parser<>(tokens(expression),evaluator,registry(),VARIABLES);
+        return evaluator.result(parser.parseOperation());
+    }
+
+    private static TokenStream tokens(String expression) {
+        return new BufferTokenStream(new Tokenizer(expression).tokenizeToBuffer());
+    }
+
+    private static OperationRegistry registry() {
+        return new Calculator().registry();
+    }
+}
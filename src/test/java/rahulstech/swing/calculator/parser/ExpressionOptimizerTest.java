@@ -0,0 +1,148 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * An optimized expression must evaluate to the same number, or fail with
+ * the same error, as the expression without optimizing. Only the scale
+ * of the result may differ.
+ *
+ * @author Rahul Bagchi
+ */
+class ExpressionOptimizerTest {
+
+    private static final String[] VARIABLES = {"x","y"};
+
+    // more digits than the operators keep
+    private static final BigDecimal LONG_VALUE = new BigDecimal("12345678901234567890123456789012345678");
+
+    @ParameterizedTest
+    @ValueSource(strings = {"x*1", "1*x", "x/1", "x^1", "x+0", "0+x", "x-0", "x*1*1", "(x+y)*1", "x*y*1",
+            "1*(x*y)", "x*1+1*y", "SQRT(x)*1", "x%1*1", "2*3*x*1", "(x*1)/1^1"})
+    void identitiesKeepRounding(String expression) {
+        assertEquivalent(expression,LONG_VALUE,LONG_VALUE,new BigDecimal("1.5"));
+        assertEquivalent(expression,new BigDecimal("2.5"),LONG_VALUE,BigDecimal.valueOf(7));
+    }
+
+    @Test
+    void identitiesAreRemoved() {
+        assertEquals("CompiledExpression(x)",optimized("x+0").toString());
+        assertEquals("CompiledExpression(x)",optimized("0+x").toString());
+        assertEquals("CompiledExpression((x*y))",optimized("x*y*1").toString());
+        assertEquals("CompiledExpression((x*5))",optimized("x*5/1").toString());
+        assertEquals("CompiledExpression(2)",optimized("2*1").toString());
+        // x may have more than 34 digits
+        assertEquals("CompiledExpression((x*1))",optimized("x*1").toString());
+    }
+
+    @Test
+    void randomExpressionsMatchUnoptimized() {
+        Random random = new Random(12);
+        BigDecimal[] values = {BigDecimal.ZERO, BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.valueOf(-3),
+                BigDecimal.valueOf(17), LONG_VALUE, LONG_VALUE.negate().movePointLeft(20)};
+        for (int i = 0; i < 3000; i++) {
+            String expression = randomExpression(random,1+random.nextInt(4),1+random.nextInt(4));
+            assertEquivalent(expression,values[random.nextInt(values.length)],
+                    values[random.nextInt(values.length)],values[random.nextInt(values.length)]);
+        }
+    }
+
+    private static void assertEquivalent(String expression, BigDecimal answer, BigDecimal... values) {
+        String expected;
+        CompiledExpression optimized;
+        try {
+            expected = result(compile(false,expression),answer,values);
+            optimized = optimized(expression);
+        }
+        catch (CalculatorException e) {
+            return;
+        }
+        // evaluated twice for the shared subexpressions remembering their value
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected,result(optimized,answer,values),expression);
+        }
+    }
+
+    private static CompiledExpression optimized(String expression) {
+        return compile(true,expression);
+    }
+
+    private static CompiledExpression compile(boolean optimize, String expression) {
+        Calculator calculator = new Calculator();
+        // the tree only, the generated code is compared with it elsewhere
+        calculator.setCompileThreshold(-1);
+        calculator.setOptimizationEnabled(optimize);
+        return calculator.compile(expression,VARIABLES);
+    }
+
+    /**
+     * @return the number without trailing zeros or the exception
+     */
+    private static String result(CompiledExpression expression, BigDecimal answer, BigDecimal[] values) {
+        try {
+            return expression.evaluate(answer,values).stripTrailingZeros().toString();
+        }
+        catch (RuntimeException e) {
+            return e.getClass().getName()+": "+e.getMessage();
+        }
+    }
+
+    private static String randomExpression(Random random, int depth, int width) {
+        if (depth <= 0 || 0 == random.nextInt(4)) {
+            switch (random.nextInt(6)) {
+                case 0: return "ANS";
+                case 1: return "x";
+                case 2: return "y";
+                // identities and constants to fold
+                case 3: return Integer.toString(random.nextInt(3));
+                case 4: return Integer.toString(random.nextInt(20));
+                default: return (1+random.nextInt(9))+".5";
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        switch (random.nextInt(5)) {
+            case 0:
+                return "SQRT("+randomExpression(random,depth-1,width)+")";
+            case 1:
+                // by a small number only, the remainder of a tiny number takes too long
+                return "REMAINDER("+randomExpression(random,depth-1,width)+","+(1+random.nextInt(9))+")";
+            case 2:
+                builder.append("AVG(");
+                for (int i = 1+random.nextInt(width); i >= 0; i--) {
+                    builder.append(randomExpression(random,depth-1,width)).append(i > 0 ? "," : ")");
+                }
+                return builder.toString();
+            default:
+                builder.append("(").append(randomExpression(random,depth-1,width));
+                for (int i = random.nextInt(width); i >= 0; i--) {
+                    char operator = "+-*/%^".charAt(random.nextInt(6));
+                    // powers of 0 and 1 only, repeated powers make numbers too long to add
+                    builder.append(operator).append('^' == operator ? Integer.toString(random.nextInt(2))
+                            : randomExpression(random,depth-1,width));
+                }
+                return builder.append(")").toString();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link EvaluationMode#FAST_DOUBLE} must fall back to the exact evaluation
+ * whenever doubles can not give the result correct to 15 digits, and must
+ * fail with the same error as the exact evaluation.
+ *
+ * @author Rahul Bagchi
+ */
+class FastDoubleTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // cancellation, doubles give 5.551115123125783E-17
+            "0.1+0.2-0.3",
+            // more than 15 digits
+            "1234567890123456789+1", "ANS+0.1234567890123456789",
+            // overflow and underflow of double
+            "(10^200)*(10^200)", "1/(10^200)/(10^200)",
+            // REMAINDER of fractions, doubles give 0.09999999999999998 for the second
+            "REMAINDER(7.5,2)", "REMAINDER(0.3,0.1)"})
+    void fallsBackToExact(String expression) {
+        assertEquals(0,exact(expression).compareTo(fast(expression)),expression);
+    }
+
+    @Test
+    void roundsTo15Digits() {
+        assertEquals(new BigDecimal("0.333333333333333"),fast("1/3"));
+        assertEquals(BigDecimal.valueOf(7),fast("2*3.5"));
+        assertEquals(BigDecimal.ONE,fast("REMAINDER(7,2)"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1/0", "1/0/)", "SQRT(0-4)+(", "5/0+SQRT(", "1+)", "2*(3", "FOO(1/0)"})
+    void failsLikeExact(String expression) {
+        Calculator calculator = new Calculator();
+        calculator.setEvaluationMode(EvaluationMode.FAST_DOUBLE);
+        assertEquals(ExpressionCacheTest.outcome(new Calculator(),expression),
+                ExpressionCacheTest.outcome(calculator,expression));
+    }
+
+    private static BigDecimal exact(String expression) {
+        return new Calculator().calculate(expression);
+    }
+
+    private static BigDecimal fast(String expression) {
+        Calculator calculator = new Calculator();
+        calculator.setEvaluationMode(EvaluationMode.FAST_DOUBLE);
+        return calculator.calculate(expression);
+    }
+}
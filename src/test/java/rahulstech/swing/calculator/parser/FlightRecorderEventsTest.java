@@ -0,0 +1,93 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import rahulstech.swing.calculator.parser.operation.Operation;
+import rahulstech.swing.calculator.parser.operation.UniFunction;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static rahulstech.swing.calculator.parser.operation.Operation.Priority.MULTIPLICATIVE;
+
+/**
+ * The events must have their duration when the threshold is checked, or
+ * an event with a threshold is never recorded.
+ *
+ * @author Rahul Bagchi
+ */
+class FlightRecorderEventsTest {
+
+    @Test
+    void slowOperationsAreRecorded() throws IOException {
+        Calculator calculator = new Calculator();
+        calculator.registerOperation(new UniFunction("SLOW",MULTIPLICATIVE) {
+            @Override
+            protected BigDecimal evaluate(BigDecimal param) {
+                try {
+                    Thread.sleep(5);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return param;
+            }
+        });
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("rahulstech.swing.calculator.Operation");
+            recording.enable("rahulstech.swing.calculator.Evaluate").withThreshold(Duration.ofMillis(1));
+            recording.start();
+            calculator.calculate("SLOW(2)+1");
+            calculator.calculate("2+1");
+            calculator.evaluate(calculator.compile("SLOW(2)*3"));
+            recording.stop();
+            Path file = Files.createTempFile("calculator",".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            }
+            finally {
+                Files.delete(file);
+            }
+        }
+        assertSlowEvents(2,events,"rahulstech.swing.calculator.Operation");
+        assertSlowEvents(1,events,"rahulstech.swing.calculator.Evaluate");
+    }
+
+    private static void assertSlowEvents(int expected, List<RecordedEvent> events, String name) {
+        int count = 0;
+        for (RecordedEvent event : events) {
+            if (name.equals(event.getEventType().getName())) {
+                assertTrue(event.getDuration().toMillis() >= 1,event.toString());
+                count++;
+            }
+        }
+        assertEquals(expected,count,name);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Expiration and eviction of {@link SessionRegistry}, with a clock moved
+ * by the test instead of waiting.
+ *
+ * @author Rahul Bagchi
+ */
+class SessionRegistryTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final AtomicLong now = new AtomicLong(1000*SECOND);
+
+    @Test
+    void idleSessionExpires() {
+        SessionRegistry registry = new SessionRegistry(100,Duration.ofSeconds(10),0,now::get);
+        Session a = registry.get("a");
+        now.addAndGet(9*SECOND);
+        assertSame(a,registry.get("a"));
+        now.addAndGet(9*SECOND);
+        // used 9 seconds ago, not idle
+        assertSame(a,registry.getIfPresent("a"));
+        now.addAndGet(2*SECOND);
+        assertNull(registry.getIfPresent("a"));
+        Session created = registry.get("a");
+        assertNotSame(a,created);
+        assertEquals(1,registry.hitCount());
+        assertEquals(2,registry.missCount());
+        assertEquals(1,registry.expirationCount());
+        assertEquals(0,registry.evictionCount());
+    }
+
+    @Test
+    void idleSessionsRemovedWhileCreating() {
+        SessionRegistry registry = new SessionRegistry(100,Duration.ofSeconds(10),0,now::get);
+        registry.get("a");
+        registry.get("b");
+        now.addAndGet(6*SECOND);
+        registry.get("c");
+        // half the idle timeout since the last clean up, but nothing is idle yet
+        assertEquals(3,registry.size());
+        now.addAndGet(6*SECOND);
+        registry.get("d");
+        assertNull(registry.getIfPresent("a"));
+        assertEquals(2,registry.size());
+        now.addAndGet(3*SECOND);
+        registry.get("e");
+        // less than half the idle timeout since the last clean up
+        assertEquals(3,registry.size());
+        now.addAndGet(3*SECOND);
+        registry.cleanUp();
+        assertNull(registry.getIfPresent("c"));
+        assertNotNull(registry.getIfPresent("d"));
+        assertEquals(2,registry.size());
+        assertEquals(3,registry.expirationCount());
+        assertEquals(5,registry.missCount());
+    }
+
+    @Test
+    void leastRecentlyUsedEvicted() {
+        SessionRegistry registry = new SessionRegistry(32,Duration.ofHours(1),0,now::get);
+        for (int i = 0; i < 32; i++) {
+            registry.get("s"+i);
+            now.addAndGet(SECOND);
+        }
+        assertEquals(32,registry.size());
+        assertEquals(0,registry.evictionCount());
+        registry.get("s0");
+        now.addAndGet(SECOND);
+        registry.get("s32");
+        // down to 15/16 of the maximum
+        assertEquals(30,registry.size());
+        assertEquals(3,registry.evictionCount());
+        assertNotNull(registry.getIfPresent("s0"));
+        for (int i = 1; i <= 3; i++) {
+            assertNull(registry.getIfPresent("s"+i));
+        }
+        for (int i = 4; i <= 32; i++) {
+            assertNotNull(registry.getIfPresent("s"+i));
+        }
+        assertEquals(1,registry.hitCount());
+        assertEquals(33,registry.missCount());
+        assertEquals(0,registry.expirationCount());
+    }
+
+    @Test
+    void idleSessionsRemovedBeforeEviction() {
+        SessionRegistry registry = new SessionRegistry(16,Duration.ofSeconds(10),0,now::get);
+        for (int i = 0; i < 8; i++) {
+            registry.get("old"+i);
+        }
+        now.addAndGet(4*SECOND);
+        for (int i = 0; i < 8; i++) {
+            registry.get("new"+i);
+        }
+        now.addAndGet(7*SECOND);
+        registry.get("last");
+        assertEquals(9,registry.size());
+        assertEquals(8,registry.expirationCount());
+        assertEquals(0,registry.evictionCount());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static rahulstech.swing.calculator.parser.TokenType.KEYWORD;
+import static rahulstech.swing.calculator.parser.TokenType.NUMERIC;
+import static rahulstech.swing.calculator.parser.TokenType.SYMBOL;
+
+/**
+ * The lookup table lexer of {@link Tokenizer} must produce the same tokens
+ * as matching the {@link TokenType} patterns, which is how the tokenizer
+ * worked before.
+ *
+ * @author Rahul Bagchi
+ */
+class TokenizerTest {
+
+    private static final String[] EXPRESSIONS = {
+            "1+2*3-4/5",
+            "0", "00", "007", "0.5", ".5", "5.", ".", "..", "1.2.3", "10.25e3", "0x1F",
+            "SQRT(16)", "_a1_", "a_b+c9", "ANS*2", "9abc", "abc9.5",
+            "(1+(2+(3)))", "-5+-.5", "1 + 2", "  12  \t 3\n", "\r\n\f\u000B1",
+            "1\u00A02", "\u20001", "\u0660\u0661", "\u03C0*2", "\u20AC5", "1\uD83D\uDE002", "\uD83D\uDE00", "a\uD83Db", "\uDE00\uD83D",
+            "MAX(1,2,3)%4^5", "!@#$&=[]{}|;:'\"<>?~`"
+    };
+
+    // characters of every kind the lexer classifies differently
+    private static final String ALPHABET = "0123456789._aZzA9+-*/(),% \t\n\r\u000B\f\u00A0\u03C0\u20AC\uD83D\uDE00";
+
+    @Test
+    void sameTokensAsRegex() {
+        for (String expression : EXPRESSIONS) {
+            assertSameTokens(expression);
+        }
+    }
+
+    @Test
+    void sameTokensAsRegexForRandomInput() {
+        Random random = new Random(20210101);
+        for (int i = 0; i < 20000; i++) {
+            int length = 1+random.nextInt(20);
+            StringBuilder builder = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            assertSameTokens(builder.toString());
+        }
+    }
+
+    private static void assertSameTokens(String expression) {
+        String expected = regexTokens(expression);
+        assertEquals(expected,tokens(expression,false),expression);
+        assertEquals(expected,tokens(expression,true),expression);
+    }
+
+    private static String tokens(String expression, boolean buffer) {
+        try {
+            Tokenizer tokenizer = new Tokenizer(expression);
+            return describe(buffer ? tokenizer.tokenizeToBuffer().toList() : tokenizer.tokenize());
+        }
+        catch (ParseException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    private static String describe(List<Token> tokens) {
+        StringBuilder builder = new StringBuilder();
+        for (Token token : tokens) {
+            builder.append(token.type()).append(' ').append(token.start()).append(" '")
+                    .append(token.literal()).append("'\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Tokenize like the tokenizer did with regular expressions, i.e. skip
+     * whitespaces and match the pattern of keyword, symbol and number in
+     * this order at the current position
+     */
+    private static String regexTokens(String input) {
+        Matcher whitespace = Pattern.compile("\\s+").matcher(input);
+        List<Token> tokens = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            if (whitespace.find(offset) && offset == whitespace.start()) {
+                offset = whitespace.end();
+            }
+            if (offset >= input.length()) {
+                break;
+            }
+            Token token = null;
+            for (TokenType type : new TokenType[]{KEYWORD,SYMBOL,NUMERIC}) {
+                Matcher matcher = Pattern.compile(type.getPattern()).matcher(input).region(offset,input.length());
+                if (matcher.find() && offset == matcher.start()) {
+                    token = new Token(type,matcher.group(),offset);
+                    offset = matcher.end();
+                    break;
+                }
+            }
+            if (null == token) {
+                return "invalid character '"+input.charAt(offset)+"'";
+            }
+            tokens.add(token);
+        }
+        return describe(tokens);
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.server;
+
+import rahulstech.swing.calculator.parser.Calculator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Talks to a server on a free port the way a client does, many requests
+ * written at once and the responses read afterwards.
+ *
+ * @author Rahul Bagchi
+ */
+class CalculatorServerTest {
+
+    private CalculatorServer server;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (null != server) {
+            server.close();
+        }
+    }
+
+    @Test
+    void pipelinedResponsesInOrder() throws IOException {
+        start(new CalculatorServer(new Calculator(),0));
+        try (Client client = new Client()) {
+            StringBuilder requests = new StringBuilder();
+            List<String> expected = new ArrayList<>();
+            for (int i = 1; i <= 1000; i++) {
+                if (0 == i % 10) {
+                    requests.append(i).append("/0\n");
+                    expected.add("ERR can not divide with 0");
+                }
+                else {
+                    requests.append("ANS+").append(i).append("\r\n");
+                    expected.add("OK "+(i*(i+1)/2-(i/10)*(i/10+1)*5));
+                }
+            }
+            client.write(requests.toString());
+            assertEquals(expected,client.read(expected.size()));
+        }
+    }
+
+    @Test
+    void batch() throws IOException {
+        start(new CalculatorServer(new Calculator(),0));
+        try (Client client = new Client()) {
+            client.write("2+3\nBATCH 4\n1+1\n2/0\nANS+1\n1+)\nBATCH 0\nBATCH x\nBATCH 10001\nANS*2\n");
+            assertEquals(Arrays.asList("OK 5","OK 2","ERR can not divide with 0","OK 1",
+                    "ERR unexpected token Token(SYMBOL=)@2)","ERR invalid batch size x",
+                    "ERR batch size must be between 0 and 10000","OK 10"),client.read(8));
+        }
+    }
+
+    @Test
+    void batchTooLong() throws IOException {
+        server = new CalculatorServer(new Calculator(),0);
+        server.setMaxLineLength(10);
+        server.setMaxBatchLength(20);
+        start(server);
+        try (Client client = new Client()) {
+            client.write("BATCH 3\n1+2+3+4+5\n1+1\n1+1+1+1+1+1+1+1+1\n"
+                    +"BATCH 3\n1+2+3+4+5\n1+1\n1+2+3+4+5\n4*4\n");
+            assertEquals(Arrays.asList("OK 15","OK 2",
+                    "ERR line is longer than 10 characters","ERR batch is longer than 20 characters",
+                    "ERR batch is longer than 20 characters","ERR batch is longer than 20 characters",
+                    "OK 16"),client.read(7));
+        }
+    }
+
+    @Test
+    void sessionAndHistory() throws IOException {
+        start(new CalculatorServer(new Calculator(),0));
+        try (Client client = new Client()) {
+            client.write("SESSION a\n5*5\nSESSION \nQUIT\n");
+            assertEquals(Arrays.asList("OK 0","OK 25","ERR missing session id"),client.read(3));
+            assertNull(client.in.readLine());
+        }
+        try (Client client = new Client()) {
+            client.write("ANS+1\nSESSION a\nANS+1\nHISTORY\n");
+            assertEquals(Arrays.asList("OK 1","OK 25","OK 26","OK 2","5*5 = 25","ANS+1 = 26"),client.read(6));
+        }
+        assertEquals(1,server.getSessionRegistry().missCount());
+        // each request looks the session up again
+        assertEquals(4,server.getSessionRegistry().hitCount());
+    }
+
+    @Test
+    void refusedOverMaxConnections() throws IOException {
+        server = new CalculatorServer(new Calculator(),0);
+        server.setMaxConnections(1);
+        start(server);
+        try (Client first = new Client()) {
+            first.write("1+1\n");
+            assertEquals(Arrays.asList("OK 2"),first.read(1));
+            try (Client second = new Client()) {
+                assertEquals(Arrays.asList("ERR too many connections"),second.read(1));
+                assertNull(second.in.readLine());
+            }
+        }
+    }
+
+    @Test
+    void tooLongLines() throws IOException {
+        server = new CalculatorServer(new Calculator(),0);
+        server.setMaxLineLength(10);
+        start(server);
+        try (Client client = new Client()) {
+            StringBuilder longLine = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                longLine.append("+1");
+            }
+            client.write("1+1+1+1+1\r\n1+1+1+1+1+1\n1"+longLine+"\n\n3*3\n");
+            assertEquals(Arrays.asList("OK 5","ERR line is longer than 10 characters",
+                    "ERR line is longer than 10 characters"),client.read(3));
+            assertTrue(client.read(1).get(0).startsWith("ERR "));
+            assertEquals(Arrays.asList("OK 9"),client.read(1));
+        }
+    }
+
+    @Test
+    void stats() throws IOException {
+        start(new CalculatorServer(new Calculator(),0));
+        try (Client client = new Client()) {
+            client.write("1+1\n2+2\nSESSION b\nSTATS\n");
+            List<String> responses = client.read(4);
+            String stats = responses.get(3);
+            assertTrue(stats.startsWith("OK count=2 mean="),stats);
+            assertTrue(stats.endsWith(" sessions=1 hits=0 evictions=0 expirations=0"),stats);
+        }
+    }
+
+    private void start(CalculatorServer server) throws IOException {
+        this.server = server;
+        server.start();
+    }
+
+    private final class Client implements Closeable {
+
+        final Socket socket;
+        final BufferedReader in;
+        final OutputStream out;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(),server.getPort());
+            socket.setSoTimeout(10000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(),StandardCharsets.UTF_8));
+            out = socket.getOutputStream();
+        }
+
+        void write(String requests) throws IOException {
+            out.write(requests.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        List<String> read(int count) throws IOException {
+            List<String> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                responses.add(in.readLine());
+            }
+            return responses;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/**
+ * Copyright 2021 rahulstech
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rahulstech.swing.calculator.parser;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import rahulstech.swing.calculator.parser.operation.BinaryOperator;
+import rahulstech.swing.calculator.parser.operation.ParameterizedOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Lowers the tree of an expression into a {@link ColumnKernel} using the
+ * incubating Vector API. The tree is lowered into a list of instructions
+ * on registers, each register holds a block of the column. Every
+ * instruction runs over a whole block at a time, the basic arithmetic
+ * operations and SQRT with {@link DoubleVector} operations followed by a
+ * scalar loop for the tail of the block, other operations with a scalar
+ * loop. The results are same as {@link Node#evaluateAsDouble(double, double[])},
+ * including {@link Double#NaN} where a value can not be calculated correctly
+ * with doubles.
+ * <p>
+ * Loaded by {@link ColumnKernels} by reflection, this class is built only
+ * with the gradle property {@code vectorApi} and needs the module
+ * {@code jdk.incubator.vector} at runtime.
+ *
+ * @author Rahul Bagchi
+ */
+final class VectorColumnCompiler implements Function<Node,ColumnKernel> {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // number of elements run by an instruction at a time, the registers stay in the cache
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final double[] NO_VARIABLES = new double[0];
+
+    @Override
+    public ColumnKernel apply(Node root) {
+        if (SPECIES.length() < 2) {
+            // no SIMD, walking the tree is faster
+            return null;
+        }
+        if (root.height() > Node.MAX_RECURSION_HEIGHT) {
+            // lowering calls itself for each level and needs a register of a
+            // block for each, the scalar kernel evaluates a deep tree on the heap
+            return null;
+        }
+        Lowering lowering = new Lowering();
+        lowering.lower(root);
+        return new Kernel(lowering.instructions.toArray(new Instruction[0]),lowering.registerCount);
+    }
+
+    /**
+     * Lowers the nodes into instructions. Registers are used like a stack,
+     * the result of a node is stored in the next free register and the
+     * registers of the operands are free again after the operation.
+     */
+    private static final class Lowering {
+
+        final List<Instruction> instructions = new ArrayList<>();
+        int registerCount = 0;
+        int top = 0;
+
+        /**
+         * @return the register of the result
+         */
+        int lower(Node node) {
+            if (node instanceof Node.Variable) {
+                return push(new Input(top));
+            }
+            if (node instanceof Node.Chain) {
+                return lowerChain((Node.Chain) node);
+            }
+            if (node instanceof Node.Call) {
+                return lowerCall((Node.Call) node);
+            }
+            // literals, ANS and shared subexpressions do not depend on the variable
+            return push(new Constant(top,node.evaluateAsDouble(0,NO_VARIABLES)));
+        }
+
+        private int lowerChain(Node.Chain chain) {
+            int result = lower(chain.first());
+            for (int i = 0; i < chain.size(); i++) {
+                BinaryOperator operator = chain.operator(i);
+                Node operand = chain.operand(i);
+                if (isSquare(operator,operand)) {
+                    instructions.add(new Square(result));
+                    continue;
+                }
+                int right = lower(operand);
+                instructions.add(binary(operator,result,right));
+                top--;
+            }
+            return result;
+        }
+
+        private int lowerCall(Node.Call call) {
+            int first = top;
+            for (int i = 0; i < call.parameterCount(); i++) {
+                lower(call.parameter(i));
+            }
+            ParameterizedOperation function = call.function();
+            if (1 == call.parameterCount() && "SQRT".equals(function.name())
+                    && Calculator.isDefaultOperation(function)) {
+                instructions.add(new SquareRoot(first));
+            }
+            else {
+                instructions.add(new ScalarCall(function,first,call.parameterCount()));
+            }
+            // a call without parameters still needs a register for the result
+            registerCount = Math.max(registerCount,first+1);
+            top = first+1;
+            return first;
+        }
+
+        private int push(Instruction instruction) {
+            instructions.add(instruction);
+            registerCount = Math.max(registerCount,top+1);
+            return top++;
+        }
+
+        private static boolean isSquare(BinaryOperator operator, Node operand) {
+            return "^".equals(operator.name()) && Calculator.isDefaultOperation(operator)
+                    && operand instanceof Node.Literal && 2 == operand.evaluateAsDouble(0,NO_VARIABLES);
+        }
+
+        private static Instruction binary(BinaryOperator operator, int result, int right) {
+            if (Calculator.isDefaultOperation(operator)) {
+                switch (operator.name()) {
+                    case "+": return new Add(result,right,false);
+                    case "-": return new Add(result,right,true);
+                    case "*": return new Multiply(result,right,false);
+                    case "/": return new Multiply(result,right,true);
+                    case "%": return new Percent(result,right);
+                }
+            }
+            return new ScalarBinary(operator,result,right);
+        }
+    }
+
+    private static final class Kernel implements ColumnKernel {
+
+        private final Instruction[] instructions;
+        private final int registerCount;
+
+        Kernel(Instruction[] instructions, int registerCount) {
+            this.instructions = instructions;
+            this.registerCount = registerCount;
+        }
+
+        @Override
+        public void evaluate(double[] in, double[] out, int from, int to) {
+            double[][] registers = new double[registerCount][BLOCK_SIZE];
+            for (int offset = from; offset < to; offset += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE,to-offset);
+                for (Instruction instruction : instructions) {
+                    instruction.run(registers,in,offset,length);
+                }
+                // the result of the root is in the first register
+                System.arraycopy(registers[0],0,out,offset,length);
+            }
+        }
+    }
+
+    /**
+     * @return NaN for the lanes which {@link FastDouble#check(double)} rejects
+     */
+    private static DoubleVector check(DoubleVector value) {
+        DoubleVector magnitude = value.abs();
+        VectorMask<Double> unusable = value.test(VectorOperators.IS_INFINITE)
+                .or(magnitude.lt(Double.MIN_NORMAL).and(magnitude.compare(VectorOperators.NE,0)));
+        return value.blend(Double.NaN,unusable);
+    }
+
+    /**
+     * @return NaN for the lanes which {@link FastDouble#checkProduct(double, double, double)} rejects
+     */
+    private static DoubleVector checkProduct(DoubleVector left, DoubleVector right, DoubleVector result) {
+        VectorMask<Double> underflow = result.compare(VectorOperators.EQ,0)
+                .and(left.compare(VectorOperators.NE,0))
+                .and(right.compare(VectorOperators.NE,0));
+        return check(result.blend(Double.NaN,underflow));
+    }
+
+    /**
+     * An operation on a block of registers
+     */
+    private abstract static class Instruction {
+
+        final int target;
+
+        Instruction(int target) {
+            this.target = target;
+        }
+
+        /**
+         * @param registers the registers
+         * @param in the input column
+         * @param offset index of the block in the input column
+         * @param length number of elements in the block
+         */
+        abstract void run(double[][] registers, double[] in, int offset, int length);
+    }
+
+    private static final class Input extends Instruction {
+
+        Input(int target) {
+            super(target);
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            System.arraycopy(in,offset,registers[target],0,length);
+        }
+    }
+
+    private static final class Constant extends Instruction {
+
+        private final double value;
+
+        Constant(int target, double value) {
+            super(target);
+            this.value = value;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] result = registers[target];
+            for (int i = 0; i < length; i++) {
+                result[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Addition or subtraction, NaN where the operands cancel each other too much
+     */
+    private static final class Add extends Instruction {
+
+        private final int operand;
+        private final boolean subtract;
+
+        Add(int target, int operand, boolean subtract) {
+            super(target);
+            this.operand = operand;
+            this.subtract = subtract;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] left = registers[target];
+            double[] right = registers[operand];
+            int i = 0;
+            for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                DoubleVector l = DoubleVector.fromArray(SPECIES,left,i);
+                DoubleVector r = DoubleVector.fromArray(SPECIES,right,i);
+                if (subtract) {
+                    r = r.neg();
+                }
+                DoubleVector sum = l.add(r);
+                VectorMask<Double> cancelled = sum.abs().mul(FastDouble.MAX_CANCELLATION).lt(l.abs().max(r.abs()));
+                check(sum.blend(Double.NaN,cancelled)).intoArray(left,i);
+            }
+            for (; i < length; i++) {
+                double r = subtract ? -right[i] : right[i];
+                left[i] = FastDouble.checkSum(left[i],r,left[i]+r);
+            }
+        }
+    }
+
+    /**
+     * Multiplication or division
+     */
+    private static final class Multiply extends Instruction {
+
+        private final int operand;
+        private final boolean divide;
+
+        Multiply(int target, int operand, boolean divide) {
+            super(target);
+            this.operand = operand;
+            this.divide = divide;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] left = registers[target];
+            double[] right = registers[operand];
+            int i = 0;
+            for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                DoubleVector l = DoubleVector.fromArray(SPECIES,left,i);
+                DoubleVector r = DoubleVector.fromArray(SPECIES,right,i);
+                checkProduct(l,r,divide ? l.div(r) : l.mul(r)).intoArray(left,i);
+            }
+            for (; i < length; i++) {
+                double result = divide ? left[i]/right[i] : left[i]*right[i];
+                left[i] = FastDouble.checkProduct(left[i],right[i],result);
+            }
+        }
+    }
+
+    /**
+     * The operator %, a*b/100
+     */
+    private static final class Percent extends Instruction {
+
+        private final int operand;
+
+        Percent(int target, int operand) {
+            super(target);
+            this.operand = operand;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] left = registers[target];
+            double[] right = registers[operand];
+            int i = 0;
+            for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                DoubleVector l = DoubleVector.fromArray(SPECIES,left,i);
+                DoubleVector r = DoubleVector.fromArray(SPECIES,right,i);
+                checkProduct(l,r,l.mul(r).div(100)).intoArray(left,i);
+            }
+            for (; i < length; i++) {
+                left[i] = FastDouble.checkProduct(left[i],right[i],left[i]*right[i]/100);
+            }
+        }
+    }
+
+    /**
+     * The operator ^ with the power 2, same as {@link Math#pow(double, double)}
+     * which is exactly a*a for the power 2
+     */
+    private static final class Square extends Instruction {
+
+        Square(int target) {
+            super(target);
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] value = registers[target];
+            int i = 0;
+            for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                DoubleVector v = DoubleVector.fromArray(SPECIES,value,i);
+                checkProduct(v,v,v.mul(v)).intoArray(value,i);
+            }
+            for (; i < length; i++) {
+                value[i] = FastDouble.checkProduct(value[i],value[i],value[i]*value[i]);
+            }
+        }
+    }
+
+    private static final class SquareRoot extends Instruction {
+
+        SquareRoot(int target) {
+            super(target);
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] value = registers[target];
+            int i = 0;
+            for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                // square root of a negative number is NaN
+                check(DoubleVector.fromArray(SPECIES,value,i).lanewise(VectorOperators.SQRT)).intoArray(value,i);
+            }
+            for (; i < length; i++) {
+                value[i] = FastDouble.check(Math.sqrt(value[i]));
+            }
+        }
+    }
+
+    /**
+     * Any other binary operator, same as {@link Node.Chain}
+     */
+    private static final class ScalarBinary extends Instruction {
+
+        private final BinaryOperator operator;
+        private final int operand;
+
+        ScalarBinary(BinaryOperator operator, int target, int operand) {
+            super(target);
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] left = registers[target];
+            double[] right = registers[operand];
+            for (int i = 0; i < length; i++) {
+                if (!Double.isNaN(left[i])) {
+                    left[i] = Double.isNaN(right[i]) ? Double.NaN
+                            : FastDouble.check(operator.applyAsDouble(left[i],right[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Any other function, same as {@link Node.Call}. The parameters are in
+     * consecutive registers and the result is stored in the first one.
+     */
+    private static final class ScalarCall extends Instruction {
+
+        private final ParameterizedOperation function;
+        private final int count;
+
+        ScalarCall(ParameterizedOperation function, int target, int count) {
+            super(target);
+            this.function = function;
+            this.count = count;
+        }
+
+        @Override
+        void run(double[][] registers, double[] in, int offset, int length) {
+            double[] result = registers[target];
+            double[] params = new double[count];
+            for (int i = 0; i < length; i++) {
+                boolean usable = true;
+                for (int p = 0; p < count && usable; p++) {
+                    params[p] = registers[target+p][i];
+                    usable = !Double.isNaN(params[p]);
+                }
+                if (!usable) {
+                    result[i] = Double.NaN;
+                }
+                else if (1 == count) {
+                    result[i] = FastDouble.check(function.applyAsDouble(params[0]));
+                }
+                else if (2 == count) {
+                    result[i] = FastDouble.check(function.applyAsDouble(params[0],params[1]));
+                }
+                else {
+                    result[i] = FastDouble.check(function.applyAsDouble(params,0,count));
+                }
+            }
+        }
+    }
+}